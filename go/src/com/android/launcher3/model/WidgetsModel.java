@@ -16,6 +16,7 @@
 
 package com.android.launcher3.model;
 
+import android.appwidget.AppWidgetProviderInfo;
 import android.content.ComponentName;
 import android.content.Context;
 import android.os.UserHandle;
@@ -24,13 +25,16 @@ import androidx.annotation.Nullable;
 
 import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.icons.ComponentWithLabelAndIcon;
+import com.android.launcher3.pm.ShortcutConfigActivityInfo;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.widget.WidgetListRowEntry;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Widgets data model that is used by the adapters of the widget views and controllers.
@@ -65,6 +69,16 @@ public class WidgetsModel {
         return Collections.emptyList();
     }
 
+    /**
+     * Updates all the widgets and shortcuts from the provided widget providers and shortcut
+     * config activities of all the users, eg. when they were queried ahead by the loader.
+     */
+    public List<ComponentWithLabelAndIcon> update(LauncherAppState app,
+            Supplier<? extends Collection<AppWidgetProviderInfo>> providers,
+            Supplier<List<ShortcutConfigActivityInfo>> shortcutConfigActivities) {
+        return Collections.emptyList();
+    }
+
 
     public void onPackageIconsUpdated(Set<String> packageNames, UserHandle user,
             LauncherAppState app) {
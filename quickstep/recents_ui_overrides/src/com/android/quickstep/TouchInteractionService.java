@@ -23,6 +23,7 @@ import static android.view.MotionEvent.ACTION_UP;
 import static com.android.launcher3.config.FeatureFlags.ENABLE_QUICKSTEP_LIVE_TILE;
 import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+import static com.android.launcher3.util.ForegroundGestureTracker.SOURCE_SYSTEM_GESTURE;
 import static com.android.quickstep.GestureState.DEFAULT_STATE;
 import static com.android.systemui.shared.system.QuickStepContract.KEY_EXTRA_INPUT_MONITOR;
 import static com.android.systemui.shared.system.QuickStepContract.KEY_EXTRA_SYSUI_PROXY;
@@ -69,6 +70,7 @@ import com.android.launcher3.testing.TestProtocol;
 import com.android.launcher3.tracing.nano.LauncherTraceProto;
 import com.android.launcher3.tracing.nano.TouchInteractionServiceProto;
 import com.android.launcher3.uioverrides.plugins.PluginManagerWrapper;
+import com.android.launcher3.util.ForegroundGestureTracker;
 import com.android.launcher3.util.OnboardingPrefs;
 import com.android.launcher3.util.TraceHelper;
 import com.android.launcher3.util.WindowBounds;
@@ -515,6 +517,13 @@ public class TouchInteractionService extends Service implements PluginListener<O
             }
         }
 
+        if (action == ACTION_DOWN) {
+            ForegroundGestureTracker.setGestureActive(
+                    SOURCE_SYSTEM_GESTURE, mUncheckedConsumer != InputConsumer.NO_OP);
+        } else if (action == ACTION_UP || action == ACTION_CANCEL) {
+            ForegroundGestureTracker.setGestureActive(SOURCE_SYSTEM_GESTURE, false);
+        }
+
         if (mUncheckedConsumer != InputConsumer.NO_OP) {
             switch (event.getActionMasked()) {
                 case ACTION_DOWN:
@@ -835,6 +844,10 @@ public class TouchInteractionService extends Service implements PluginListener<O
                 mGestureState.dump(pw);
             }
             SysUINavigationMode.INSTANCE.get(this).dump(pw);
+            RecentsModel recentsModel = RecentsModel.INSTANCE.getNoCreate();
+            if (recentsModel != null) {
+                recentsModel.dump("", pw);
+            }
             pw.println("TouchState:");
             BaseDraggingActivity createdOverviewActivity = mOverviewComponentObserver == null ? null
                     : mOverviewComponentObserver.getActivityInterface().getCreatedActivity();
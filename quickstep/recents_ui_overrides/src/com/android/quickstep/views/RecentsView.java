@@ -261,6 +261,8 @@ public abstract class RecentsView<T extends StatefulActivity> extends PagedView
 
     private static final int DISMISS_TASK_DURATION = 300;
     private static final int ADDITION_TASK_DURATION = 200;
+    // Maximum number of pages loaded beyond the visible ones in the direction of a fling
+    private static final int MAX_PREFETCH_PAGES_AHEAD = 3;
     // The threshold at which we update the SystemUI flags when animating from the task into the app
     public static final float UPDATE_SYSUI_FLAGS_THRESHOLD = 0.85f;
 
@@ -275,6 +277,8 @@ public abstract class RecentsView<T extends StatefulActivity> extends PagedView
     private final ScrollState mScrollState = new ScrollState();
     // Keeps track of the previously known visible tasks for purposes of loading/unloading task data
     private final SparseBooleanArray mHasVisibleTaskData = new SparseBooleanArray();
+    // The tasks of mHasVisibleTaskData which were only prefetched, at low resolution
+    private final SparseBooleanArray mPrefetchedTaskData = new SparseBooleanArray();
 
     private final InvariantDeviceProfile mIdp;
 
@@ -595,6 +599,7 @@ public abstract class RecentsView<T extends StatefulActivity> extends PagedView
         if (child instanceof TaskView) {
             TaskView taskView = (TaskView) child;
             mHasVisibleTaskData.delete(taskView.getTask().key.id);
+            mPrefetchedTaskData.delete(taskView.getTask().key.id);
             mTaskViewPool.recycle(taskView);
             mActionsView.updateHiddenFlags(HIDDEN_NO_TASKS, getTaskViewCount() == 0);
         }
@@ -692,6 +697,8 @@ public abstract class RecentsView<T extends StatefulActivity> extends PagedView
         if (getNextPage() > 0) {
             setSwipeDownShouldLaunchApp(true);
         }
+        // Drop the prefetches made for the scroll which just ended
+        loadVisibleTaskData();
     }
 
     @Override
@@ -971,6 +978,11 @@ public abstract class RecentsView<T extends StatefulActivity> extends PagedView
     /**
      * Iterates through all the tasks, and loads the associated task data for newly visible tasks,
      * and unloads the associated task data for tasks that are no longer visible.
+     *
+     * The tasks around the visible ones are prefetched at low resolution: one page on each side
+     * when idle, and while scrolling, more pages in the direction of the scroll the faster it
+     * goes, as well as the pages around the one where the scroll will settle. The thumbnails of
+     * prefetched tasks are upgraded when the tasks become visible.
      */
     public void loadVisibleTaskData() {
         if (!mOverviewStateEnabled || mTaskListChangeId == -1) {
@@ -981,29 +993,65 @@ public abstract class RecentsView<T extends StatefulActivity> extends PagedView
 
         int centerPageIndex = getPageNearestToCenterOfScreen();
         int numChildren = getChildCount();
-        int lower = Math.max(0, centerPageIndex - 2);
-        int upper = Math.min(centerPageIndex + 2, numChildren - 1);
+        int visibleLower = Math.max(0, centerPageIndex - 1);
+        int visibleUpper = Math.min(centerPageIndex + 1, numChildren - 1);
+
+        int lower;
+        int upper;
+        int destinationLower;
+        int destinationUpper;
+        if (mScroller.isFinished()) {
+            lower = Math.max(0, visibleLower - 1);
+            upper = Math.min(visibleUpper + 1, numChildren - 1);
+            destinationLower = lower;
+            destinationUpper = upper;
+        } else {
+            int destinationPage = getDestinationPage();
+            int pagesAhead = Utilities.boundToRange(
+                    Math.round(mScroller.getCurrVelocity() / mFastFlingVelocity),
+                    1, MAX_PREFETCH_PAGES_AHEAD);
+            lower = destinationPage < centerPageIndex
+                    ? Math.max(Math.max(visibleLower - pagesAhead, destinationPage - 1), 0)
+                    : visibleLower;
+            upper = destinationPage > centerPageIndex
+                    ? Math.min(Math.min(visibleUpper + pagesAhead, destinationPage + 1),
+                            numChildren - 1)
+                    : visibleUpper;
+            destinationLower = Math.max(0, destinationPage - 1);
+            destinationUpper = Math.min(destinationPage + 1, numChildren - 1);
+        }
 
         // Update the task data for the in/visible children
         for (int i = 0; i < getTaskViewCount(); i++) {
             TaskView taskView = getTaskViewAt(i);
             Task task = taskView.getTask();
             int index = indexOfChild(taskView);
-            boolean visible = lower <= index && index <= upper;
+            boolean visible = (lower <= index && index <= upper)
+                    || (destinationLower <= index && index <= destinationUpper);
             if (visible) {
                 if (task == mTmpRunningTask) {
                     // Skip loading if this is the task that we are animating into
                     continue;
                 }
+                boolean prefetch = index < visibleLower || visibleUpper < index;
                 if (!mHasVisibleTaskData.get(task.key.id)) {
+                    taskView.onTaskListVisibilityChanged(true /* visible */, prefetch);
+                    if (prefetch) {
+                        mPrefetchedTaskData.put(task.key.id, true);
+                    }
+                } else if (!prefetch && mPrefetchedTaskData.get(task.key.id)) {
+                    // Upgrade the thumbnail of the prefetched task now that it is visible
                     taskView.onTaskListVisibilityChanged(true /* visible */);
+                    mPrefetchedTaskData.delete(task.key.id);
                 }
                 mHasVisibleTaskData.put(task.key.id, visible);
             } else {
+                // Also cancels the pending prefetches of the task
                 if (mHasVisibleTaskData.get(task.key.id)) {
                     taskView.onTaskListVisibilityChanged(false /* visible */);
                 }
                 mHasVisibleTaskData.delete(task.key.id);
+                mPrefetchedTaskData.delete(task.key.id);
             }
         }
     }
@@ -1021,6 +1069,7 @@ public abstract class RecentsView<T extends StatefulActivity> extends PagedView
             }
         }
         mHasVisibleTaskData.clear();
+        mPrefetchedTaskData.clear();
     }
 
     @Override
@@ -1033,7 +1082,8 @@ public abstract class RecentsView<T extends StatefulActivity> extends PagedView
                 if (taskView != null) {
                     // Poke the view again, which will trigger it to load high res if the state
                     // is enabled
-                    taskView.onTaskListVisibilityChanged(true /* visible */);
+                    taskView.onTaskListVisibilityChanged(true /* visible */,
+                            mPrefetchedTaskData.get(mHasVisibleTaskData.keyAt(i)));
                 }
             }
         }
@@ -456,6 +456,14 @@ public class TaskView extends FrameLayout implements PageCallbacks, Reusable {
     }
 
     public void onTaskListVisibilityChanged(boolean visible) {
+        onTaskListVisibilityChanged(visible, false /* prefetch */);
+    }
+
+    /**
+     * @param prefetch Whether the task is only loaded ahead of being visible, in which case only
+     *                 the low resolution thumbnail is loaded.
+     */
+    public void onTaskListVisibilityChanged(boolean visible, boolean prefetch) {
         if (mTask == null) {
             return;
         }
@@ -466,8 +474,8 @@ public class TaskView extends FrameLayout implements PageCallbacks, Reusable {
             RecentsModel model = RecentsModel.INSTANCE.get(getContext());
             TaskThumbnailCache thumbnailCache = model.getThumbnailCache();
             TaskIconCache iconCache = model.getIconCache();
-            mThumbnailLoadRequest = thumbnailCache.updateThumbnailInBackground(
-                    mTask, thumbnail -> mSnapshotView.setThumbnail(mTask, thumbnail));
+            mThumbnailLoadRequest = thumbnailCache.updateThumbnailInBackground(mTask, prefetch,
+                    thumbnail -> mSnapshotView.setThumbnail(mTask, thumbnail));
             mIconLoadRequest = iconCache.updateIconInBackground(mTask,
                     (task) -> {
                         setIcon(task.icon);
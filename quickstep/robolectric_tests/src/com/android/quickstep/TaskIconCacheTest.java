@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Looper;
+import android.os.Process;
+
+import com.android.launcher3.icons.BitmapInfo;
+import com.android.launcher3.util.LauncherModelHelper;
+import com.android.quickstep.TaskIconCache.TaskCacheEntry;
+import com.android.systemui.shared.recents.model.Task;
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+/**
+ * Tests for the persisted entries of {@link TaskIconCache}
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
+public class TaskIconCacheTest {
+
+    private static final String TEST_PACKAGE = "com.example.app";
+    private static final String CONTENT_DESCRIPTION = "description";
+
+    private Context mContext;
+
+    @Before
+    public void setup() {
+        new LauncherModelHelper();
+        mContext = RuntimeEnvironment.application;
+        installPackage(1 /* versionCode */);
+    }
+
+    @Test
+    public void testReadsWrittenEntry() {
+        newTaskIconCache().writeToDb(newTask(), newEntry());
+
+        TaskCacheEntry entry = new TaskCacheEntry();
+        assertTrue(newTaskIconCache().readFromDb(newTask(), true /* loadContentDescription */,
+                entry));
+        assertNotNull(entry.icon);
+        assertTrue(entry.hasContentDescription);
+        assertEquals(CONTENT_DESCRIPTION, entry.contentDescription);
+    }
+
+    @Test
+    public void testPackageVersionChangeInvalidatesEntry() {
+        newTaskIconCache().writeToDb(newTask(), newEntry());
+
+        // Updated while the process was not running
+        installPackage(2 /* versionCode */);
+
+        assertFalse(newTaskIconCache().readFromDb(newTask(), false /* loadContentDescription */,
+                new TaskCacheEntry()));
+    }
+
+    @Test
+    public void testPackageChangeRemovesEntry() {
+        TaskIconCache cache = newTaskIconCache();
+        cache.writeToDb(newTask(), newEntry());
+
+        cache.invalidateCacheEntries(TEST_PACKAGE, Process.myUserHandle());
+        ShadowLooper.idleMainLooper();
+
+        assertFalse(newTaskIconCache().readFromDb(newTask(), false /* loadContentDescription */,
+                new TaskCacheEntry()));
+    }
+
+    @Test
+    public void testSystemStateChangeInvalidatesEntry() {
+        newTaskIconCache().writeToDb(newTask(), newEntry());
+
+        RuntimeEnvironment.setQualifiers("fr-rFR");
+
+        assertFalse(newTaskIconCache().readFromDb(newTask(), false /* loadContentDescription */,
+                new TaskCacheEntry()));
+    }
+
+    @Test
+    public void testUnknownPackageIsNotPersisted() {
+        Task task = newTask("com.example.unknown");
+        newTaskIconCache().writeToDb(task, newEntry());
+
+        assertFalse(newTaskIconCache().readFromDb(task, false /* loadContentDescription */,
+                new TaskCacheEntry()));
+    }
+
+    private TaskIconCache newTaskIconCache() {
+        return new TaskIconCache(mContext, Looper.getMainLooper());
+    }
+
+    private void installPackage(long versionCode) {
+        ApplicationInfo appInfo = new ApplicationInfo();
+        appInfo.packageName = TEST_PACKAGE;
+        appInfo.sourceDir = "/data/app/" + TEST_PACKAGE + "/base.apk";
+        ReflectionHelpers.setField(appInfo, "longVersionCode", versionCode);
+        PackageInfo info = new PackageInfo();
+        info.packageName = TEST_PACKAGE;
+        info.applicationInfo = appInfo;
+        shadowOf(mContext.getPackageManager()).installPackage(info);
+    }
+
+    private static Task newTask() {
+        return newTask(TEST_PACKAGE);
+    }
+
+    private static Task newTask(String packageName) {
+        ComponentName cn = new ComponentName(packageName, "Activity");
+        return new Task(new TaskKey(1, 0, new Intent().setComponent(cn), cn,
+                Process.myUserHandle().getIdentifier(), 0));
+    }
+
+    private static TaskCacheEntry newEntry() {
+        TaskCacheEntry entry = new TaskCacheEntry();
+        entry.bitmapInfo = BitmapInfo.of(Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888),
+                Color.RED);
+        entry.contentDescription = CONTENT_DESCRIPTION;
+        entry.hasContentDescription = true;
+        return entry;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Tests {@link TaskKeyLruCache} under parallel access. The benchmark, comparing it with the
+ * previous implementation synchronized around an access ordered {@link LinkedHashMap}, is only
+ * run manually.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TaskKeyLruCacheBenchmarkTest {
+
+    private static final int CACHE_SIZE = 12;
+    private static final int KEY_COUNT = 16;
+    private static final int[] READER_COUNTS = {1, 2, 4, 8};
+    private static final int READS_PER_READER = 200_000;
+    private static final int WRITES = 2_000;
+    private static final int ROUNDS = 3;
+
+    private static final TaskKey[] KEYS = new TaskKey[KEY_COUNT];
+    static {
+        for (int i = 0; i < KEY_COUNT; i++) {
+            KEYS[i] = new TaskKey(i, 0, null, null, 0, 0);
+        }
+    }
+
+    @Test
+    public void testStaysWithinSizeUnderParallelAccess() throws Exception {
+        TaskKeyLruCache<Integer> cache = new TaskKeyLruCache<>(CACHE_SIZE);
+        int[] hits = new int[1];
+        runInParallel(8, reader -> {
+            Random random = new Random(reader);
+            for (int i = 0; i < READS_PER_READER / 10; i++) {
+                TaskKey key = KEYS[random.nextInt(KEY_COUNT)];
+                if (reader % 2 == 0) {
+                    cache.put(key, key.id);
+                } else {
+                    Integer value = cache.getAndInvalidateIfModified(key);
+                    if (value != null) {
+                        assertEquals(key.id, (int) value);
+                        synchronized (hits) {
+                            hits[0]++;
+                        }
+                    }
+                }
+            }
+        });
+        assertTrue(cache.getSize() <= CACHE_SIZE);
+        assertTrue(hits[0] > 0);
+    }
+
+    @Ignore // The benchmark is too long for continuous testing, and only prints the results.
+    @Test
+    public void benchmarkAgainstReference() throws Exception {
+        for (int readers : READER_COUNTS) {
+            long referenceNanos = Long.MAX_VALUE;
+            long cacheNanos = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                SynchronizedLruCache<Integer> reference = new SynchronizedLruCache<>(CACHE_SIZE);
+                referenceNanos = Math.min(referenceNanos, runReadersAndWriter(readers,
+                        reference::getAndInvalidateIfModified, reference::put));
+
+                TaskKeyLruCache<Integer> cache = new TaskKeyLruCache<>(CACHE_SIZE);
+                cacheNanos = Math.min(cacheNanos, runReadersAndWriter(readers,
+                        cache::getAndInvalidateIfModified, cache::put));
+            }
+            System.out.println(String.format(
+                    "TaskKeyLruCache %d readers: synchronized=%dms concurrent=%dms",
+                    readers, referenceNanos / 1_000_000, cacheNanos / 1_000_000));
+        }
+    }
+
+    private static long runReadersAndWriter(int readers,
+            Function<TaskKey, Integer> get,
+            BiConsumer<TaskKey, Integer> put) throws Exception {
+        for (TaskKey key : KEYS) {
+            put.accept(key, key.id);
+        }
+        long start = System.nanoTime();
+        runInParallel(readers + 1, thread -> {
+            Random random = new Random(thread);
+            if (thread == readers) {
+                for (int i = 0; i < WRITES; i++) {
+                    TaskKey key = KEYS[random.nextInt(KEY_COUNT)];
+                    put.accept(key, key.id);
+                }
+            } else {
+                for (int i = 0; i < READS_PER_READER; i++) {
+                    get.apply(KEYS[random.nextInt(KEY_COUNT)]);
+                }
+            }
+        });
+        return System.nanoTime() - start;
+    }
+
+    private static void runInParallel(int threadCount, Consumer<Integer> task) throws Exception {
+        CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        Throwable[] error = new Throwable[1];
+        for (int i = 0; i < threadCount; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    startLatch.await();
+                    task.accept(index);
+                } catch (Throwable t) {
+                    synchronized (error) {
+                        error[0] = t;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        startLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (error[0] != null) {
+            throw new AssertionError(error[0]);
+        }
+    }
+
+    /**
+     * The previous implementation of {@link TaskKeyLruCache}, reordering the entries under a lock
+     * on every read
+     */
+    private static class SynchronizedLruCache<V> {
+
+        private final LinkedHashMap<Integer, Entry<V>> mMap;
+
+        SynchronizedLruCache(int maxSize) {
+            mMap = new LinkedHashMap<Integer, Entry<V>>(0, 0.75f, true /* accessOrder */) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Entry<V>> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized V getAndInvalidateIfModified(TaskKey key) {
+            Entry<V> entry = mMap.get(key.id);
+            if (entry != null && entry.mKey.windowingMode == key.windowingMode
+                    && entry.mKey.lastActiveTime == key.lastActiveTime) {
+                return entry.mValue;
+            } else {
+                mMap.remove(key.id);
+                return null;
+            }
+        }
+
+        synchronized void put(TaskKey key, V value) {
+            mMap.put(key.id, new Entry<>(key, value));
+        }
+
+        private static class Entry<V> {
+            final TaskKey mKey;
+            final V mValue;
+
+            Entry(TaskKey key, V value) {
+                mKey = key;
+                mValue = value;
+            }
+        }
+    }
+}
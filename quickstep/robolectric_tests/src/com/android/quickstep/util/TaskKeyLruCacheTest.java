@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link TaskKeyLruCache}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TaskKeyLruCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsedByCount() {
+        TaskKeyLruCache<String> cache = new TaskKeyLruCache<>(2);
+        cache.put(key(1), "1");
+        cache.put(key(2), "2");
+        // Use the first entry so that the second one is the least recently used
+        assertNotNull(cache.getAndInvalidateIfModified(key(1)));
+        cache.put(key(3), "3");
+
+        assertNull(cache.getAndInvalidateIfModified(key(2)));
+        assertNotNull(cache.getAndInvalidateIfModified(key(1)));
+        assertNotNull(cache.getAndInvalidateIfModified(key(3)));
+    }
+
+    @Test
+    public void testEvictsLargeEntriesFirst() {
+        SizedCache cache = new SizedCache(10);
+        cache.put(key(1), 2);
+        cache.put(key(2), 6);
+        cache.put(key(3), 2);
+        assertEquals(10, cache.getSize());
+
+        // The large entry goes first, even though the first one was used longer ago
+        cache.put(key(4), 2);
+        assertEquals(6, cache.getSize());
+        assertNull(cache.getAndInvalidateIfModified(key(2)));
+        assertNotNull(cache.getAndInvalidateIfModified(key(1)));
+    }
+
+    @Test
+    public void testShrinkingMaxSizeEvicts() {
+        SizedCache cache = new SizedCache(10);
+        cache.put(key(1), 3);
+        cache.put(key(2), 3);
+        cache.put(key(3), 3);
+        cache.updateIfAlreadyInCache(3, 1);
+        assertEquals(7, cache.getSize());
+
+        cache.setMaxSize(4);
+        assertEquals(4, cache.getSize());
+        assertNull(cache.getAndInvalidateIfModified(key(1)));
+    }
+
+    private static TaskKey key(int id) {
+        return new TaskKey(id, 0, null, null, 0, 0);
+    }
+
+    private static class SizedCache extends TaskKeyLruCache<Integer> {
+
+        SizedCache(long maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected long sizeOf(Integer value) {
+            return value;
+        }
+
+        @Override
+        protected boolean isEvictedFirst(Integer value) {
+            return value > 5;
+        }
+    }
+}
@@ -17,6 +17,8 @@
 package com.android.quickstep;
 
 import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+import static com.android.systemui.shared.system.RemoteAnimationTargetCompat.ACTIVITY_TYPE_HOME;
+import static com.android.systemui.shared.system.RemoteAnimationTargetCompat.ACTIVITY_TYPE_RECENTS;
 
 import android.annotation.TargetApi;
 import android.app.ActivityManager;
@@ -30,15 +32,24 @@ import com.android.launcher3.util.LooperExecutor;
 import com.android.systemui.shared.recents.model.Task;
 import com.android.systemui.shared.system.ActivityManagerWrapper;
 import com.android.systemui.shared.system.KeyguardManagerCompat;
+import com.android.systemui.shared.system.TaskInfoCompat;
 import com.android.systemui.shared.system.TaskStackChangeListener;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Manages the recent task list from the system, caching it as necessary.
+ *
+ * The task stack change events which only reorder or remove known tasks are applied to the cached
+ * list, instead of reloading it. The list is reloaded when an event can't be applied, eg. a task
+ * which isn't in the list is moved to front, or when the task stack changes without such an
+ * event explaining it. As the system coalesces the stack changes, a stack change following
+ * applied events may also include other changes, so the list is then checked against the running
+ * task before being reused.
  */
 @TargetApi(Build.VERSION_CODES.R)
 public class RecentTasksList extends TaskStackChangeListener {
@@ -55,6 +66,9 @@ public class RecentTasksList extends TaskStackChangeListener {
     private TaskLoadResult mResultsBg = INVALID_RESULT;
     private TaskLoadResult mResultsUi = INVALID_RESULT;
 
+    // Whether events were applied to the cached list since the last task stack change
+    private boolean mHasAppliedChanges;
+
     public RecentTasksList(LooperExecutor mainThreadExecutor,
             KeyguardManagerCompat keyguardManager, ActivityManagerWrapper activityManagerWrapper) {
         mMainThreadExecutor = mainThreadExecutor;
@@ -84,7 +98,8 @@ public class RecentTasksList extends TaskStackChangeListener {
      */
     public synchronized int getTasks(boolean loadKeysOnly, Consumer<ArrayList<Task>> callback) {
         final int requestLoadId = mChangeId;
-        if (mResultsUi.isValidForRequest(requestLoadId, loadKeysOnly)) {
+        if (mResultsUi.isValidForRequest(requestLoadId, loadKeysOnly)
+                && !mResultsUi.mNeedsVerification) {
             // The list is up to date, send the callback on the next frame,
             // so that requestID can be returned first.
             if (callback != null) {
@@ -100,6 +115,10 @@ public class RecentTasksList extends TaskStackChangeListener {
         UI_HELPER_EXECUTOR.execute(() -> {
             if (!mResultsBg.isValidForRequest(requestLoadId, loadKeysOnly)) {
                 mResultsBg = loadTasksInBackground(Integer.MAX_VALUE, requestLoadId, loadKeysOnly);
+            } else if (mResultsBg.mNeedsVerification) {
+                mResultsBg = matchesRunningTask(mResultsBg)
+                        ? mResultsBg.copy(mResultsBg.mId, false /* needsVerification */)
+                        : loadTasksInBackground(Integer.MAX_VALUE, requestLoadId, loadKeysOnly);
             }
             TaskLoadResult loadResult = mResultsBg;
             mMainThreadExecutor.execute(() -> {
@@ -122,8 +141,13 @@ public class RecentTasksList extends TaskStackChangeListener {
     }
 
     @Override
-    public void onTaskStackChanged() {
-        invalidateLoadedTasks();
+    public synchronized void onTaskStackChanged() {
+        if (!mHasAppliedChanges) {
+            invalidateLoadedTasks();
+            return;
+        }
+        // The change is most likely explained by the applied events, but it may include others
+        updateLoadedTasks(true /* needsVerification */, tasks -> true);
     }
 
     @Override
@@ -138,14 +162,44 @@ public class RecentTasksList extends TaskStackChangeListener {
     }
 
     @Override
-    public void onTaskRemoved(int taskId) {
-        invalidateLoadedTasks();
+    public void onTaskMovedToFront(ActivityManager.RunningTaskInfo taskInfo) {
+        int activityType = TaskInfoCompat.getActivityType(taskInfo);
+        if (activityType == ACTIVITY_TYPE_HOME || activityType == ACTIVITY_TYPE_RECENTS) {
+            // These tasks are not in the list, and moving them doesn't reorder the other tasks
+            synchronized (this) {
+                mHasAppliedChanges = true;
+            }
+            return;
+        }
+        int taskId = taskInfo.taskId;
+        updateLoadedTasks(false /* needsVerification */, tasks -> {
+            // The list is ordered from the least recent to the most recent task
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i).key.id == taskId) {
+                    tasks.add(tasks.remove(i));
+                    return true;
+                }
+            }
+            // Unknown task, eg. a new one
+            return false;
+        });
     }
 
+    @Override
+    public void onTaskRemoved(int taskId) {
+        updateLoadedTasks(false /* needsVerification */, tasks -> {
+            removeTask(tasks, taskId);
+            return true;
+        });
+    }
 
     @Override
     public void onActivityPinned(String packageName, int userId, int taskId, int stackId) {
-        invalidateLoadedTasks();
+        // Pinned tasks are not part of the recent tasks
+        updateLoadedTasks(false /* needsVerification */, tasks -> {
+            removeTask(tasks, taskId);
+            return true;
+        });
     }
 
     @Override
@@ -156,9 +210,54 @@ public class RecentTasksList extends TaskStackChangeListener {
     private synchronized void invalidateLoadedTasks() {
         UI_HELPER_EXECUTOR.execute(() -> mResultsBg = INVALID_RESULT);
         mResultsUi = INVALID_RESULT;
+        mHasAppliedChanges = false;
         mChangeId++;
     }
 
+    /**
+     * Applies {@param change} to the loaded lists of tasks. A list for which the change returns
+     * false has drifted from the system, and is reloaded on the next request.
+     *
+     * @param needsVerification Whether the lists may have drifted from the system anyway, in which
+     *                          case they are checked against the running task before being reused
+     */
+    private synchronized void updateLoadedTasks(boolean needsVerification,
+            Predicate<ArrayList<Task>> change) {
+        int previousId = mChangeId;
+        int newId = ++mChangeId;
+        mHasAppliedChanges = !needsVerification;
+        mResultsUi = mResultsUi.applyChange(previousId, newId, needsVerification, change);
+        UI_HELPER_EXECUTOR.execute(() -> mResultsBg =
+                mResultsBg.applyChange(previousId, newId, needsVerification, change));
+    }
+
+    /**
+     * Returns whether the most recent task of {@param tasks} is the running task. This is a cheap
+     * check for whether the list has drifted from the system, as the running task is the one which
+     * is most often out of date.
+     */
+    private boolean matchesRunningTask(ArrayList<Task> tasks) {
+        ActivityManager.RunningTaskInfo runningTask = mActivityManagerWrapper.getRunningTask();
+        if (runningTask == null) {
+            return false;
+        }
+        int activityType = TaskInfoCompat.getActivityType(runningTask);
+        if (activityType == ACTIVITY_TYPE_HOME || activityType == ACTIVITY_TYPE_RECENTS) {
+            // These tasks are not in the list
+            return true;
+        }
+        return !tasks.isEmpty() && tasks.get(tasks.size() - 1).key.id == runningTask.taskId;
+    }
+
+    private static void removeTask(ArrayList<Task> tasks, int taskId) {
+        for (int i = tasks.size() - 1; i >= 0; i--) {
+            if (tasks.get(i).key.id == taskId) {
+                tasks.remove(i);
+                return;
+            }
+        }
+    }
+
     /**
      * Loads and creates a list of all the recent tasks.
      */
@@ -214,14 +313,42 @@ public class RecentTasksList extends TaskStackChangeListener {
         // If the result was loaded with keysOnly  = true
         final boolean mKeysOnly;
 
+        // If the task stack may have changed in ways which were not applied to the result
+        final boolean mNeedsVerification;
+
         TaskLoadResult(int id, boolean keysOnly, int size) {
+            this(id, keysOnly, false /* needsVerification */, size);
+        }
+
+        TaskLoadResult(int id, boolean keysOnly, boolean needsVerification, int size) {
             super(size);
             mId = id;
             mKeysOnly = keysOnly;
+            mNeedsVerification = needsVerification;
         }
 
         boolean isValidForRequest(int requestId, boolean loadKeysOnly) {
             return mId == requestId && (!mKeysOnly || loadKeysOnly);
         }
+
+        /**
+         * Returns a copy of this result with {@param change} applied, for the list change
+         * {@param newId}, or an invalid result if this result was not for {@param previousId} or
+         * the change can't be applied.
+         */
+        TaskLoadResult applyChange(int previousId, int newId, boolean needsVerification,
+                Predicate<ArrayList<Task>> change) {
+            if (mId != previousId) {
+                return INVALID_RESULT;
+            }
+            TaskLoadResult result = copy(newId, mNeedsVerification || needsVerification);
+            return change.test(result) ? result : INVALID_RESULT;
+        }
+
+        TaskLoadResult copy(int id, boolean needsVerification) {
+            TaskLoadResult result = new TaskLoadResult(id, mKeysOnly, needsVerification, size());
+            result.addAll(this);
+            return result;
+        }
     }
 }
\ No newline at end of file
@@ -25,6 +25,7 @@ import android.annotation.TargetApi;
 import android.app.ActivityManager;
 import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.pm.LauncherApps;
 import android.os.Build;
 import android.os.Looper;
 import android.os.Process;
@@ -38,6 +39,7 @@ import com.android.systemui.shared.system.ActivityManagerWrapper;
 import com.android.systemui.shared.system.KeyguardManagerCompat;
 import com.android.systemui.shared.system.TaskStackChangeListener;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
@@ -71,6 +73,10 @@ public class RecentsModel extends TaskStackChangeListener {
         ActivityManagerWrapper.getInstance().registerTaskStackListener(this);
         IconProvider.registerIconChangeListener(context,
                 this::onPackageIconChanged, MAIN_EXECUTOR.getHandler());
+
+        // Drop the persisted task icons of the packages which change, in any profile
+        context.getSystemService(LauncherApps.class).registerCallback(
+                new PackageChangeCallback(), MAIN_EXECUTOR.getHandler());
     }
 
     public TaskIconCache getIconCache() {
@@ -169,6 +175,7 @@ public class RecentsModel extends TaskStackChangeListener {
         if (level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
             mThumbnailCache.getHighResLoadingState().setVisible(false);
         }
+        mThumbnailCache.onTrimMemory(level);
         if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
             // Clear everything once we reach a low-mem situation
             mThumbnailCache.clear();
@@ -176,6 +183,11 @@ public class RecentsModel extends TaskStackChangeListener {
         }
     }
 
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "RecentsModel:");
+        mThumbnailCache.dump(prefix + "  ", writer);
+    }
+
     private void onPackageIconChanged(String pkg, UserHandle user) {
         mIconCache.invalidateCacheEntries(pkg, user);
         for (int i = mThumbnailChangeListeners.size() - 1; i >= 0; i--) {
@@ -197,6 +209,40 @@ public class RecentsModel extends TaskStackChangeListener {
         mThumbnailChangeListeners.remove(listener);
     }
 
+    private class PackageChangeCallback extends LauncherApps.Callback {
+
+        @Override
+        public void onPackageRemoved(String packageName, UserHandle user) {
+            onPackageIconChanged(packageName, user);
+        }
+
+        @Override
+        public void onPackageAdded(String packageName, UserHandle user) {
+            onPackageIconChanged(packageName, user);
+        }
+
+        @Override
+        public void onPackageChanged(String packageName, UserHandle user) {
+            onPackageIconChanged(packageName, user);
+        }
+
+        @Override
+        public void onPackagesAvailable(String[] packageNames, UserHandle user,
+                boolean replacing) {
+            for (String packageName : packageNames) {
+                onPackageIconChanged(packageName, user);
+            }
+        }
+
+        @Override
+        public void onPackagesUnavailable(String[] packageNames, UserHandle user,
+                boolean replacing) {
+            for (String packageName : packageNames) {
+                onPackageIconChanged(packageName, user);
+            }
+        }
+    }
+
     /**
      * Listener for receiving various task properties changes
      */
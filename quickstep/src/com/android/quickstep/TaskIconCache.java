@@ -20,29 +20,46 @@ import static com.android.launcher3.uioverrides.QuickstepLauncher.GO_LOW_RAM_REC
 import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 
 import android.app.ActivityManager.TaskDescription;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.LauncherApps;
+import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.UserHandle;
+import android.text.TextUtils;
+import android.util.Log;
 import android.util.SparseArray;
 import android.view.accessibility.AccessibilityManager;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
 import com.android.launcher3.FastBitmapDrawable;
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherFiles;
 import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.icons.BitmapInfo;
+import com.android.launcher3.icons.GraphicsUtils;
 import com.android.launcher3.icons.IconProvider;
 import com.android.launcher3.icons.LauncherIcons;
 import com.android.launcher3.icons.cache.HandlerRunnable;
+import com.android.launcher3.pm.UserCache;
+import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Preconditions;
+import com.android.launcher3.util.SQLiteCacheHelper;
 import com.android.quickstep.util.TaskKeyLruCache;
 import com.android.systemui.shared.recents.model.Task;
 import com.android.systemui.shared.recents.model.Task.TaskKey;
@@ -50,13 +67,22 @@ import com.android.systemui.shared.system.ActivityManagerWrapper;
 import com.android.systemui.shared.system.PackageManagerWrapper;
 import com.android.systemui.shared.system.TaskDescriptionCompat;
 
+import java.io.File;
+import java.util.HashMap;
 import java.util.function.Consumer;
 
 /**
  * Manages the caching of task icons and related data.
+ *
+ * The icons loaded from the activity, and their content descriptions, are also persisted by
+ * component and user, so that they don't have to be loaded again after a restart. These entries
+ * are only used for the same package version and system state, and are removed when the package
+ * changes in the user.
  */
 public class TaskIconCache {
 
+    private static final String TAG = "TaskIconCache";
+
     private final Handler mBackgroundHandler;
     private final AccessibilityManager mAccessibilityManager;
 
@@ -65,6 +91,12 @@ public class TaskIconCache {
     private final SparseArray<BitmapInfo> mDefaultIcons = new SparseArray<>();
     private final IconProvider mIconProvider;
 
+    private final IconDb mIconDb;
+    private final UserCache mUserCache;
+    private final LauncherApps mLauncherApps;
+    // Versions of the packages of the persisted icons, only accessed on the background thread
+    private final HashMap<PackageUserKey, long[]> mPackageVersions = new HashMap<>();
+
     public TaskIconCache(Context context, Looper backgroundLooper) {
         mContext = context;
         mBackgroundHandler = new Handler(backgroundLooper);
@@ -74,6 +106,10 @@ public class TaskIconCache {
         int cacheSize = res.getInteger(R.integer.recentsIconCacheSize);
         mIconCache = new TaskKeyLruCache<>(cacheSize);
         mIconProvider = new IconProvider(context);
+        mIconDb = new IconDb(context,
+                InvariantDeviceProfile.INSTANCE.get(context).iconBitmapSize);
+        mUserCache = UserCache.INSTANCE.get(context);
+        mLauncherApps = context.getSystemService(LauncherApps.class);
     }
 
     /**
@@ -120,9 +156,11 @@ public class TaskIconCache {
     }
 
     void invalidateCacheEntries(String pkg, UserHandle handle) {
-        Utilities.postAsyncCallback(mBackgroundHandler,
-                () -> mIconCache.removeAll(key ->
-                        pkg.equals(key.getPackageName()) && handle.getIdentifier() == key.userId));
+        Utilities.postAsyncCallback(mBackgroundHandler, () -> {
+            mIconCache.removeAll(key ->
+                    pkg.equals(key.getPackageName()) && handle.getIdentifier() == key.userId);
+            removePackageFromDb(pkg, handle);
+        });
     }
 
     @WorkerThread
@@ -135,6 +173,9 @@ public class TaskIconCache {
         TaskDescription desc = task.taskDescription;
         TaskKey key = task.key;
         ActivityInfo activityInfo = null;
+        // Loading content descriptions if accessibility or low RAM recents is enabled.
+        boolean loadContentDescription =
+                GO_LOW_RAM_RECENTS_ENABLED || mAccessibilityManager.isEnabled();
 
         // Create new cache entry
         entry = new TaskCacheEntry();
@@ -148,7 +189,7 @@ public class TaskIconCache {
                     key.userId,
                     desc.getPrimaryColor(),
                     false /* isInstantApp */));
-        } else {
+        } else if (!readFromDb(task, loadContentDescription, entry)) {
             activityInfo = PackageManagerWrapper.getInstance().getActivityInfo(
                     key.getComponent(), key.userId);
             if (activityInfo != null) {
@@ -158,13 +199,13 @@ public class TaskIconCache {
                         desc.getPrimaryColor(),
                         activityInfo.applicationInfo.isInstantApp());
                 entry.icon = newIcon(mContext, bitmapInfo);
+                entry.bitmapInfo = bitmapInfo;
             } else {
                 entry.icon = getDefaultIcon(key.userId);
             }
         }
 
-        // Loading content descriptions if accessibility or low RAM recents is enabled.
-        if (GO_LOW_RAM_RECENTS_ENABLED || mAccessibilityManager.isEnabled()) {
+        if (loadContentDescription && !entry.hasContentDescription) {
             // Skip loading the content description if the activity no longer exists
             if (activityInfo == null) {
                 activityInfo = PackageManagerWrapper.getInstance().getActivityInfo(
@@ -174,13 +215,132 @@ public class TaskIconCache {
                 entry.contentDescription = ActivityManagerWrapper.getInstance()
                         .getBadgedContentDescription(activityInfo, task.key.userId,
                                 task.taskDescription);
+                entry.hasContentDescription = true;
             }
         }
 
+        if (entry.bitmapInfo != null) {
+            // Persist the icon after the callback
+            TaskCacheEntry loadedEntry = entry;
+            Utilities.postAsyncCallback(mBackgroundHandler, () -> writeToDb(task, loadedEntry));
+        }
         mIconCache.put(task.key, entry);
         return entry;
     }
 
+    /**
+     * Reads the icon, and the content description if {@param loadContentDescription}, of
+     * {@param task} from the DB into {@param entry}, returning false if they are not in the DB
+     * or are obsolete.
+     */
+    @VisibleForTesting
+    @WorkerThread
+    boolean readFromDb(Task task, boolean loadContentDescription, TaskCacheEntry entry) {
+        TaskKey key = task.key;
+        String component = key.getComponent().flattenToShortString();
+        UserHandle user = UserHandle.of(key.userId);
+        long userSerial = mUserCache.getSerialNumberForUser(user);
+        long[] versions = getPackageVersion(key.getPackageName(), user);
+        if (versions == null) {
+            return false;
+        }
+        try (Cursor c = mIconDb.query(
+                new String[]{IconDb.COLUMN_VERSION, IconDb.COLUMN_LAST_UPDATED,
+                        IconDb.COLUMN_SYSTEM_STATE, IconDb.COLUMN_PRIMARY_COLOR,
+                        IconDb.COLUMN_TASK_LABEL, IconDb.COLUMN_ICON, IconDb.COLUMN_ICON_COLOR,
+                        IconDb.COLUMN_CONTENT_DESCRIPTION},
+                IconDb.COLUMN_COMPONENT + " = ? AND " + IconDb.COLUMN_USER + " = ?",
+                new String[]{component, Long.toString(userSerial)})) {
+            if (!c.moveToNext()
+                    || c.getLong(0) != versions[0]
+                    || c.getLong(1) != versions[1]
+                    || !getSystemState(key.getPackageName()).equals(c.getString(2))
+                    || c.getInt(3) != task.taskDescription.getPrimaryColor()
+                    || !TextUtils.equals(c.getString(4), task.taskDescription.getLabel())
+                    || (loadContentDescription && c.isNull(7))) {
+                return false;
+            }
+            byte[] blob = c.getBlob(5);
+            Bitmap icon = BitmapFactory.decodeByteArray(blob, 0, blob.length);
+            if (icon == null) {
+                return false;
+            }
+            entry.icon = newIcon(mContext, BitmapInfo.of(icon, c.getInt(6)));
+            if (!c.isNull(7)) {
+                entry.contentDescription = c.getString(7);
+                entry.hasContentDescription = true;
+            }
+            return true;
+        } catch (SQLException e) {
+            Log.w(TAG, "Error loading task icon from DB", e);
+            return false;
+        }
+    }
+
+    @VisibleForTesting
+    @WorkerThread
+    void writeToDb(Task task, TaskCacheEntry entry) {
+        TaskKey key = task.key;
+        UserHandle user = UserHandle.of(key.userId);
+        long[] versions = getPackageVersion(key.getPackageName(), user);
+        if (versions == null) {
+            // The entry could never be read back
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(IconDb.COLUMN_COMPONENT, key.getComponent().flattenToShortString());
+        values.put(IconDb.COLUMN_USER, mUserCache.getSerialNumberForUser(user));
+        values.put(IconDb.COLUMN_PACKAGE, key.getPackageName());
+        values.put(IconDb.COLUMN_VERSION, versions[0]);
+        values.put(IconDb.COLUMN_LAST_UPDATED, versions[1]);
+        values.put(IconDb.COLUMN_SYSTEM_STATE, getSystemState(key.getPackageName()));
+        values.put(IconDb.COLUMN_PRIMARY_COLOR, task.taskDescription.getPrimaryColor());
+        values.put(IconDb.COLUMN_TASK_LABEL, task.taskDescription.getLabel());
+        values.put(IconDb.COLUMN_ICON, GraphicsUtils.flattenBitmap(entry.bitmapInfo.icon));
+        values.put(IconDb.COLUMN_ICON_COLOR, entry.bitmapInfo.color);
+        values.put(IconDb.COLUMN_CONTENT_DESCRIPTION,
+                entry.hasContentDescription ? entry.contentDescription : null);
+        mIconDb.insertOrReplace(values);
+    }
+
+    @WorkerThread
+    private void removePackageFromDb(String pkg, UserHandle user) {
+        mPackageVersions.remove(new PackageUserKey(pkg, user));
+        mIconDb.delete(IconDb.COLUMN_PACKAGE + " = ? AND " + IconDb.COLUMN_USER + " = ?",
+                new String[]{pkg, Long.toString(mUserCache.getSerialNumberForUser(user))});
+    }
+
+    /**
+     * Returns the version code and the modification time of the apk of {@param pkg} in
+     * {@param user}, or null if the package is not found.
+     */
+    @WorkerThread
+    private long[] getPackageVersion(String pkg, UserHandle user) {
+        PackageUserKey key = new PackageUserKey(pkg, user);
+        long[] versions = mPackageVersions.get(key);
+        if (versions == null) {
+            try {
+                ApplicationInfo info = mLauncherApps.getApplicationInfo(pkg, 0, user);
+                versions = new long[] {
+                        info.longVersionCode, new File(info.sourceDir).lastModified()};
+            } catch (NameNotFoundException e) {
+                Log.w(TAG, "ApplicationInfo not found " + pkg);
+                return null;
+            }
+            mPackageVersions.put(key, versions);
+        }
+        return versions;
+    }
+
+    /**
+     * Returns the state of the system which the persisted icons and labels of {@param pkg}
+     * depend on
+     */
+    private String getSystemState(String pkg) {
+        return mIconProvider.getSystemStateForPackage(
+                mContext.getResources().getConfiguration().getLocales().toLanguageTags(), pkg);
+    }
+
     @WorkerThread
     private Drawable getDefaultIcon(int userId) {
         synchronized (mDefaultIcons) {
@@ -214,8 +374,53 @@ public class TaskIconCache {
         }
     }
 
-    private static class TaskCacheEntry {
+    @VisibleForTesting
+    static class TaskCacheEntry {
         public Drawable icon;
         public String contentDescription = "";
+        public boolean hasContentDescription;
+        // The icon loaded from the activity, which can be persisted
+        public BitmapInfo bitmapInfo;
+    }
+
+    private static class IconDb extends SQLiteCacheHelper {
+        private static final int RELEASE_VERSION = 1;
+
+        private static final String TABLE_NAME = "task_icons";
+        private static final String COLUMN_COMPONENT = "componentName";
+        private static final String COLUMN_USER = "profileId";
+        private static final String COLUMN_PACKAGE = "packageName";
+        private static final String COLUMN_LAST_UPDATED = "lastUpdated";
+        private static final String COLUMN_VERSION = "version";
+        private static final String COLUMN_SYSTEM_STATE = "system_state";
+        private static final String COLUMN_PRIMARY_COLOR = "primary_color";
+        private static final String COLUMN_TASK_LABEL = "task_label";
+        private static final String COLUMN_ICON = "icon";
+        private static final String COLUMN_ICON_COLOR = "icon_color";
+        private static final String COLUMN_CONTENT_DESCRIPTION = "content_description";
+
+        IconDb(Context context, int iconPixelSize) {
+            // The DB is recreated when the icon size changes
+            super(context, LauncherFiles.TASK_ICONS_DB, (RELEASE_VERSION << 16) + iconPixelSize,
+                    TABLE_NAME);
+        }
+
+        @Override
+        protected void onCreateTable(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                    + COLUMN_COMPONENT + " TEXT NOT NULL, "
+                    + COLUMN_USER + " INTEGER NOT NULL, "
+                    + COLUMN_PACKAGE + " TEXT NOT NULL, "
+                    + COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0, "
+                    + COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 0, "
+                    + COLUMN_SYSTEM_STATE + " TEXT, "
+                    + COLUMN_PRIMARY_COLOR + " INTEGER NOT NULL DEFAULT 0, "
+                    + COLUMN_TASK_LABEL + " TEXT, "
+                    + COLUMN_ICON + " BLOB, "
+                    + COLUMN_ICON_COLOR + " INTEGER NOT NULL DEFAULT 0, "
+                    + COLUMN_CONTENT_DESCRIPTION + " TEXT, "
+                    + "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ") "
+                    + ");");
+        }
     }
 }
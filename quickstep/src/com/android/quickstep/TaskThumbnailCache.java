@@ -15,6 +15,9 @@
  */
 package com.android.quickstep;
 
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE;
+
 import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 
 import android.content.Context;
@@ -32,6 +35,7 @@ import com.android.systemui.shared.recents.model.Task.TaskKey;
 import com.android.systemui.shared.recents.model.ThumbnailData;
 import com.android.systemui.shared.system.ActivityManagerWrapper;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.function.Consumer;
 
@@ -40,7 +44,8 @@ public class TaskThumbnailCache {
     private final Handler mBackgroundHandler;
 
     private final int mCacheSize;
-    private final TaskKeyLruCache<ThumbnailData> mCache;
+    private final long mMaxSizeBytes;
+    private final ThumbnailCache mCache;
     private final HighResLoadingState mHighResLoadingState;
     private final boolean mEnableTaskSnapshotPreloading;
 
@@ -101,7 +106,8 @@ public class TaskThumbnailCache {
         Resources res = context.getResources();
         mCacheSize = res.getInteger(R.integer.recentsThumbnailCacheSize);
         mEnableTaskSnapshotPreloading = res.getBoolean(R.bool.config_enableTaskSnapshotPreloading);
-        mCache = new TaskKeyLruCache<>(mCacheSize);
+        mMaxSizeBytes = res.getInteger(R.integer.recentsThumbnailCacheSizeKb) * 1024L;
+        mCache = new ThumbnailCache(mMaxSizeBytes);
     }
 
     /**
@@ -132,9 +138,28 @@ public class TaskThumbnailCache {
      */
     public ThumbnailLoadRequest updateThumbnailInBackground(
             Task task, Consumer<ThumbnailData> callback) {
+        return updateThumbnailInBackground(task, false /* lowResolutionOnly */, callback);
+    }
+
+    /**
+     * Asynchronously fetches the icon and other task data for the given {@param task}.
+     *
+     * @param lowResolutionOnly Whether to only load the low resolution thumbnail, even if high
+     *                          resolution loading is enabled, eg. for a task which is not visible
+     *                          yet. The thumbnail can be upgraded by requesting it again.
+     * @param callback The callback to receive the task after its data has been populated.
+     * @return A cancelable handle to the request
+     */
+    public ThumbnailLoadRequest updateThumbnailInBackground(
+            Task task, boolean lowResolutionOnly, Consumer<ThumbnailData> callback) {
         Preconditions.assertUIThread();
+        // The thumbnails are used again, give back the memory taken on trim
+        if (mCache.getMaxSize() != mMaxSizeBytes) {
+            mCache.setMaxSize(mMaxSizeBytes);
+        }
 
-        boolean lowResolution = !mHighResLoadingState.isEnabled();
+        boolean lowResolution = !mHighResLoadingState.isEnabled()
+                || (lowResolutionOnly && !mHighResLoadingState.mForceHighResThumbnails);
         if (task.thumbnail != null && (!task.thumbnail.reducedResolution || lowResolution)) {
             // Nothing to load, the thumbnail is already high-resolution or matches what the
             // request, so just callback
@@ -143,7 +168,7 @@ public class TaskThumbnailCache {
         }
 
 
-        return updateThumbnailInBackground(task.key, !mHighResLoadingState.isEnabled(), t -> {
+        return updateThumbnailInBackground(task.key, lowResolution, t -> {
             task.thumbnail = t;
             callback.accept(t);
         });
@@ -190,6 +215,24 @@ public class TaskThumbnailCache {
         mCache.evictAll();
     }
 
+    /**
+     * Shrinks the memory budget of the cache as per the trim {@param level}. The full budget is
+     * restored the next time thumbnails are requested for display.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // Memory is low, or the UI was hidden and the thumbnails are not visible anymore
+            mCache.setMaxSize(mMaxSizeBytes / 4);
+        } else if (level == TRIM_MEMORY_RUNNING_MODERATE) {
+            mCache.setMaxSize(Math.min(mCache.getMaxSize(), mMaxSizeBytes / 2));
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "TaskThumbnailCache:");
+        mCache.dump(prefix + "  ", writer);
+    }
+
     /**
      * Removes the cached thumbnail for the given task.
      */
@@ -218,6 +261,42 @@ public class TaskThumbnailCache {
         return mEnableTaskSnapshotPreloading && mHighResLoadingState.mVisible;
     }
 
+    /**
+     * Cache of thumbnails bounded by the bytes of their bitmaps. High resolution thumbnails are
+     * several times larger than low resolution ones, so they are evicted first.
+     */
+    private static class ThumbnailCache extends TaskKeyLruCache<ThumbnailData> {
+
+        private long mHighResEvictionCount;
+
+        ThumbnailCache(long maxSizeBytes) {
+            super(maxSizeBytes);
+        }
+
+        @Override
+        protected long sizeOf(ThumbnailData value) {
+            return value.thumbnail == null ? 0 : value.thumbnail.getAllocationByteCount();
+        }
+
+        @Override
+        protected boolean isEvictedFirst(ThumbnailData value) {
+            return !value.reducedResolution;
+        }
+
+        @Override
+        protected void onEvicted(ThumbnailData value, boolean evictedFirst) {
+            if (evictedFirst) {
+                mHighResEvictionCount++;
+            }
+        }
+
+        @Override
+        public synchronized void dump(String prefix, PrintWriter writer) {
+            super.dump(prefix, writer);
+            writer.println(prefix + "highResEvictions=" + mHighResEvictionCount);
+        }
+    }
+
     public static abstract class ThumbnailLoadRequest extends HandlerRunnable {
         public final boolean mLowResolution;
 
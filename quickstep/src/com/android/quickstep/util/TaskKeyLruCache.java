@@ -19,63 +19,145 @@ import android.util.Log;
 
 import com.android.systemui.shared.recents.model.Task.TaskKey;
 
-import java.util.LinkedHashMap;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 
 /**
- * A simple LRU cache for task key entries
+ * A simple LRU cache for task key entries.
+ *
+ * Reads don't take any lock, so that the UI thread and the loader threads don't block each other.
+ * Instead of moving entries in an access ordered list, reads mark the entries as referenced, and
+ * eviction approximates LRU with the clock algorithm: entries are visited in insertion order, and
+ * the referenced ones are given a second chance before being evicted. Writes are synchronized.
+ *
+ * By default the size of the cache is its number of entries. Subclasses can measure entries
+ * differently with {@link #sizeOf}, and pick entries to evict before the others with
+ * {@link #isEvictedFirst}.
+ *
  * @param <V> The type of the value
  */
 public class TaskKeyLruCache<V> {
 
-    private final MyLinkedHashMap<V> mMap;
+    private final ConcurrentHashMap<Integer, Entry<V>> mMap = new ConcurrentHashMap<>();
+
+    // Guarded by this. The entries in the order they are visited for eviction, which may still
+    // contain entries removed from mMap.
+    private final ArrayDeque<Entry<V>> mClock = new ArrayDeque<>();
+    private long mSize;
+    private long mEvictionCount;
+
+    private volatile long mMaxSize;
+
+    private final LongAdder mHitCount = new LongAdder();
+    private final LongAdder mMissCount = new LongAdder();
 
-    public TaskKeyLruCache(int maxSize) {
-        mMap = new MyLinkedHashMap<>(maxSize);
+    public TaskKeyLruCache(long maxSize) {
+        mMaxSize = maxSize;
     }
 
+    /**
+     * Returns the size of the value, in the unit of the maximum size of the cache
+     */
+    protected long sizeOf(V value) {
+        return 1;
+    }
+
+    /**
+     * Returns true if the value should be evicted before the values for which it returns false,
+     * regardless of when they were last used.
+     */
+    protected boolean isEvictedFirst(V value) {
+        return false;
+    }
+
+    /**
+     * Called when a value is evicted to keep the cache within its maximum size.
+     *
+     * @param evictedFirst whether the value was evicted as per {@link #isEvictedFirst}
+     */
+    protected void onEvicted(V value, boolean evictedFirst) { }
+
     /**
      * Removes all entries from the cache
      */
     public synchronized void evictAll() {
         mMap.clear();
+        mClock.clear();
+        mSize = 0;
     }
 
     /**
      * Removes a particular entry from the cache
      */
     public synchronized void remove(TaskKey key) {
-        mMap.remove(key.id);
+        Entry<V> entry = mMap.remove(key.id);
+        if (entry != null) {
+            mSize -= entry.mSize;
+        }
     }
 
     /**
      * Removes all entries matching keyCheck
      */
     public synchronized void removeAll(Predicate<TaskKey> keyCheck) {
-        mMap.entrySet().removeIf(e -> keyCheck.test(e.getValue().mKey));
+        Iterator<Entry<V>> it = mMap.values().iterator();
+        while (it.hasNext()) {
+            Entry<V> entry = it.next();
+            if (keyCheck.test(entry.mKey)) {
+                it.remove();
+                mSize -= entry.mSize;
+            }
+        }
     }
 
     /**
      * Gets the entry if it is still valid
      */
-    public synchronized V getAndInvalidateIfModified(TaskKey key) {
+    public V getAndInvalidateIfModified(TaskKey key) {
         Entry<V> entry = mMap.get(key.id);
 
         if (entry != null && entry.mKey.windowingMode == key.windowingMode
                 && entry.mKey.lastActiveTime == key.lastActiveTime) {
+            if (!entry.mReferenced) {
+                // Only write when needed, to not invalidate the entry in the cache of other cores
+                entry.mReferenced = true;
+            }
+            mHitCount.increment();
             return entry.mValue;
         } else {
-            remove(key);
+            mMissCount.increment();
+            if (entry != null) {
+                removeEntry(entry);
+            }
             return null;
         }
     }
 
+    private synchronized void removeEntry(Entry<V> entry) {
+        // The entry may have been replaced since it was read
+        if (mMap.remove(entry.mKey.id, entry)) {
+            mSize -= entry.mSize;
+        }
+    }
+
     /**
      * Adds an entry to the cache, optionally evicting the last accessed entry
      */
     public final synchronized void put(TaskKey key, V value) {
         if (key != null && value != null) {
-            mMap.put(key.id, new Entry<>(key, value));
+            Entry<V> entry = new Entry<>(key, value, sizeOf(value));
+            Entry<V> previous = mMap.put(key.id, entry);
+            mSize += entry.mSize - (previous == null ? 0 : previous.mSize);
+            mClock.addLast(entry);
+            if (mClock.size() > 2 * mMap.size() + 16) {
+                // Drop the entries which were removed or replaced
+                mClock.removeIf(e -> mMap.get(e.mKey.id) != e);
+            }
+            trimToSize(mMaxSize);
         } else {
             Log.e("TaskKeyCache", "Unexpected null key or value: " + key + ", " + value);
         }
@@ -87,38 +169,87 @@ public class TaskKeyLruCache<V> {
     public synchronized void updateIfAlreadyInCache(int taskId, V data) {
         Entry<V> entry = mMap.get(taskId);
         if (entry != null) {
+            long size = sizeOf(data);
+            mSize += size - entry.mSize;
             entry.mValue = data;
+            entry.mSize = size;
+            trimToSize(mMaxSize);
         }
     }
 
-    private static class Entry<V> {
+    /**
+     * Sets the maximum size of the cache, evicting entries if it is now over that size
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
 
-        final TaskKey mKey;
-        V mValue;
+    public long getMaxSize() {
+        return mMaxSize;
+    }
 
-        Entry(TaskKey key, V value) {
-            mKey = key;
-            mValue = value;
-        }
+    public synchronized long getSize() {
+        return mSize;
+    }
 
-        @Override
-        public int hashCode() {
-            return mKey.id;
+    private void trimToSize(long maxSize) {
+        // Evict the entries to evict first, then the others
+        trimToSize(maxSize, true /* evictedFirstOnly */);
+        trimToSize(maxSize, false /* evictedFirstOnly */);
+    }
+
+    private void trimToSize(long maxSize, boolean evictedFirstOnly) {
+        // Each entry is visited at most twice: once to clear its referenced flag, and once more
+        // to evict it
+        for (int i = 2 * mClock.size(); mSize > maxSize && i > 0; i--) {
+            Entry<V> entry = mClock.pollFirst();
+            if (mMap.get(entry.mKey.id) != entry) {
+                // Already removed
+                continue;
+            }
+            boolean evictedFirst = isEvictedFirst(entry.mValue);
+            if (evictedFirstOnly && !evictedFirst) {
+                mClock.addLast(entry);
+            } else if (entry.mReferenced) {
+                // Give the entry a second chance
+                entry.mReferenced = false;
+                mClock.addLast(entry);
+            } else {
+                mMap.remove(entry.mKey.id);
+                mSize -= entry.mSize;
+                mEvictionCount++;
+                onEvicted(entry.mValue, evictedFirst);
+            }
         }
     }
 
-    private static class MyLinkedHashMap<V> extends LinkedHashMap<Integer, Entry<V>> {
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "size=" + mSize + "/" + mMaxSize
+                + " entries=" + mMap.size()
+                + " hits=" + mHitCount.sum()
+                + " misses=" + mMissCount.sum()
+                + " evictions=" + mEvictionCount);
+    }
 
-        private final int mMaxSize;
+    private static class Entry<V> {
 
-        MyLinkedHashMap(int maxSize) {
-            super(0, 0.75f, true /* accessOrder */);
-            mMaxSize = maxSize;
+        final TaskKey mKey;
+        volatile V mValue;
+        // Guarded by the cache
+        long mSize;
+        // Whether the entry was read since it was last visited for eviction
+        volatile boolean mReferenced;
+
+        Entry(TaskKey key, V value, long size) {
+            mKey = key;
+            mValue = value;
+            mSize = size;
         }
 
         @Override
-        protected boolean removeEldestEntry(Entry<Integer, TaskKeyLruCache.Entry<V>> eldest) {
-            return size() > mMaxSize;
+        public int hashCode() {
+            return mKey.id;
         }
     }
 }
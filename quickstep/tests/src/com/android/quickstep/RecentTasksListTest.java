@@ -16,6 +16,8 @@
 
 package com.android.quickstep;
 
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+
 import static junit.framework.TestCase.assertNull;
 
 import static org.junit.Assert.assertEquals;
@@ -37,12 +39,18 @@ import com.android.systemui.shared.system.KeyguardManagerCompat;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @SmallTest
 public class RecentTasksListTest {
 
+    private static final long TIMEOUT_MS = 5000;
+
     private ActivityManagerWrapper mockActivityManagerWrapper;
 
     // Class under test
@@ -50,10 +58,11 @@ public class RecentTasksListTest {
 
     @Before
     public void setup() {
-        LooperExecutor mockMainThreadExecutor = mock(LooperExecutor.class);
+        // Runs the callbacks on the thread loading the tasks
+        LooperExecutor mainThreadExecutor = new LooperExecutor(UI_HELPER_EXECUTOR.getLooper());
         KeyguardManagerCompat mockKeyguardManagerCompat = mock(KeyguardManagerCompat.class);
         mockActivityManagerWrapper = mock(ActivityManagerWrapper.class);
-        mRecentTasksList = new RecentTasksList(mockMainThreadExecutor, mockKeyguardManagerCompat,
+        mRecentTasksList = new RecentTasksList(mainThreadExecutor, mockKeyguardManagerCompat,
                 mockActivityManagerWrapper);
     }
 
@@ -71,6 +80,88 @@ public class RecentTasksListTest {
                 .getRecentTasks(anyInt(), anyInt());
     }
 
+    @Test
+    public void onTaskMovedToFront_doesNotFetchTasks() {
+        mRecentTasksList.onTaskMovedToFront(new ActivityManager.RunningTaskInfo());
+        verify(mockActivityManagerWrapper, times(0))
+                .getRecentTasks(anyInt(), anyInt());
+    }
+
+    @Test
+    public void onTaskMovedToFront_reordersLoadedTasks() throws Exception {
+        setRecentTasks(3, 2, 1);
+        assertEquals(Arrays.asList(1, 2, 3), getTaskIds());
+
+        mRecentTasksList.onTaskMovedToFront(newRunningTask(1));
+
+        assertEquals(Arrays.asList(2, 3, 1), getTaskIds());
+        verify(mockActivityManagerWrapper, times(1)).getRecentTasks(anyInt(), anyInt());
+    }
+
+    @Test
+    public void onTaskMovedToFront_unknownTask_fetchesTasks() throws Exception {
+        setRecentTasks(3, 2, 1);
+        getTaskIds();
+
+        mRecentTasksList.onTaskMovedToFront(newRunningTask(4));
+        setRecentTasks(4, 3, 2, 1);
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), getTaskIds());
+        verify(mockActivityManagerWrapper, times(2)).getRecentTasks(anyInt(), anyInt());
+    }
+
+    @Test
+    public void onTaskRemoved_removesLoadedTask() throws Exception {
+        setRecentTasks(3, 2, 1);
+        getTaskIds();
+
+        mRecentTasksList.onTaskRemoved(2);
+
+        assertEquals(Arrays.asList(1, 3), getTaskIds());
+        verify(mockActivityManagerWrapper, times(1)).getRecentTasks(anyInt(), anyInt());
+    }
+
+    @Test
+    public void onTaskStackChanged_afterAppliedChange_matchingRunningTask_doesNotFetchTasks()
+            throws Exception {
+        setRecentTasks(3, 2, 1);
+        getTaskIds();
+
+        mRecentTasksList.onTaskMovedToFront(newRunningTask(1));
+        mRecentTasksList.onTaskStackChanged();
+        when(mockActivityManagerWrapper.getRunningTask()).thenReturn(newRunningTask(1));
+
+        assertEquals(Arrays.asList(2, 3, 1), getTaskIds());
+        verify(mockActivityManagerWrapper, times(1)).getRecentTasks(anyInt(), anyInt());
+    }
+
+    @Test
+    public void onTaskStackChanged_afterAppliedChange_otherRunningTask_fetchesTasks()
+            throws Exception {
+        setRecentTasks(3, 2, 1);
+        getTaskIds();
+
+        mRecentTasksList.onTaskMovedToFront(newRunningTask(1));
+        mRecentTasksList.onTaskStackChanged();
+        // The stack change also included another task being moved to front
+        when(mockActivityManagerWrapper.getRunningTask()).thenReturn(newRunningTask(2));
+        setRecentTasks(2, 1, 3);
+
+        assertEquals(Arrays.asList(3, 1, 2), getTaskIds());
+        verify(mockActivityManagerWrapper, times(2)).getRecentTasks(anyInt(), anyInt());
+    }
+
+    @Test
+    public void onTaskStackChanged_withoutAppliedChange_fetchesTasks() throws Exception {
+        setRecentTasks(3, 2, 1);
+        getTaskIds();
+
+        mRecentTasksList.onTaskStackChanged();
+        getTaskIds();
+
+        verify(mockActivityManagerWrapper, times(2)).getRecentTasks(anyInt(), anyInt());
+    }
+
     @Test
     public void loadTasksInBackground_onlyKeys_noValidTaskDescription() {
         ActivityManager.RecentTaskInfo recentTaskInfo = new ActivityManager.RecentTaskInfo();
@@ -96,4 +187,35 @@ public class RecentTasksListTest {
         assertEquals(1, taskList.size());
         assertEquals(taskDescription, taskList.get(0).taskDescription.getLabel());
     }
+
+    /**
+     * Sets the tasks returned by the system, from the most recent to the least recent
+     */
+    private void setRecentTasks(int... taskIds) {
+        when(mockActivityManagerWrapper.getRecentTasks(anyInt(), anyInt())).thenAnswer(i -> {
+            List<ActivityManager.RecentTaskInfo> tasks = new ArrayList<>();
+            for (int taskId : taskIds) {
+                ActivityManager.RecentTaskInfo task = new ActivityManager.RecentTaskInfo();
+                task.taskId = taskId;
+                tasks.add(task);
+            }
+            return tasks;
+        });
+    }
+
+    private List<Integer> getTaskIds() throws Exception {
+        CompletableFuture<ArrayList<Task>> tasks = new CompletableFuture<>();
+        mRecentTasksList.getTasks(true /* loadKeysOnly */, tasks::complete);
+        List<Integer> taskIds = new ArrayList<>();
+        for (Task task : tasks.get(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            taskIds.add(task.key.id);
+        }
+        return taskIds;
+    }
+
+    private static ActivityManager.RunningTaskInfo newRunningTask(int taskId) {
+        ActivityManager.RunningTaskInfo task = new ActivityManager.RunningTaskInfo();
+        task.taskId = taskId;
+        return task;
+    }
 }
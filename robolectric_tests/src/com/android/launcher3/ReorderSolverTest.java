@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.android.launcher3.util.CellAndSpan;
+import com.android.launcher3.util.GridOccupancy;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link ReorderSolver}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ReorderSolverTest {
+
+    private static final int[] PUSH_RIGHT = new int[] {1, 0};
+
+    @Test
+    public void testPushesIntersectingItemInDirection() {
+        ReorderSolver.Request request = newRequest(true, new GridOccupancy(4, 4));
+        ReorderSolver.Solution solution = ReorderSolver.solve(request, () -> false);
+
+        assertTrue(solution.isSolution);
+        assertEquals(1, solution.cellX);
+        assertEquals(0, solution.cellY);
+        assertEquals(2, solution.items[0].cellX);
+        assertEquals(0, solution.items[0].cellY);
+        assertEquals(1, solution.intersectingItems.length);
+        assertEquals(0, solution.intersectingItems[0]);
+    }
+
+    @Test
+    public void testNoSolutionWhenItemCannotReorder() {
+        ReorderSolver.Request request = newRequest(false, new GridOccupancy(4, 4));
+        assertFalse(ReorderSolver.solve(request, () -> false).isSolution);
+    }
+
+    @Test
+    public void testCancelledSearchReturnsNull() {
+        ReorderSolver.Request request = newRequest(true, new GridOccupancy(4, 4));
+        assertNull(ReorderSolver.solve(request, () -> true));
+    }
+
+    @Test
+    public void testRequestEquality() {
+        GridOccupancy occupied = new GridOccupancy(4, 4);
+        ReorderSolver.Request request = newRequest(true, occupied);
+        ReorderSolver.Request same = newRequest(true, new GridOccupancy(4, 4));
+        assertEquals(request, same);
+        assertEquals(request.hashCode(), same.hashCode());
+
+        assertNotEquals(request, newRequest(false, new GridOccupancy(4, 4)));
+
+        GridOccupancy otherOccupied = new GridOccupancy(4, 4);
+        otherOccupied.markCells(3, 3, 1, 1, true);
+        assertNotEquals(request, newRequest(true, otherOccupied));
+    }
+
+    /**
+     * Returns a request to drop a 1x1 item on (1, 0) of a 4x4 grid, where a single 1x1 item
+     * already is.
+     */
+    private static ReorderSolver.Request newRequest(boolean canReorder, GridOccupancy occupied) {
+        CellAndSpan item = new CellAndSpan(1, 0, 1, 1);
+        occupied.markCells(item, true);
+        return new ReorderSolver.Request(4, 4, new CellAndSpan[] {item},
+                new boolean[] {canReorder}, -1, occupied, 1, 1, 1, 1, PUSH_RIGHT, true,
+                (spanX, spanY, outCell) -> {
+                    outCell[0] = 1;
+                    outCell[1] = 0;
+                });
+    }
+}
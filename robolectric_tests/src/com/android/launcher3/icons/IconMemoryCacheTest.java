@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Process;
+
+import com.android.launcher3.icons.cache.BaseIconCache.CacheEntry;
+import com.android.launcher3.util.ComponentKey;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Collections;
+
+/**
+ * Unit tests for {@link IconMemoryCache}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class IconMemoryCacheTest {
+
+    private static final ComponentKey KEY_A = newKey("pkg1", "A");
+    private static final ComponentKey KEY_B = newKey("pkg1", "B");
+    private static final ComponentKey KEY_C = newKey("pkg2", "C");
+
+    @Test
+    public void testLowResEntryIsMissForHighResRequest() {
+        IconMemoryCache cache = new IconMemoryCache(Integer.MAX_VALUE);
+        CacheEntry lowRes = new CacheEntry();
+        lowRes.bitmap = BitmapInfo.LOW_RES_INFO;
+        cache.put(KEY_A, lowRes);
+
+        assertSame(lowRes, cache.get(KEY_A, true));
+        assertNull(cache.get(KEY_A, false));
+    }
+
+    @Test
+    public void testLruTierIsBoundedByBytes() {
+        IconMemoryCache cache = newCacheForEntries(2);
+        cache.put(KEY_A, newEntry());
+        cache.put(KEY_B, newEntry());
+        cache.put(KEY_C, newEntry());
+
+        assertNull(cache.get(KEY_A, false));
+        assertNotNull(cache.get(KEY_B, false));
+        assertNotNull(cache.get(KEY_C, false));
+    }
+
+    @Test
+    public void testPinnedEntriesAreNotEvicted() {
+        IconMemoryCache cache = newCacheForEntries(1);
+        cache.put(KEY_A, newEntry());
+        cache.setPinnedKeys(Collections.singleton(KEY_A));
+        cache.put(KEY_B, newEntry());
+        cache.put(KEY_C, newEntry());
+
+        assertEquals(1, cache.getPinnedCount());
+        assertNotNull(cache.get(KEY_A, false));
+        assertNull(cache.get(KEY_B, false));
+
+        // Unpinned entries go back to the LRU tier
+        cache.setPinnedKeys(Collections.emptySet());
+        assertEquals(0, cache.getPinnedCount());
+        assertNotNull(cache.get(KEY_A, false));
+        assertNull(cache.get(KEY_C, false));
+    }
+
+    @Test
+    public void testTrimMemory() {
+        IconMemoryCache cache = new IconMemoryCache(Integer.MAX_VALUE);
+        cache.setPinnedKeys(Collections.singleton(KEY_A));
+        cache.put(KEY_A, newEntry());
+        cache.put(KEY_B, newEntry());
+
+        cache.onTrimMemory(TRIM_MEMORY_UI_HIDDEN);
+        assertNotNull(cache.get(KEY_B, false));
+
+        cache.onTrimMemory(TRIM_MEMORY_RUNNING_LOW);
+        assertNull(cache.get(KEY_B, false));
+        assertNotNull(cache.get(KEY_A, false));
+
+        cache.onTrimMemory(TRIM_MEMORY_COMPLETE);
+        assertNull(cache.get(KEY_A, false));
+        assertEquals(0, cache.getLruSizeBytes());
+    }
+
+    @Test
+    public void testRemovePackage() {
+        IconMemoryCache cache = new IconMemoryCache(Integer.MAX_VALUE);
+        cache.setPinnedKeys(Collections.singleton(KEY_A));
+        cache.put(KEY_A, newEntry());
+        cache.put(KEY_B, newEntry());
+        cache.put(KEY_C, newEntry());
+
+        cache.removePackage("pkg1", Process.myUserHandle());
+        assertNull(cache.get(KEY_A, false));
+        assertNull(cache.get(KEY_B, false));
+        assertNotNull(cache.get(KEY_C, false));
+    }
+
+    private static IconMemoryCache newCacheForEntries(int count) {
+        IconMemoryCache sizer = new IconMemoryCache(Integer.MAX_VALUE);
+        sizer.put(KEY_A, newEntry());
+        return new IconMemoryCache(sizer.getLruSizeBytes() * count);
+    }
+
+    private static CacheEntry newEntry() {
+        CacheEntry entry = new CacheEntry();
+        entry.bitmap = BitmapInfo.of(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888),
+                Color.RED);
+        return entry;
+    }
+
+    private static ComponentKey newKey(String packageName, String className) {
+        return new ComponentKey(new ComponentName(packageName, className), Process.myUserHandle());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import static com.android.launcher3.icons.IconRequestQueue.PRIORITY_OFFSCREEN;
+import static com.android.launcher3.icons.IconRequestQueue.PRIORITY_VISIBLE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link IconRequestQueue}
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
+public class IconRequestQueueTest {
+
+    private final ArrayList<String> mRunOrder = new ArrayList<>();
+    private IconRequestQueue mQueue;
+
+    @Before
+    public void setup() {
+        mQueue = new IconRequestQueue(new Handler(Looper.getMainLooper()));
+    }
+
+    @Test
+    public void testVisibleAndRecentRequestsRunFirst() {
+        mQueue.add(newRequest("offscreen1", PRIORITY_OFFSCREEN));
+        mQueue.add(newRequest("visible1", PRIORITY_VISIBLE));
+        mQueue.add(newRequest("offscreen2", PRIORITY_OFFSCREEN));
+        mQueue.add(newRequest("visible2", PRIORITY_VISIBLE));
+        assertEquals(4, mQueue.getDepth());
+
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(Arrays.asList("visible2", "visible1", "offscreen2", "offscreen1"),
+                mRunOrder);
+        assertEquals(0, mQueue.getDepth());
+    }
+
+    @Test
+    public void testCancelledRequestsDoNotRun() {
+        IconRequestQueue.Request cancelled = newRequest("cancelled", PRIORITY_VISIBLE);
+        mQueue.add(newRequest("kept", PRIORITY_VISIBLE));
+        mQueue.add(cancelled);
+        cancelled.cancel();
+        assertEquals(1, mQueue.getDepth());
+
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(Arrays.asList("kept"), mRunOrder);
+
+        StringWriter dump = new StringWriter();
+        mQueue.dump("", new PrintWriter(dump));
+        assertTrue(dump.toString(), dump.toString().contains("completed=1 cancelled=1"));
+    }
+
+    @Test
+    public void testViewsBoundBeforeAttachAreVisible() {
+        // Eg. the All Apps icons, which are bound before being attached
+        View view = new View(RuntimeEnvironment.application);
+        assertEquals(PRIORITY_VISIBLE, IconRequestQueue.getPriority(view));
+
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        activity.setContentView(view);
+        shadowOf(Looper.getMainLooper()).idle();
+        assertTrue(view.isAttachedToWindow());
+        assertEquals(PRIORITY_VISIBLE, IconRequestQueue.getPriority(view));
+
+        view.setVisibility(View.INVISIBLE);
+        assertEquals(PRIORITY_OFFSCREEN, IconRequestQueue.getPriority(view));
+    }
+
+    private IconRequestQueue.Request newRequest(String name, int priority) {
+        return new IconRequestQueue.Request(priority, null) {
+            @Override
+            public void run() {
+                mRunOrder.add(name);
+                onEnd();
+            }
+        };
+    }
+}
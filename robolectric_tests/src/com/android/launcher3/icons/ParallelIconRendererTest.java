@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.UserHandle;
+
+import androidx.annotation.NonNull;
+
+import com.android.launcher3.icons.cache.CachingLogic;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link ParallelIconRenderer}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ParallelIconRendererTest {
+
+    private static final int OBJECT_COUNT = 80;
+    private static final int THREAD_COUNT = 2;
+    // Same as ParallelIconRenderer
+    private static final int RENDERS_IN_FLIGHT = THREAD_COUNT * 2;
+    private static final int MAX_UNREQUESTED_RENDERS = 32;
+
+    // Longer than the maximum yield of ParallelIconRenderer
+    private static final long YIELD_TIMEOUT_MS = 2000;
+
+    private final HashMap<ComponentName, Integer> mRenderCounts = new HashMap<>();
+    private final ArrayList<Runnable> mPendingRenders = new ArrayList<>();
+    private final HashSet<ComponentName> mPoolRenders = new HashSet<>();
+    private boolean mRunningPendingRenders;
+
+    private Context mContext;
+    private List<ComponentName> mObjects;
+    private ParallelIconRenderer<ComponentName> mRenderer;
+
+    @Before
+    public void setup() {
+        mContext = RuntimeEnvironment.application;
+        mObjects = new ArrayList<>();
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            mObjects.add(new ComponentName("pkg" + i, "cls"));
+        }
+        mRenderer = new ParallelIconRenderer<>(mContext, new CountingCachingLogic(), mObjects,
+                mPendingRenders::add, THREAD_COUNT, () -> false);
+    }
+
+    @Test
+    public void testRendersAheadAfterFewRequests() {
+        for (int i = 0; i < 3; i++) {
+            mRenderer.loadIcon(mContext, mObjects.get(i));
+        }
+        assertTrue(mPendingRenders.isEmpty());
+
+        mRenderer.loadIcon(mContext, mObjects.get(3));
+        assertEquals(RENDERS_IN_FLIGHT, mPendingRenders.size());
+        runPendingRenders();
+
+        // The icons rendered ahead are not rendered again
+        for (int i = 4; i < 4 + RENDERS_IN_FLIGHT; i++) {
+            mRenderer.loadIcon(mContext, mObjects.get(i));
+            assertEquals(1, (int) mRenderCounts.get(mObjects.get(i)));
+        }
+    }
+
+    @Test
+    public void testRendersInlineWhenPoolHasNotStarted() {
+        for (int i = 0; i < 4; i++) {
+            mRenderer.loadIcon(mContext, mObjects.get(i));
+        }
+        mRenderer.loadIcon(mContext, mObjects.get(4));
+        assertEquals(1, (int) mRenderCounts.get(mObjects.get(4)));
+
+        // The pool picking up the render later doesn't render again
+        runPendingRenders();
+        assertEquals(1, (int) mRenderCounts.get(mObjects.get(4)));
+    }
+
+    @Test
+    public void testRendersAheadForShuffledRequests() {
+        // Same as the order of the update handler after an OTA, which depends on its DB
+        List<ComponentName> requests = new ArrayList<>(mObjects);
+        Collections.shuffle(requests, new Random(0));
+
+        for (ComponentName object : requests) {
+            mRenderer.loadIcon(mContext, object);
+            runPendingRenders();
+        }
+
+        for (ComponentName object : mObjects) {
+            assertEquals(1, (int) mRenderCounts.get(object));
+        }
+        // Most of the icons are rendered on the pool
+        assertTrue(mPoolRenders.size() > OBJECT_COUNT / 2);
+    }
+
+    @Test
+    public void testUnrequestedRendersAreBounded() {
+        for (int i = 0; i < 4; i++) {
+            mRenderer.loadIcon(mContext, mObjects.get(i));
+        }
+        runPendingRenders();
+        // Request objects which are not rendered ahead yet, while the pool renders others
+        int lastRequest = OBJECT_COUNT - 1;
+        for (int i = RENDERS_IN_FLIGHT; i < MAX_UNREQUESTED_RENDERS; i += RENDERS_IN_FLIGHT) {
+            mRenderer.loadIcon(mContext, mObjects.get(lastRequest--));
+            assertEquals(RENDERS_IN_FLIGHT, mPendingRenders.size());
+            runPendingRenders();
+        }
+
+        // None of the icons rendered ahead were requested yet, so no more are rendered
+        mRenderer.loadIcon(mContext, mObjects.get(lastRequest));
+        assertTrue(mPendingRenders.isEmpty());
+
+        // Requesting one of them makes room for one more
+        mRenderer.loadIcon(mContext, mObjects.get(4));
+        assertEquals(1, mPendingRenders.size());
+    }
+
+    @Test
+    public void testCancelRendersForUser() {
+        for (int i = 0; i < 4; i++) {
+            mRenderer.loadIcon(mContext, mObjects.get(i));
+        }
+        mRenderer.cancelRenders(Process.myUserHandle());
+        runPendingRenders();
+        for (int i = 4; i < OBJECT_COUNT; i++) {
+            assertNull(mRenderCounts.get(mObjects.get(i)));
+        }
+
+        // The update of the user is complete, its icons are not rendered ahead anymore
+        mRenderer.loadIcon(mContext, mObjects.get(4));
+        assertTrue(mPendingRenders.isEmpty());
+    }
+
+    @Test
+    public void testDoesNotYieldWhenRenderingInline() {
+        mRenderer = new ParallelIconRenderer<>(mContext, new CountingCachingLogic(), mObjects,
+                mPendingRenders::add, THREAD_COUNT, () -> true);
+        for (int i = 0; i < 5; i++) {
+            mRenderer.loadIcon(mContext, mObjects.get(i));
+        }
+        assertEquals(1, (int) mRenderCounts.get(mObjects.get(4)));
+    }
+
+    @Test
+    public void testYieldIsBounded() {
+        mRenderer = new ParallelIconRenderer<>(mContext, new CountingCachingLogic(), mObjects,
+                mPendingRenders::add, THREAD_COUNT, () -> true);
+        for (int i = 0; i < 4; i++) {
+            mRenderer.loadIcon(mContext, mObjects.get(i));
+        }
+
+        // The gesture never ends, the renders still complete
+        long start = SystemClock.uptimeMillis();
+        mPendingRenders.get(0).run();
+        assertTrue(SystemClock.uptimeMillis() - start < YIELD_TIMEOUT_MS);
+        assertEquals(1, (int) mRenderCounts.get(mObjects.get(4)));
+    }
+
+    @Test
+    public void testDoesNotWaitForYieldingRender() throws Exception {
+        CountDownLatch yielding = new CountDownLatch(1);
+        mRenderer = new ParallelIconRenderer<>(mContext, new CountingCachingLogic(), mObjects,
+                mPendingRenders::add, THREAD_COUNT, () -> {
+                    yielding.countDown();
+                    return true;
+                });
+        for (int i = 0; i < 4; i++) {
+            mRenderer.loadIcon(mContext, mObjects.get(i));
+        }
+        Thread poolThread = new Thread(mPendingRenders.get(0));
+        poolThread.start();
+        assertTrue(yielding.await(YIELD_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        // Rendered on this thread, and the yielding render is abandoned
+        mRenderer.loadIcon(mContext, mObjects.get(4));
+        poolThread.join(YIELD_TIMEOUT_MS);
+        assertFalse(poolThread.isAlive());
+        assertEquals(1, (int) mRenderCounts.get(mObjects.get(4)));
+    }
+
+    private void runPendingRenders() {
+        mRunningPendingRenders = true;
+        for (Runnable r : mPendingRenders) {
+            r.run();
+        }
+        mRunningPendingRenders = false;
+        mPendingRenders.clear();
+    }
+
+    private class CountingCachingLogic implements CachingLogic<ComponentName> {
+
+        @Override
+        public ComponentName getComponent(ComponentName object) {
+            return object;
+        }
+
+        @Override
+        public UserHandle getUser(ComponentName object) {
+            return Process.myUserHandle();
+        }
+
+        @Override
+        public CharSequence getLabel(ComponentName object) {
+            return object.getPackageName();
+        }
+
+        @NonNull
+        @Override
+        public BitmapInfo loadIcon(Context context, ComponentName object) {
+            mRenderCounts.merge(object, 1, Integer::sum);
+            if (mRunningPendingRenders) {
+                mPoolRenders.add(object);
+            }
+            return BitmapInfo.of(Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888), Color.RED);
+        }
+    }
+}
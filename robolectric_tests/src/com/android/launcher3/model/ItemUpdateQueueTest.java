@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+import static com.android.launcher3.util.LauncherModelHelper.APP_ICON;
+import static com.android.launcher3.util.LauncherModelHelper.DESKTOP;
+import static com.android.launcher3.util.LauncherModelHelper.TEST_PACKAGE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+
+import com.android.launcher3.LauncherModel;
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.model.data.FolderInfo;
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+import com.android.launcher3.util.LauncherLayoutBuilder;
+import com.android.launcher3.util.LauncherModelHelper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+
+/**
+ * Tests for {@link ItemUpdateQueue}
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
+public class ItemUpdateQueueTest {
+
+    private LauncherModelHelper mModelHelper;
+    private Context mContext;
+    private LauncherModel mModel;
+    private ItemUpdateQueue mQueue;
+
+    @Before
+    public void setup() throws Exception {
+        mModelHelper = new LauncherModelHelper();
+        mModelHelper.installApp(TEST_PACKAGE);
+        mContext = RuntimeEnvironment.application;
+        mModel = mModelHelper.getModel();
+        mQueue = mModel.getItemUpdateQueue();
+    }
+
+    @Test
+    public void testUpdatesAreMergedPerItem() {
+        int id1 = mModelHelper.addItem(APP_ICON, 0, DESKTOP, 0, 0);
+        int id2 = mModelHelper.addItem(APP_ICON, 0, DESKTOP, 1, 0);
+
+        mQueue.enqueue(id1, cellValues(2, 2));
+        mQueue.enqueue(id2, cellValues(3, 3));
+        ContentValues values = new ContentValues();
+        values.put(Favorites.CELLX, 4);
+        mQueue.enqueue(id1, values);
+
+        // Nothing is written until the queue is flushed
+        assertCell(id1, 0, 0);
+        assertCell(id2, 1, 0);
+
+        mQueue.flush();
+        // The columns which were not updated again are kept
+        assertCell(id1, 4, 2);
+        assertCell(id2, 3, 3);
+    }
+
+    @Test
+    public void testPendingUpdatesAreWrittenOnPause() throws Exception {
+        int id = mModelHelper.addItem(APP_ICON, 0, DESKTOP, 0, 0);
+        mQueue.enqueue(id, cellValues(1, 1));
+
+        // Same as Launcher.onPause
+        mModel.flushPendingWrites();
+        MODEL_EXECUTOR.submit(() -> { }).get();
+
+        assertCell(id, 1, 1);
+    }
+
+    @Test
+    public void testPendingUpdatesAreLoaded() throws Exception {
+        mModelHelper.setupDefaultLayoutProvider(new LauncherLayoutBuilder()
+                .atWorkspace(0, 0, 0).putApp(TEST_PACKAGE, TEST_PACKAGE));
+        mModelHelper.loadModelSync();
+        int id = mModelHelper.getBgDataModel().workspaceItems.get(0).id;
+
+        mQueue.enqueue(id, cellValues(1, 1));
+        mModel.forceReload();
+        mModelHelper.loadModelSync();
+
+        assertCell(id, 1, 1);
+        ItemInfo item = mModelHelper.getBgDataModel().itemsIdMap.get(id);
+        assertNotNull(item);
+        assertEquals(1, item.cellX);
+        assertEquals(1, item.cellY);
+    }
+
+    @Test
+    public void testPendingMoveIsWrittenBeforeFolderDelete() throws Exception {
+        int folderId = mModelHelper.addItem(2 /* folder with two items */, 0, DESKTOP, 0, 0);
+        int id = mModelHelper.addItem(APP_ICON, 0, DESKTOP, 1, 0);
+        ModelWriter writer = mModel.getWriter(false /* hasVerticalHotseat */,
+                false /* verifyChanges */);
+
+        // Moves the item into the folder, and deletes the folder before the move is written
+        writer.moveItemInDatabase(newItem(id, 1, 0), folderId, 0, 0, 0);
+        FolderInfo folder = new FolderInfo();
+        folder.id = folderId;
+        writer.deleteFolderAndContentsFromDatabase(folder);
+        MODEL_EXECUTOR.submit(() -> { }).get();
+
+        assertNull(readCell(folderId));
+        assertNull(readCell(id));
+        assertEquals(0, countItemsInContainer(folderId));
+    }
+
+    @Test
+    public void testDeleteAfterPendingUpdateLeavesNoRow() throws Exception {
+        int id = mModelHelper.addItem(APP_ICON, 0, DESKTOP, 0, 0);
+        ModelWriter writer = mModel.getWriter(false /* hasVerticalHotseat */,
+                false /* verifyChanges */);
+        WorkspaceItemInfo item = newItem(id, 0, 0);
+
+        writer.moveItemInDatabase(item, DESKTOP, 0, 1, 1);
+        writer.deleteItemFromDatabase(item);
+        MODEL_EXECUTOR.submit(() -> { }).get();
+        assertNull(readCell(id));
+
+        // Nothing is left to write for the deleted item
+        mQueue.flush();
+        assertNull(readCell(id));
+    }
+
+    private static ContentValues cellValues(int cellX, int cellY) {
+        ContentValues values = new ContentValues();
+        values.put(Favorites.CELLX, cellX);
+        values.put(Favorites.CELLY, cellY);
+        return values;
+    }
+
+    private static WorkspaceItemInfo newItem(int id, int cellX, int cellY) {
+        WorkspaceItemInfo item = new WorkspaceItemInfo();
+        item.id = id;
+        item.itemType = Favorites.ITEM_TYPE_APPLICATION;
+        item.container = DESKTOP;
+        item.cellX = cellX;
+        item.cellY = cellY;
+        return item;
+    }
+
+    private void assertCell(int id, int cellX, int cellY) {
+        int[] cell = readCell(id);
+        assertNotNull(cell);
+        assertEquals(cellX, cell[0]);
+        assertEquals(cellY, cell[1]);
+    }
+
+    /**
+     * Returns the cell of the item in the database, or null if there is no such item
+     */
+    private int[] readCell(int id) {
+        try (Cursor c = mContext.getContentResolver().query(Favorites.getContentUri(id),
+                new String[] {Favorites.CELLX, Favorites.CELLY}, null, null, null)) {
+            return c.moveToNext() ? new int[] {c.getInt(0), c.getInt(1)} : null;
+        }
+    }
+
+    private int countItemsInContainer(int container) {
+        try (Cursor c = mContext.getContentResolver().query(Favorites.CONTENT_URI,
+                new String[] {Favorites._ID}, Favorites.CONTAINER + "=" + container, null,
+                null)) {
+            return c.getCount();
+        }
+    }
+}
@@ -160,6 +160,7 @@ public class ModelMultiCallbacksTest {
     }
 
     private void waitForLoaderAndTempMainThread() throws Exception {
+        mModelHelper.getModel().flushPackageUpdates();
         Executors.MODEL_EXECUTOR.submit(() -> { }).get();
         mTempMainExecutor.submit(() -> { }).get();
     }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.icons.BitmapInfo;
+import com.android.launcher3.model.BgDataModel.Callbacks;
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+import com.android.launcher3.util.ItemInfoMatcher;
+import com.android.launcher3.util.LauncherLayoutBuilder;
+import com.android.launcher3.util.LauncherModelHelper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+
+/**
+ * Tests for {@link ModelSnapshot}
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
+public class ModelSnapshotTest {
+
+    private static final String[] APPS = {
+            "com.android.launcher3.snapshot.app1",
+            "com.android.launcher3.snapshot.app2",
+            "com.android.launcher3.snapshot.app3"};
+
+    private LauncherModelHelper mModelHelper;
+    private Context mContext;
+    private LauncherAppState mApp;
+
+    @Before
+    public void setup() throws Exception {
+        mModelHelper = new LauncherModelHelper();
+        mContext = RuntimeEnvironment.application;
+        mApp = LauncherAppState.getInstance(mContext);
+
+        LauncherLayoutBuilder builder = new LauncherLayoutBuilder();
+        for (int i = 0; i < APPS.length; i++) {
+            mModelHelper.installApp(APPS[i]);
+            builder.atWorkspace(i, 0, 0).putApp(APPS[i], APPS[i]);
+        }
+        builder.atHotseat(0).putApp(APPS[0], APPS[0]);
+        mModelHelper.setupDefaultLayoutProvider(builder);
+        // Writes the snapshot of the loaded model
+        mModelHelper.loadModelSync();
+    }
+
+    @Test
+    public void testReadMatchesLoadedModel() {
+        ModelSnapshot snapshot = ModelSnapshot.read(mApp);
+        assertNotNull(snapshot);
+
+        BgDataModel dataModel = mModelHelper.getBgDataModel();
+        assertEquals(dataModel.collectWorkspaceScreens(), snapshot.screenIds);
+        assertEquals(APPS.length + 1, snapshot.items.size());
+        for (WorkspaceItemInfo info : snapshot.items) {
+            ItemInfo loaded = dataModel.itemsIdMap.get(info.id);
+            assertNotNull(loaded);
+            assertTrue(ModelSnapshot.isSameItem(info, loaded));
+        }
+    }
+
+    @Test
+    public void testGridChangeInvalidatesSnapshot() {
+        InvariantDeviceProfile idp = mApp.getInvariantDeviceProfile();
+        idp.numColumns++;
+
+        assertNull(ModelSnapshot.read(mApp));
+    }
+
+    @Test
+    public void testIconsAreComparedByContent() {
+        WorkspaceItemInfo snapshot = newItem(newIcon(Color.RED));
+
+        assertFalse(ModelSnapshot.isVisuallyDifferent(snapshot, newItem(newIcon(Color.RED))));
+        assertTrue(ModelSnapshot.isVisuallyDifferent(snapshot, newItem(newIcon(Color.BLUE))));
+        assertTrue(ModelSnapshot.isVisuallyDifferent(snapshot, newItem(null)));
+    }
+
+    @Test
+    public void testReconcileRebindsOnlyChangedItems() {
+        ModelSnapshot snapshot = ModelSnapshot.read(mApp);
+        assertNotNull(snapshot);
+        BgDataModel dataModel = mModelHelper.getBgDataModel();
+
+        Callbacks callbacks = mock(Callbacks.class);
+        doReturn(0).when(callbacks).getPageToBindSynchronously();
+        LoaderResults results = new LoaderResults(mApp, dataModel,
+                mModelHelper.getAllAppsList(), new Callbacks[] {callbacks}, MAIN_EXECUTOR);
+        results.bindWorkspaceSnapshot(snapshot);
+        ShadowLooper.idleMainLooper();
+
+        WorkspaceItemInfo unchanged = findBoundItem(snapshot, APPS[0]);
+        WorkspaceItemInfo changed = findBoundItem(snapshot, APPS[1]);
+        WorkspaceItemInfo removed = findBoundItem(snapshot, APPS[2]);
+
+        // The loaded icons have the same content in new bitmaps, except for one changed icon
+        for (WorkspaceItemInfo bound : snapshot.items) {
+            bound.bitmap = newIcon(Color.RED);
+            findLoadedItem(dataModel, bound).bitmap = newIcon(Color.RED);
+        }
+        findLoadedItem(dataModel, changed).bitmap = newIcon(Color.BLUE);
+        dataModel.removeItem(mContext, findLoadedItem(dataModel, removed));
+
+        results.bindWorkspace();
+        ShadowLooper.idleMainLooper();
+
+        ArgumentCaptor<ArrayList> updated = ArgumentCaptor.forClass(ArrayList.class);
+        verify(callbacks).bindWorkspaceItemsChanged(updated.capture());
+        assertEquals(1, updated.getValue().size());
+        assertSame(changed, updated.getValue().get(0));
+
+        ArgumentCaptor<ItemInfoMatcher> matcher = ArgumentCaptor.forClass(ItemInfoMatcher.class);
+        verify(callbacks).bindWorkspaceComponentsRemoved(matcher.capture());
+        assertTrue(matcher.getValue().matches(removed, removed.getTargetComponent()));
+        assertFalse(matcher.getValue().matches(unchanged, unchanged.getTargetComponent()));
+        assertFalse(matcher.getValue().matches(changed, changed.getTargetComponent()));
+
+        // The bound items replace the loaded items in the model
+        assertSame(unchanged, dataModel.itemsIdMap.get(unchanged.id));
+        assertSame(changed, dataModel.itemsIdMap.get(changed.id));
+        assertEquals(Color.BLUE, changed.bitmap.icon.getPixel(0, 0));
+    }
+
+    private static WorkspaceItemInfo findBoundItem(ModelSnapshot snapshot, String app) {
+        ComponentName cn = new ComponentName(app, app);
+        for (WorkspaceItemInfo info : snapshot.items) {
+            if (info.container == LauncherModelHelper.DESKTOP
+                    && cn.equals(info.getTargetComponent())) {
+                return info;
+            }
+        }
+        throw new AssertionError("No item for " + app);
+    }
+
+    private static WorkspaceItemInfo findLoadedItem(BgDataModel dataModel, ItemInfo bound) {
+        return (WorkspaceItemInfo) dataModel.itemsIdMap.get(bound.id);
+    }
+
+    private static WorkspaceItemInfo newItem(BitmapInfo icon) {
+        WorkspaceItemInfo info = new WorkspaceItemInfo();
+        info.title = "title";
+        info.bitmap = icon;
+        return info;
+    }
+
+    private static BitmapInfo newIcon(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(2, 2, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        return BitmapInfo.of(bitmap, color);
+    }
+}
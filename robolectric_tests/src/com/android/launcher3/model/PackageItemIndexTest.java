@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.os.Process;
+import android.os.UserHandle;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.model.data.LauncherAppWidgetInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+import com.android.launcher3.util.IntSparseArrayMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Robolectric unit tests for {@link PackageItemIndex}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PackageItemIndexTest {
+
+    private final PackageItemIndex mIndex = new PackageItemIndex();
+    private final UserHandle mUser = Process.myUserHandle();
+
+    @Test
+    public void testItemsAreIndexedByTargetPackage() {
+        WorkspaceItemInfo app1 = newApp(1, "pkg1");
+        WorkspaceItemInfo app2 = newApp(2, "pkg2");
+        LauncherAppWidgetInfo widget = new LauncherAppWidgetInfo(10,
+                new ComponentName("pkg1", "Provider"));
+        widget.id = 3;
+
+        mIndex.add(app1);
+        mIndex.add(app2);
+        mIndex.add(widget);
+
+        IntSparseArrayMap<ItemInfo> result = query("pkg1");
+        assertEquals(2, result.size());
+        assertSame(app1, result.get(1));
+        assertSame(widget, result.get(3));
+
+        assertEquals(0, query("pkg1", UserHandle.of(mUser.getIdentifier() + 10)).size());
+    }
+
+    @Test
+    public void testItemsAreIndexedByIconResource() {
+        WorkspaceItemInfo shortcut = newApp(1, "pkg1");
+        shortcut.iconResource = new Intent.ShortcutIconResource();
+        shortcut.iconResource.packageName = "iconPkg";
+        mIndex.add(shortcut);
+
+        assertSame(shortcut, query("iconPkg").get(1));
+
+        // Item is only returned once when both packages are queried
+        IntSparseArrayMap<ItemInfo> result = new IntSparseArrayMap<>();
+        mIndex.getItems(Arrays.asList("pkg1", "iconPkg"), mUser, result);
+        assertEquals(1, result.size());
+    }
+
+    @Test
+    public void testRemoveAndReindex() {
+        WorkspaceItemInfo app = newApp(1, "pkg1");
+        mIndex.add(app);
+
+        app.intent = AppInfo.makeLaunchIntent(new ComponentName("pkg2", "Activity"));
+        mIndex.add(app);
+        assertEquals(0, query("pkg1").size());
+        assertSame(app, query("pkg2").get(1));
+        assertEquals(1, mIndex.size());
+
+        mIndex.remove(app);
+        assertEquals(0, query("pkg2").size());
+        assertEquals(0, mIndex.size());
+    }
+
+    @Test
+    public void testItemsWithoutTargetAreNotIndexed() {
+        WorkspaceItemInfo info = new WorkspaceItemInfo();
+        info.id = 1;
+        mIndex.add(info);
+        assertEquals(0, mIndex.size());
+    }
+
+    private IntSparseArrayMap<ItemInfo> query(String pkg) {
+        return query(pkg, mUser);
+    }
+
+    private IntSparseArrayMap<ItemInfo> query(String pkg, UserHandle user) {
+        IntSparseArrayMap<ItemInfo> result = new IntSparseArrayMap<>();
+        mIndex.getItems(Collections.singletonList(pkg), user, result);
+        return result;
+    }
+
+    private WorkspaceItemInfo newApp(int id, String pkg) {
+        WorkspaceItemInfo info = new WorkspaceItemInfo();
+        info.id = id;
+        info.user = mUser;
+        info.intent = AppInfo.makeLaunchIntent(new ComponentName(pkg, "Activity"));
+        return info;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.model.PackageUpdatedTask.OP_ADD;
+import static com.android.launcher3.model.PackageUpdatedTask.OP_REMOVE;
+import static com.android.launcher3.model.PackageUpdatedTask.OP_UPDATE;
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Process;
+import android.os.UserHandle;
+
+import com.android.launcher3.LauncherModel.ModelUpdateTask;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link PackageUpdateCoalescer}
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
+public class PackageUpdateCoalescerTest {
+
+    private final UserHandle mUser = Process.myUserHandle();
+
+    @Test
+    public void testMergesOperationsOfSameType() {
+        List<ModelUpdateTask> tasks = new ArrayList<>();
+        PackageUpdateCoalescer coalescer = new PackageUpdateCoalescer(tasks::add);
+
+        coalescer.enqueue(OP_UPDATE, mUser, "app1");
+        coalescer.enqueue(OP_UPDATE, mUser, "app2");
+        coalescer.enqueue(OP_ADD, mUser, "app3");
+        // Merged past the addition, which is for another package
+        coalescer.enqueue(OP_UPDATE, mUser, "app4");
+        coalescer.flush();
+
+        assertEquals(1, tasks.size());
+        assertTrue(dump(coalescer).contains("callbacks=4 tasks=2 batches=1"));
+    }
+
+    @Test
+    public void testDoesNotReorderOperationsOnSamePackage() {
+        List<ModelUpdateTask> tasks = new ArrayList<>();
+        PackageUpdateCoalescer coalescer = new PackageUpdateCoalescer(tasks::add);
+
+        coalescer.enqueue(OP_UPDATE, mUser, "app1");
+        coalescer.enqueue(OP_REMOVE, mUser, "app1");
+        coalescer.enqueue(OP_UPDATE, mUser, "app1");
+        coalescer.flush();
+
+        assertEquals(1, tasks.size());
+        assertTrue(dump(coalescer).contains("callbacks=3 tasks=3 batches=1"));
+    }
+
+    @Test
+    public void testFlushOnModelThreadRunsBeforeNextTask() throws Exception {
+        List<String> order = new ArrayList<>();
+        PackageUpdateCoalescer coalescer = new PackageUpdateCoalescer(
+                task -> MODEL_EXECUTOR.execute(() -> order.add("packages")));
+
+        MODEL_EXECUTOR.submit(() -> {
+            coalescer.enqueue(OP_UPDATE, mUser, "app1");
+            // Same as LauncherModel.enqueueModelUpdateTask
+            coalescer.flush();
+            MODEL_EXECUTOR.execute(() -> order.add("task"));
+        }).get();
+        MODEL_EXECUTOR.submit(() -> { }).get();
+
+        assertEquals(Arrays.asList("packages", "task"), order);
+    }
+
+    @Test
+    public void testFlushOffModelThreadPostsBatch() throws Exception {
+        List<String> order = new ArrayList<>();
+        PackageUpdateCoalescer coalescer = new PackageUpdateCoalescer(
+                task -> MODEL_EXECUTOR.execute(() -> order.add("packages")));
+
+        coalescer.enqueue(OP_UPDATE, mUser, "app1");
+        coalescer.flush();
+        MODEL_EXECUTOR.execute(() -> order.add("task"));
+        MODEL_EXECUTOR.submit(() -> { }).get();
+
+        assertEquals(Arrays.asList("packages", "task"), order);
+    }
+
+    private static String dump(PackageUpdateCoalescer coalescer) {
+        StringWriter out = new StringWriter();
+        coalescer.dump("", new PrintWriter(out));
+        return out.toString();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests for {@link BitmapPool}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BitmapPoolTest {
+
+    private static final int SIZE = 10;
+    private static final int BYTES = SIZE * SIZE * 4;
+
+    @Test
+    public void testReusesBitmapOfSameSize() {
+        BitmapPool pool = new BitmapPool("test", 4 * BYTES);
+        Bitmap bitmap = pool.obtain(SIZE, SIZE);
+        pool.release(bitmap, SIZE, SIZE);
+        assertEquals(BYTES, pool.getSizeBytes());
+
+        assertNotSame(bitmap, pool.obtain(SIZE, SIZE / 2));
+        assertSame(bitmap, pool.obtain(SIZE, SIZE));
+        assertEquals(0, pool.getSizeBytes());
+    }
+
+    @Test
+    public void testReleasingTwiceKeepsOneCopy() {
+        BitmapPool pool = new BitmapPool("test", 4 * BYTES);
+        Bitmap bitmap = pool.obtain(SIZE, SIZE);
+        pool.release(bitmap, SIZE, SIZE);
+        pool.release(bitmap, SIZE, SIZE);
+        assertEquals(BYTES, pool.getSizeBytes());
+    }
+
+    @Test
+    public void testEvictsOldestWhenFull() {
+        BitmapPool pool = new BitmapPool("test", 2 * BYTES);
+        Bitmap first = pool.obtain(SIZE, SIZE);
+        Bitmap second = pool.obtain(SIZE, SIZE);
+        Bitmap third = pool.obtain(SIZE, SIZE);
+        pool.release(first, SIZE, SIZE);
+        pool.release(second, SIZE, SIZE);
+        pool.release(third, SIZE, SIZE);
+        assertEquals(2 * BYTES, pool.getSizeBytes());
+
+        // The most recently released bitmaps are reused first
+        assertSame(third, pool.obtain(SIZE, SIZE));
+        assertSame(second, pool.obtain(SIZE, SIZE));
+        assertNotSame(first, pool.obtain(SIZE, SIZE));
+    }
+
+    @Test
+    public void testTrim() {
+        BitmapPool pool = new BitmapPool("test", 4 * BYTES);
+        for (int i = 0; i < 4; i++) {
+            pool.release(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888), SIZE, SIZE);
+        }
+        pool.trimToHalf();
+        assertEquals(2 * BYTES, pool.getSizeBytes());
+        pool.clear();
+        assertEquals(0, pool.getSizeBytes());
+    }
+}
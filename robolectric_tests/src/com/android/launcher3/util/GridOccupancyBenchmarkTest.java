@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Random;
+
+/**
+ * Compares {@link GridOccupancy} with the previous array based implementation on grid sizes from
+ * 4x5 to 10x10, verifying that both return the same results and printing the time taken by each.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GridOccupancyBenchmarkTest {
+
+    private static final int[][] GRID_SIZES = {{4, 5}, {5, 5}, {6, 6}, {8, 8}, {10, 10}};
+    private static final int GRIDS_PER_SIZE = 200;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void testFindVacantCellMatchesReference() {
+        Random random = new Random(1);
+        for (int[] size : GRID_SIZES) {
+            for (int n = 0; n < GRIDS_PER_SIZE; n++) {
+                ArrayGridOccupancy reference = new ArrayGridOccupancy(size[0], size[1]);
+                GridOccupancy grid = newRandomGrid(random, size[0], size[1], reference);
+
+                int[] expected = new int[2];
+                int[] actual = new int[2];
+                for (int spanX = 1; spanX <= size[0]; spanX++) {
+                    for (int spanY = 1; spanY <= size[1]; spanY++) {
+                        assertEquals(reference.findVacantCell(expected, spanX, spanY),
+                                grid.findVacantCell(actual, spanX, spanY));
+                        assertArrayEquals(expected, actual);
+                    }
+                }
+                for (int x = 0; x < size[0]; x++) {
+                    for (int y = 0; y < size[1]; y++) {
+                        assertEquals(reference.isRegionVacant(x, y, 2, 2),
+                                grid.isRegionVacant(x, y, 2, 2));
+                    }
+                }
+            }
+        }
+    }
+
+    @Ignore // The benchmark is too long for continuous testing, and only prints the results.
+    @Test
+    public void benchmarkAgainstReference() {
+        for (int[] size : GRID_SIZES) {
+            int countX = size[0];
+            int countY = size[1];
+            Random random = new Random(countX * 31 + countY);
+            ArrayGridOccupancy[] references = new ArrayGridOccupancy[GRIDS_PER_SIZE];
+            GridOccupancy[] grids = new GridOccupancy[GRIDS_PER_SIZE];
+            for (int i = 0; i < GRIDS_PER_SIZE; i++) {
+                references[i] = new ArrayGridOccupancy(countX, countY);
+                grids[i] = newRandomGrid(random, countX, countY, references[i]);
+            }
+            ArrayGridOccupancy referenceCopy = new ArrayGridOccupancy(countX, countY);
+            GridOccupancy gridCopy = new GridOccupancy(countX, countY);
+
+            long referenceNanos = Long.MAX_VALUE;
+            long gridNanos = Long.MAX_VALUE;
+            int[] out = new int[2];
+            int found = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (ArrayGridOccupancy reference : references) {
+                    reference.copyTo(referenceCopy);
+                    for (int span = 1; span <= 4; span++) {
+                        found += reference.findVacantCell(out, span, span) ? 1 : 0;
+                        found += reference.isRegionVacant(span, span, span, span) ? 1 : 0;
+                    }
+                }
+                referenceNanos = Math.min(referenceNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (GridOccupancy grid : grids) {
+                    grid.copyTo(gridCopy);
+                    for (int span = 1; span <= 4; span++) {
+                        found += grid.findVacantCell(out, span, span) ? 1 : 0;
+                        found += grid.isRegionVacant(span, span, span, span) ? 1 : 0;
+                    }
+                }
+                gridNanos = Math.min(gridNanos, System.nanoTime() - start);
+            }
+
+            System.out.println(String.format("GridOccupancy %dx%d: array=%dus bitmask=%dus (%d)",
+                    countX, countY, referenceNanos / 1000, gridNanos / 1000, found));
+        }
+    }
+
+    private static GridOccupancy newRandomGrid(Random random, int countX, int countY,
+            ArrayGridOccupancy reference) {
+        GridOccupancy grid = new GridOccupancy(countX, countY);
+        int items = random.nextInt(countX * countY / 2 + 1);
+        for (int i = 0; i < items; i++) {
+            int x = random.nextInt(countX);
+            int y = random.nextInt(countY);
+            int spanX = 1 + random.nextInt(2);
+            int spanY = 1 + random.nextInt(2);
+            grid.markCells(x, y, spanX, spanY, true);
+            reference.markCells(x, y, spanX, spanY, true);
+        }
+        return grid;
+    }
+
+    /**
+     * The previous implementation of {@link GridOccupancy}, using an array per column
+     */
+    private static class ArrayGridOccupancy {
+
+        private final int mCountX;
+        private final int mCountY;
+        private final boolean[][] mCells;
+
+        ArrayGridOccupancy(int countX, int countY) {
+            mCountX = countX;
+            mCountY = countY;
+            mCells = new boolean[countX][countY];
+        }
+
+        boolean findVacantCell(int[] vacantOut, int spanX, int spanY) {
+            for (int y = 0; (y + spanY) <= mCountY; y++) {
+                for (int x = 0; (x + spanX) <= mCountX; x++) {
+                    boolean available = !mCells[x][y];
+                    out:
+                    for (int i = x; i < x + spanX; i++) {
+                        for (int j = y; j < y + spanY; j++) {
+                            available = available && !mCells[i][j];
+                            if (!available) break out;
+                        }
+                    }
+                    if (available) {
+                        vacantOut[0] = x;
+                        vacantOut[1] = y;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void copyTo(ArrayGridOccupancy dest) {
+            for (int i = 0; i < mCountX; i++) {
+                for (int j = 0; j < mCountY; j++) {
+                    dest.mCells[i][j] = mCells[i][j];
+                }
+            }
+        }
+
+        boolean isRegionVacant(int x, int y, int spanX, int spanY) {
+            int x2 = x + spanX - 1;
+            int y2 = y + spanY - 1;
+            if (x < 0 || y < 0 || x2 >= mCountX || y2 >= mCountY) {
+                return false;
+            }
+            for (int i = x; i <= x2; i++) {
+                for (int j = y; j <= y2; j++) {
+                    if (mCells[i][j]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
+            if (cellX < 0 || cellY < 0) return;
+            for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
+                for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
+                    mCells[x][y] = value;
+                }
+            }
+        }
+    }
+}
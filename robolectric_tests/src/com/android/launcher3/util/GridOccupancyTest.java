@@ -52,13 +52,51 @@ public class GridOccupancyTest {
         assertFalse(grid.isRegionVacant(0, 0, 2, 1));
     }
 
+    @Test
+    public void testCanPlace() {
+        GridOccupancy grid = initGrid(3,
+                1, 0, 0, 0,
+                0, 0, 1, 0,
+                0, 0, 0, 0
+        );
+        GridOccupancy block = initGrid(2,
+                0, 1,
+                1, 1
+        );
+
+        assertTrue(grid.canPlace(block, 0, 0));
+        assertFalse(grid.canPlace(block, 1, 0));
+        assertTrue(grid.canPlace(block, 2, 1));
+        assertFalse(grid.canPlace(block, 1, 1));
+    }
+
+    @Test
+    public void testMarkCells() {
+        GridOccupancy grid = new GridOccupancy(5, 4);
+        grid.markCells(3, 2, 4, 4, true);
+        assertTrue(grid.isOccupied(4, 3));
+        assertFalse(grid.isOccupied(2, 3));
+        assertFalse(grid.isRegionVacant(0, 2, 5, 1));
+        assertTrue(grid.isRegionVacant(0, 0, 5, 2));
+
+        GridOccupancy copy = new GridOccupancy(5, 4);
+        grid.copyTo(copy);
+        grid.clear();
+        assertTrue(grid.isRegionVacant(0, 0, 5, 4));
+        assertTrue(copy.isOccupied(3, 2));
+
+        copy.markCells(3, 2, 1, 1, false);
+        assertFalse(copy.isOccupied(3, 2));
+        assertTrue(copy.isOccupied(4, 2));
+    }
+
     private GridOccupancy initGrid(int rows, int... cells) {
         int cols = cells.length / rows;
         int i = 0;
         GridOccupancy grid = new GridOccupancy(cols, rows);
         for (int y = 0; y < rows; y++) {
             for (int x = 0; x < cols; x++) {
-                grid.cells[x][y] = cells[i] != 0;
+                grid.markCells(x, y, 1, 1, cells[i] != 0);
                 i++;
             }
         }
@@ -15,6 +15,8 @@
  */
 package com.android.launcher3.widget;
 
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.times;
@@ -25,6 +27,7 @@ import android.appwidget.AppWidgetProviderInfo;
 import android.content.ComponentName;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.Looper;
 import android.view.LayoutInflater;
 
 import androidx.recyclerview.widget.RecyclerView;
@@ -44,6 +47,8 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
 import org.robolectric.shadows.ShadowPackageManager;
 import org.robolectric.util.ReflectionHelpers;
 
@@ -51,6 +56,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 
 @RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
 public class WidgetsListAdapterTest {
 
     @Mock private LayoutInflater mMockLayoutInflater;
@@ -76,34 +82,44 @@ public class WidgetsListAdapterTest {
 
     @Test
     public void test_notifyDataSetChanged() throws Exception {
-        mAdapter.setWidgets(generateSampleMap(1));
+        setWidgets(generateSampleMap(1));
         verify(mListener, times(1)).onChanged();
     }
 
     @Test
     public void test_notifyItemInserted() throws Exception {
-        mAdapter.setWidgets(generateSampleMap(1));
-        mAdapter.setWidgets(generateSampleMap(2));
+        setWidgets(generateSampleMap(1));
+        setWidgets(generateSampleMap(2));
         verify(mListener, times(1)).onChanged();
         verify(mListener, times(1)).onItemRangeInserted(eq(1), eq(1));
     }
 
     @Test
     public void test_notifyItemRemoved() throws Exception {
-        mAdapter.setWidgets(generateSampleMap(2));
-        mAdapter.setWidgets(generateSampleMap(1));
+        setWidgets(generateSampleMap(2));
+        setWidgets(generateSampleMap(1));
         verify(mListener, times(1)).onChanged();
         verify(mListener, times(1)).onItemRangeRemoved(eq(1), eq(1));
     }
 
     @Test
     public void testNotifyItemChanged_PackageIconDiff() throws Exception {
-        mAdapter.setWidgets(generateSampleMap(1));
-        mAdapter.setWidgets(generateSampleMap(1));
+        setWidgets(generateSampleMap(1));
+        setWidgets(generateSampleMap(1));
         verify(mListener, times(1)).onChanged();
         verify(mListener, times(1)).onItemRangeChanged(eq(0), eq(1), isNull());
     }
 
+    @Test
+    public void testNotifyItemMoved_titleChanged() throws Exception {
+        setWidgets(generateSampleMap(3));
+        ArrayList<WidgetListRowEntry> newEntries = generateSampleMap(3);
+        newEntries.get(0).pkgItem.title = "zzz";
+        setWidgets(newEntries);
+        verify(mListener, times(1)).onChanged();
+        verify(mListener, times(1)).onItemRangeMoved(eq(0), eq(2), eq(1));
+    }
+
     @Test
     public void testNotifyItemChanged_widgetItemInfoDiff() throws Exception {
         // TODO: same package name but item number changed
@@ -119,6 +135,15 @@ public class WidgetsListAdapterTest {
         // E - null = -1, E deleted from index 3      [A, C, D]
     }
 
+    /**
+     * Sets the widgets and waits for the diff, which runs in the background, to be applied
+     */
+    private void setWidgets(ArrayList<WidgetListRowEntry> entries) throws Exception {
+        mAdapter.setWidgets(entries);
+        UI_HELPER_EXECUTOR.submit(() -> { }).get();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
     /**
      * Helper method to generate the sample widget model map that can be used for the tests
      * @param num the number of WidgetItem the map should contain
@@ -146,6 +146,8 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
     private boolean mDisableRelayout = false;
 
     private IconLoadRequest mIconLoadRequest;
+    // Whether the icon load request was cancelled when the view was detached
+    private boolean mIconLoadCancelledOnDetach;
 
     public BubbleTextView(Context context) {
         this(context, null, 0);
@@ -215,6 +217,7 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
         mDotParams.scale = 0f;
         mForceHideDot = false;
         setBackground(null);
+        cancelIconLoadRequest();
     }
 
     private void cancelDotScaleAnim() {
@@ -359,6 +362,31 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
         refreshDrawableState();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mIconLoadCancelledOnDetach) {
+            mIconLoadCancelledOnDetach = false;
+            if (getTag() instanceof ItemInfoWithIcon
+                    && !((ItemInfoWithIcon) getTag()).usingLowResIcon()) {
+                // The icon was loaded for another view in the meantime
+                reapplyItemInfo((ItemInfoWithIcon) getTag());
+            } else {
+                verifyHighRes();
+            }
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mIconLoadRequest != null) {
+            // Don't load icons which are no longer on screen, eg. for recycled views
+            cancelIconLoadRequest();
+            mIconLoadCancelledOnDetach = true;
+        }
+    }
+
     @Override
     public void onVisibilityAggregated(boolean isVisible) {
         super.onVisibilityAggregated(isVisible);
@@ -671,10 +699,7 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
      * Verifies that the current icon is high-res otherwise posts a request to load the icon.
      */
     public void verifyHighRes() {
-        if (mIconLoadRequest != null) {
-            mIconLoadRequest.cancel();
-            mIconLoadRequest = null;
-        }
+        cancelIconLoadRequest();
         if (getTag() instanceof ItemInfoWithIcon) {
             ItemInfoWithIcon info = (ItemInfoWithIcon) getTag();
             if (info.usingLowResIcon()) {
@@ -684,6 +709,14 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
         }
     }
 
+    private void cancelIconLoadRequest() {
+        mIconLoadCancelledOnDetach = false;
+        if (mIconLoadRequest != null) {
+            mIconLoadRequest.cancel();
+            mIconLoadRequest = null;
+        }
+    }
+
     public int getIconSize() {
         return mIconSize;
     }
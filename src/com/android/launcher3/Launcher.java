@@ -48,6 +48,7 @@ import static com.android.launcher3.popup.SystemShortcut.INSTALL;
 import static com.android.launcher3.popup.SystemShortcut.WIDGETS;
 import static com.android.launcher3.states.RotationHelper.REQUEST_LOCK;
 import static com.android.launcher3.states.RotationHelper.REQUEST_NONE;
+import static com.android.launcher3.util.ForegroundGestureTracker.SOURCE_LAUNCHER_TOUCH;
 
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
@@ -151,6 +152,7 @@ import com.android.launcher3.userevent.nano.LauncherLogProto.Target;
 import com.android.launcher3.util.ActivityResultInfo;
 import com.android.launcher3.util.ActivityTracker;
 import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.ForegroundGestureTracker;
 import com.android.launcher3.util.IntArray;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.MultiValueAlpha;
@@ -902,6 +904,8 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         }
 
         mAppWidgetHost.setListenIfResumed(true);
+        // Page changes while the host was not listening did not inflate any widget
+        mWorkspace.inflateDeferredWidgetsNearPage(mWorkspace.getNextPage());
         TraceHelper.INSTANCE.endSection(traceToken);
     }
 
@@ -1024,6 +1028,7 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
     public void onStateSetEnd(LauncherState state) {
         super.onStateSetStart(state);
         getAppWidgetHost().setResumed(state == LauncherState.NORMAL);
+        getWorkspace().inflateDeferredWidgetsNearPage(getWorkspace().getNextPage());
         getWorkspace().setClipChildren(!state.hasFlag(FLAG_MULTI_PAGE));
 
         finishAutoCancelActionMode();
@@ -1075,6 +1080,8 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         mDragController.cancelDrag();
         mLastTouchUpTime = -1;
         mDropTargetBar.animateToVisibility(false);
+        // Persist any pending item moves, as the process can be killed once in the background
+        mModel.flushPendingWrites();
 
         if (!mDeferOverlayCallbacks) {
             mOverlayManager.onActivityPaused(this);
@@ -1806,12 +1813,14 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         switch (ev.getAction()) {
             case MotionEvent.ACTION_DOWN:
                 mTouchInProgress = true;
+                ForegroundGestureTracker.setGestureActive(SOURCE_LAUNCHER_TOUCH, true);
                 break;
             case MotionEvent.ACTION_UP:
                 mLastTouchUpTime = System.currentTimeMillis();
                 // Follow through
             case MotionEvent.ACTION_CANCEL:
                 mTouchInProgress = false;
+                ForegroundGestureTracker.setGestureActive(SOURCE_LAUNCHER_TOUCH, false);
                 break;
         }
         TestLogging.recordMotionEvent(TestProtocol.SEQUENCE_MAIN, "Touch event", ev);
@@ -1929,6 +1938,9 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
             // This clears all widget bitmaps from the widget tray
             // TODO(hyunyoungs)
         }
+        LauncherAppState app = LauncherAppState.getInstance(this);
+        app.getIconCache().onTrimMemory(level);
+        app.getWidgetCache().onTrimMemory(level);
     }
 
     @Override
@@ -2320,7 +2332,9 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
 
                 item.minSpanX = appWidgetInfo.minSpanX;
                 item.minSpanY = appWidgetInfo.minSpanY;
-                view = mAppWidgetHost.createView(this, item.appWidgetId, appWidgetInfo);
+                view = shouldDeferWidgetInflation(item, appWidgetInfo)
+                        ? mAppWidgetHost.createDeferredView(this, item.appWidgetId, appWidgetInfo)
+                        : mAppWidgetHost.createView(this, item.appWidgetId, appWidgetInfo);
             } else if (!item.hasRestoreFlag(LauncherAppWidgetInfo.FLAG_ID_NOT_VALID)
                     && appWidgetInfo != null) {
                 mAppWidgetHost.addPendingView(item.appWidgetId,
@@ -2337,6 +2351,33 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         return view;
     }
 
+    /**
+     * Returns true if the widget should be bound as a placeholder, which the workspace inflates
+     * when its page gets within one page of the current page.
+     *
+     * @see Workspace#inflateDeferredWidgetsNearPage(int)
+     */
+    private boolean shouldDeferWidgetInflation(LauncherAppWidgetInfo item,
+            LauncherAppWidgetProviderInfo appWidgetInfo) {
+        return !appWidgetInfo.isCustomWidget() && mAppWidgetHost.isListening()
+                && isOnFarWorkspacePage(item);
+    }
+
+    /**
+     * Returns true if the item is on a workspace page more than one page away from the current
+     * page.
+     */
+    boolean isOnFarWorkspacePage(ItemInfo item) {
+        if (item.container != LauncherSettings.Favorites.CONTAINER_DESKTOP) {
+            return false;
+        }
+        int pageIndex = mWorkspace.getPageIndexForScreenId(item.screenId);
+        // While snapping to a page, the widgets are inflated for the destination page
+        int currentPage = mPageToBindSynchronously != PagedView.INVALID_PAGE
+                ? mPageToBindSynchronously : mWorkspace.getNextPage();
+        return pageIndex >= 0 && Math.abs(pageIndex - currentPage) > 1;
+    }
+
     /**
      * Restores a pending widget.
      *
@@ -2432,6 +2473,7 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         // override the previous page so we don't log the page switch.
         mWorkspace.setCurrentPage(pageBoundFirst, pageBoundFirst /* overridePrevPage */);
         mPageToBindSynchronously = PagedView.INVALID_PAGE;
+        mWorkspace.updatePinnedIcons();
 
         // Cache one page worth of icons
         getViewCache().setCacheSize(R.layout.folder_application,
@@ -2583,6 +2625,7 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         mDragLayer.dump(prefix, writer);
         mStateManager.dump(prefix, writer);
         mPopupDataProvider.dump(prefix, writer);
+        mAppsView.getSearchUiManager().dump(prefix, writer);
 
         try {
             FileLog.flushAll(writer);
@@ -27,9 +27,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Handler;
 import android.util.SparseArray;
+import android.view.View;
 import android.widget.Toast;
 
 import com.android.launcher3.model.WidgetsModel;
+import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.testing.TestLogging;
 import com.android.launcher3.testing.TestProtocol;
 import com.android.launcher3.widget.DeferredAppWidgetHostView;
@@ -107,15 +109,21 @@ public class LauncherAppWidgetHost extends AppWidgetHost {
             // widgets upon bind anyway. See issue 14255011 for more context.
         }
 
-        // We go in reverse order and inflate any deferred widget
+        // We go in reverse order and inflate any deferred widget. The widgets on far pages are
+        // left as placeholders, until the workspace inflates them when scrolling near them.
         for (int i = mViews.size() - 1; i >= 0; i--) {
             LauncherAppWidgetHostView view = mViews.valueAt(i);
-            if (view instanceof DeferredAppWidgetHostView) {
+            if (view instanceof DeferredAppWidgetHostView && !isOnFarWorkspacePage(view)) {
                 view.reInflate();
             }
         }
     }
 
+    private boolean isOnFarWorkspacePage(View view) {
+        return mContext instanceof Launcher && view.getTag() instanceof ItemInfo
+                && ((Launcher) mContext).isOnFarWorkspacePage((ItemInfo) view.getTag());
+    }
+
     @Override
     public void stopListening() {
         if (WidgetsModel.GO_DISABLE_WIDGETS) {
@@ -238,6 +246,21 @@ public class LauncherAppWidgetHost extends AppWidgetHost {
         }
     }
 
+    /**
+     * Creates a placeholder for a widget which is not visible yet. The placeholder does not
+     * receive updates, and is replaced by a view created with {@link #createView} when the widget
+     * is about to become visible. The system only keeps the latest RemoteViews of the widget, so
+     * the updates received in the meantime are applied at once by the new view.
+     */
+    public AppWidgetHostView createDeferredView(Context context, int appWidgetId,
+            LauncherAppWidgetProviderInfo appWidget) {
+        // Not added to mViews, as the placeholder is only inflated when it gets close to being
+        // visible, not when the host starts listening
+        DeferredAppWidgetHostView view = new DeferredAppWidgetHostView(context);
+        view.setAppWidget(appWidgetId, appWidget);
+        return view;
+    }
+
     /**
      * Called when the AppWidget provider for a AppWidget has been upgraded to a new apk.
      */
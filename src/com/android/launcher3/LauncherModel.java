@@ -44,10 +44,12 @@ import com.android.launcher3.model.BaseModelUpdateTask;
 import com.android.launcher3.model.BgDataModel;
 import com.android.launcher3.model.BgDataModel.Callbacks;
 import com.android.launcher3.model.CacheDataUpdatedTask;
+import com.android.launcher3.model.ItemUpdateQueue;
 import com.android.launcher3.model.LoaderResults;
 import com.android.launcher3.model.LoaderTask;
 import com.android.launcher3.model.ModelWriter;
 import com.android.launcher3.model.PackageInstallStateChangedTask;
+import com.android.launcher3.model.PackageUpdateCoalescer;
 import com.android.launcher3.model.PackageUpdatedTask;
 import com.android.launcher3.model.ShortcutsChangedTask;
 import com.android.launcher3.model.UserLockStateChangedTask;
@@ -112,6 +114,16 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
      */
     private final BgDataModel mBgDataModel = new BgDataModel();
 
+    // Pending item updates which are written to the database in batches
+    private final ItemUpdateQueue mItemUpdateQueue;
+
+    // Coalesces package callbacks received in quick succession into a single model update
+    private final PackageUpdateCoalescer mPackageUpdates =
+            new PackageUpdateCoalescer(task -> {
+                task.init(mApp, this, mBgDataModel, mBgAllAppsList, mMainExecutor);
+                MODEL_EXECUTOR.execute(task);
+            });
+
     // Runnable to check if the shortcuts permission has changed.
     private final Runnable mShortcutPermissionCheckRunnable = new Runnable() {
         @Override
@@ -126,6 +138,7 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
     LauncherModel(LauncherAppState app, IconCache iconCache, AppFilter appFilter) {
         mApp = app;
         mBgAllAppsList = new AllAppsList(iconCache, appFilter);
+        mItemUpdateQueue = new ItemUpdateQueue(app.getContext());
     }
 
     /**
@@ -143,10 +156,21 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
                 hasVerticalHotseat, verifyChanges);
     }
 
+    public ItemUpdateQueue getItemUpdateQueue() {
+        return mItemUpdateQueue;
+    }
+
+    /**
+     * Writes all the pending item updates to the database on the model thread
+     */
+    public void flushPendingWrites() {
+        MODEL_EXECUTOR.execute(mItemUpdateQueue::flush);
+    }
+
     @Override
     public void onPackageChanged(String packageName, UserHandle user) {
         int op = PackageUpdatedTask.OP_UPDATE;
-        enqueueModelUpdateTask(new PackageUpdatedTask(op, user, packageName));
+        mPackageUpdates.enqueue(op, user, packageName);
     }
 
     @Override
@@ -157,41 +181,37 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
     public void onPackagesRemoved(UserHandle user, String... packages) {
         int op = PackageUpdatedTask.OP_REMOVE;
         FileLog.d(TAG, "package removed received " + TextUtils.join(",", packages));
-        enqueueModelUpdateTask(new PackageUpdatedTask(op, user, packages));
+        mPackageUpdates.enqueue(op, user, packages);
     }
 
     @Override
     public void onPackageAdded(String packageName, UserHandle user) {
         int op = PackageUpdatedTask.OP_ADD;
-        enqueueModelUpdateTask(new PackageUpdatedTask(op, user, packageName));
+        mPackageUpdates.enqueue(op, user, packageName);
     }
 
     @Override
     public void onPackagesAvailable(String[] packageNames, UserHandle user,
             boolean replacing) {
-        enqueueModelUpdateTask(
-                new PackageUpdatedTask(PackageUpdatedTask.OP_UPDATE, user, packageNames));
+        mPackageUpdates.enqueue(PackageUpdatedTask.OP_UPDATE, user, packageNames);
     }
 
     @Override
     public void onPackagesUnavailable(String[] packageNames, UserHandle user,
             boolean replacing) {
         if (!replacing) {
-            enqueueModelUpdateTask(new PackageUpdatedTask(
-                    PackageUpdatedTask.OP_UNAVAILABLE, user, packageNames));
+            mPackageUpdates.enqueue(PackageUpdatedTask.OP_UNAVAILABLE, user, packageNames);
         }
     }
 
     @Override
     public void onPackagesSuspended(String[] packageNames, UserHandle user) {
-        enqueueModelUpdateTask(new PackageUpdatedTask(
-                PackageUpdatedTask.OP_SUSPEND, user, packageNames));
+        mPackageUpdates.enqueue(PackageUpdatedTask.OP_SUSPEND, user, packageNames);
     }
 
     @Override
     public void onPackagesUnsuspended(String[] packageNames, UserHandle user) {
-        enqueueModelUpdateTask(new PackageUpdatedTask(
-                PackageUpdatedTask.OP_UNSUSPEND, user, packageNames));
+        mPackageUpdates.enqueue(PackageUpdatedTask.OP_UNSUSPEND, user, packageNames);
     }
 
     @Override
@@ -520,10 +540,20 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
     }
 
     public void enqueueModelUpdateTask(ModelUpdateTask task) {
+        // Run any pending package updates first so that tasks are executed in the order in which
+        // the events were received.
+        mPackageUpdates.flush();
         task.init(mApp, this, mBgDataModel, mBgAllAppsList, mMainExecutor);
         MODEL_EXECUTOR.execute(task);
     }
 
+    /**
+     * Enqueues any pending package updates without waiting for more package events
+     */
+    public void flushPackageUpdates() {
+        mPackageUpdates.flush();
+    }
+
     /**
      * A task to be executed on the current callbacks on the UI thread.
      * If there is no current callbacks, the task is ignored.
@@ -589,6 +619,9 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
                         + " componentName=" + info.componentName.getPackageName());
             }
         }
+        mPackageUpdates.dump(prefix, writer);
+        mApp.getIconCache().dump(prefix, writer);
+        mApp.getWidgetCache().dump(prefix, writer);
         mBgDataModel.dump(prefix, fd, writer, args);
     }
 
@@ -1441,6 +1441,16 @@ public abstract class PagedView<T extends View & PageIndicator> extends ViewGrou
         return getPageNearestToCenterOfScreen(mOrientationHandler.getPrimaryScroll(this));
     }
 
+    /**
+     * Returns the page which will be nearest to the center of the screen once the current scroll
+     * settles.
+     */
+    protected int getDestinationPage() {
+        return mScroller.isFinished()
+                ? getPageNearestToCenterOfScreen()
+                : getPageNearestToCenterOfScreen(mScroller.getFinalPos());
+    }
+
     private int getPageNearestToCenterOfScreen(int scaledScroll) {
         int pageOrientationSize = mOrientationHandler.getMeasuredSize(this);
         int screenCenter = scaledScroll + (pageOrientationSize / 2);
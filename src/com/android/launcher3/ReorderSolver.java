@@ -0,0 +1,879 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3;
+
+import android.graphics.Rect;
+
+import com.android.launcher3.util.CellAndSpan;
+import com.android.launcher3.util.GridOccupancy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Searches for a reordering of the items in a {@link CellLayout} which makes space for an item
+ * being dragged over it.
+ *
+ * The search works on a {@link Request}, a snapshot of the positions of the items and of the grid
+ * occupancy, and never accesses any view. This allows it to run on a background thread. Items are
+ * identified by their index in the snapshot.
+ */
+public class ReorderSolver {
+
+    /**
+     * Provides the nearest cell to the drag position for an item of the given span
+     */
+    public interface NearestCellProvider {
+        void getNearestCell(int spanX, int spanY, int[] outCell);
+    }
+
+    /**
+     * Snapshot of a layout and of the parameters of a reorder search. Two requests are equal if
+     * the search would return the same solution, so that requests can be used as memo keys.
+     */
+    public static final class Request {
+
+        // Number of ints per item in mItems: cellX, cellY, spanX, spanY, canReorder
+        private static final int ITEM_SIZE = 5;
+
+        final int countX;
+        final int countY;
+        final int itemCount;
+        final int dragIndex;
+        final int minSpanX;
+        final int minSpanY;
+        final int spanX;
+        final int spanY;
+        final boolean decX;
+
+        private final int[] mItems;
+        private final int[] mDirection;
+        private final GridOccupancy mOccupied;
+        // Nearest cell for each span from (minSpanX, minSpanY) to (spanX, spanY)
+        private final int[] mNearestCells;
+        private final int mHashCode;
+
+        /**
+         * @param items the current position of each item
+         * @param canReorder whether each item can be moved
+         * @param dragIndex index of the item being dragged, or -1
+         * @param direction the favored direction in which items should move
+         * @param nearestCells called on the calling thread for each span that the search may try
+         */
+        public Request(int countX, int countY, CellAndSpan[] items, boolean[] canReorder,
+                int dragIndex, GridOccupancy occupied, int minSpanX, int minSpanY, int spanX,
+                int spanY, int[] direction, boolean decX, NearestCellProvider nearestCells) {
+            this.countX = countX;
+            this.countY = countY;
+            this.itemCount = items.length;
+            this.dragIndex = dragIndex;
+            this.minSpanX = Math.min(minSpanX, spanX);
+            this.minSpanY = Math.min(minSpanY, spanY);
+            this.spanX = spanX;
+            this.spanY = spanY;
+            this.decX = decX;
+
+            mItems = new int[items.length * ITEM_SIZE];
+            for (int i = 0; i < items.length; i++) {
+                int offset = i * ITEM_SIZE;
+                mItems[offset] = items[i].cellX;
+                mItems[offset + 1] = items[i].cellY;
+                mItems[offset + 2] = items[i].spanX;
+                mItems[offset + 3] = items[i].spanY;
+                mItems[offset + 4] = canReorder[i] ? 1 : 0;
+            }
+            mDirection = new int[] {direction[0], direction[1]};
+            mOccupied = occupied;
+
+            int spanCountX = spanX - this.minSpanX + 1;
+            int spanCountY = spanY - this.minSpanY + 1;
+            mNearestCells = new int[Math.max(0, spanCountX * spanCountY * 2)];
+            int[] cell = new int[2];
+            for (int x = 0; x < spanCountX; x++) {
+                for (int y = 0; y < spanCountY; y++) {
+                    nearestCells.getNearestCell(this.minSpanX + x, this.minSpanY + y, cell);
+                    int offset = (x * spanCountY + y) * 2;
+                    mNearestCells[offset] = cell[0];
+                    mNearestCells[offset + 1] = cell[1];
+                }
+            }
+
+            int hash = Arrays.hashCode(mItems);
+            hash = 31 * hash + Arrays.hashCode(mNearestCells);
+            hash = 31 * hash + Arrays.hashCode(mDirection);
+            hash = 31 * hash + mOccupied.hashCode();
+            hash = 31 * hash + Arrays.hashCode(new int[] {countX, countY, dragIndex,
+                    this.minSpanX, this.minSpanY, spanX, spanY, decX ? 1 : 0});
+            mHashCode = hash;
+        }
+
+        /**
+         * Returns true if the item at {@param index} is at the provided position
+         */
+        boolean hasItemAt(int index, int cellX, int cellY, int spanX, int spanY) {
+            int offset = index * ITEM_SIZE;
+            return mItems[offset] == cellX && mItems[offset + 1] == cellY
+                    && mItems[offset + 2] == spanX && mItems[offset + 3] == spanY;
+        }
+
+        private boolean canReorder(int index) {
+            return mItems[index * ITEM_SIZE + 4] != 0;
+        }
+
+        private void getItem(int index, CellAndSpan out) {
+            int offset = index * ITEM_SIZE;
+            out.cellX = mItems[offset];
+            out.cellY = mItems[offset + 1];
+            out.spanX = mItems[offset + 2];
+            out.spanY = mItems[offset + 3];
+        }
+
+        private void getNearestCell(int spanX, int spanY, int[] out) {
+            int offset = ((spanX - minSpanX) * (this.spanY - minSpanY + 1) + spanY - minSpanY) * 2;
+            out[0] = mNearestCells[offset];
+            out[1] = mNearestCells[offset + 1];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Request)) {
+                return false;
+            }
+            Request r = (Request) o;
+            return mHashCode == r.mHashCode
+                    && countX == r.countX && countY == r.countY && dragIndex == r.dragIndex
+                    && minSpanX == r.minSpanX && minSpanY == r.minSpanY
+                    && spanX == r.spanX && spanY == r.spanY && decX == r.decX
+                    && Arrays.equals(mItems, r.mItems)
+                    && Arrays.equals(mDirection, r.mDirection)
+                    && Arrays.equals(mNearestCells, r.mNearestCells)
+                    && mOccupied.equals(r.mOccupied);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * Result of a reorder search. The cell and span are the position of the dragged item, and
+     * {@link #items} the new position of each item of the request. Solutions are shared through
+     * the memo cache and should not be modified.
+     */
+    public static final class Solution extends CellAndSpan {
+        public final CellAndSpan[] items;
+        private final CellAndSpan[] mSavedItems;
+        // Used to order the items in the direction of a push
+        private final ArrayList<Integer> mSortedItems = new ArrayList<>();
+        // Indices of the items which intersect the final position of the dragged item
+        public int[] intersectingItems;
+        public boolean isSolution = false;
+
+        private Solution(int itemCount) {
+            items = new CellAndSpan[itemCount];
+            mSavedItems = new CellAndSpan[itemCount];
+            for (int i = 0; i < itemCount; i++) {
+                items[i] = new CellAndSpan();
+                mSavedItems[i] = new CellAndSpan();
+            }
+        }
+
+        private void reset(Request request) {
+            mSortedItems.clear();
+            for (int i = 0; i < items.length; i++) {
+                request.getItem(i, items[i]);
+                mSortedItems.add(i);
+            }
+        }
+
+        private void save() {
+            for (int i = 0; i < items.length; i++) {
+                mSavedItems[i].copyFrom(items[i]);
+            }
+        }
+
+        private void restore() {
+            for (int i = 0; i < items.length; i++) {
+                items[i].copyFrom(mSavedItems[i]);
+            }
+        }
+
+        private void getBoundingRectForItems(ArrayList<Integer> indices, Rect outRect) {
+            boolean first = true;
+            for (int i : indices) {
+                CellAndSpan c = items[i];
+                if (first) {
+                    outRect.set(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
+                    first = false;
+                } else {
+                    outRect.union(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
+                }
+            }
+        }
+    }
+
+    /**
+     * Thrown to abandon a search which is no longer needed
+     */
+    private static class CancelledException extends RuntimeException {
+        CancelledException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final Request mRequest;
+    private final BooleanSupplier mIsCancelled;
+    private final GridOccupancy mTmpOccupied;
+    private final int[] mDirection;
+    private final int[] mTmpPoint = new int[2];
+    private final int[] mTempLocation = new int[2];
+    private final Rect mOccupiedRect = new Rect();
+    private final ArrayList<Integer> mIntersectingItems = new ArrayList<>();
+
+    private ReorderSolver(Request request, BooleanSupplier isCancelled) {
+        mRequest = request;
+        mIsCancelled = isCancelled;
+        mTmpOccupied = new GridOccupancy(request.countX, request.countY);
+        mDirection = new int[] {request.mDirection[0], request.mDirection[1]};
+    }
+
+    /**
+     * Finds a solution for the request, on the calling thread.
+     *
+     * @param isCancelled polled during the search, which is abandoned once it returns true
+     * @return the solution, or null if the search was cancelled
+     */
+    public static Solution solve(Request request, BooleanSupplier isCancelled) {
+        ReorderSolver solver = new ReorderSolver(request, isCancelled);
+        try {
+            return solver.findReorderSolution(request.spanX, request.spanY, request.decX,
+                    new Solution(request.itemCount));
+        } catch (CancelledException e) {
+            return null;
+        }
+    }
+
+    private void checkCancelled() {
+        if (mIsCancelled.getAsBoolean()) {
+            throw new CancelledException();
+        }
+    }
+
+    private Solution findReorderSolution(int spanX, int spanY, boolean decX, Solution solution) {
+        checkCancelled();
+        // Copy the current state into the solution. This solution will be manipulated as necessary.
+        solution.reset(mRequest);
+        // Copy the current occupied array into the temporary occupied array. This array will be
+        // manipulated as necessary to find a solution.
+        mRequest.mOccupied.copyTo(mTmpOccupied);
+
+        // We find the nearest cell into which we would place the dragged item, assuming there's
+        // nothing in its way.
+        int[] result = new int[2];
+        mRequest.getNearestCell(spanX, spanY, result);
+
+        // First we try the exact nearest position of the item being dragged,
+        // we will then want to try to move this around to other neighbouring positions
+        boolean success = rearrangementExists(result[0], result[1], spanX, spanY, solution);
+
+        if (!success) {
+            // We try shrinking the widget down to size in an alternating pattern, shrink 1 in
+            // x, then 1 in y etc.
+            int minSpanX = mRequest.minSpanX;
+            int minSpanY = mRequest.minSpanY;
+            if (spanX > minSpanX && (minSpanY == spanY || decX)) {
+                return findReorderSolution(spanX - 1, spanY, false, solution);
+            } else if (spanY > minSpanY) {
+                return findReorderSolution(spanX, spanY - 1, true, solution);
+            }
+            solution.isSolution = false;
+        } else {
+            solution.isSolution = true;
+            solution.cellX = result[0];
+            solution.cellY = result[1];
+            solution.spanX = spanX;
+            solution.spanY = spanY;
+        }
+        return solution;
+    }
+
+    private boolean rearrangementExists(int cellX, int cellY, int spanX, int spanY,
+            Solution solution) {
+        // Return early if get invalid cell positions
+        if (cellX < 0 || cellY < 0) return false;
+
+        mIntersectingItems.clear();
+        mOccupiedRect.set(cellX, cellY, cellX + spanX, cellY + spanY);
+
+        // Mark the desired location of the item currently being dragged.
+        int dragIndex = mRequest.dragIndex;
+        if (dragIndex >= 0) {
+            CellAndSpan c = solution.items[dragIndex];
+            c.cellX = cellX;
+            c.cellY = cellY;
+        }
+        Rect r1 = new Rect();
+        for (int i = 0; i < solution.items.length; i++) {
+            if (i == dragIndex) continue;
+            CellAndSpan c = solution.items[i];
+            r1.set(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
+            if (Rect.intersects(mOccupiedRect, r1)) {
+                if (!mRequest.canReorder(i)) {
+                    return false;
+                }
+                mIntersectingItems.add(i);
+            }
+        }
+
+        solution.intersectingItems = new int[mIntersectingItems.size()];
+        for (int i = 0; i < solution.intersectingItems.length; i++) {
+            solution.intersectingItems[i] = mIntersectingItems.get(i);
+        }
+
+        // First we try to find a solution which respects the push mechanic. That is,
+        // we try to find a solution such that no displaced item travels through another item
+        // without also displacing that item.
+        if (attemptPushInDirection(mIntersectingItems, mOccupiedRect, mDirection, solution)) {
+            return true;
+        }
+
+        // Next we try moving the items as a block, but without requiring the push mechanic.
+        if (addItemsToTempLocation(mIntersectingItems, mOccupiedRect, mDirection, solution)) {
+            return true;
+        }
+
+        // Ok, they couldn't move as a block, let's move them individually
+        for (int i : mIntersectingItems) {
+            if (!addItemToTempLocation(i, mOccupiedRect, mDirection, solution)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // This method tries to find a reordering solution which satisfies the push mechanic by trying
+    // to push items in each of the cardinal directions, in an order based on the direction vector
+    // passed.
+    private boolean attemptPushInDirection(ArrayList<Integer> intersectingItems, Rect occupied,
+            int[] direction, Solution solution) {
+        if ((Math.abs(direction[0]) + Math.abs(direction[1])) > 1) {
+            // If the direction vector has two non-zero components, we try pushing
+            // separately in each of the components.
+            int temp = direction[1];
+            direction[1] = 0;
+
+            if (pushItemsToTempLocation(intersectingItems, occupied, direction, solution)) {
+                return true;
+            }
+            direction[1] = temp;
+            temp = direction[0];
+            direction[0] = 0;
+
+            if (pushItemsToTempLocation(intersectingItems, occupied, direction, solution)) {
+                return true;
+            }
+            // Revert the direction
+            direction[0] = temp;
+
+            // Now we try pushing in each component of the opposite direction
+            direction[0] *= -1;
+            direction[1] *= -1;
+            temp = direction[1];
+            direction[1] = 0;
+            if (pushItemsToTempLocation(intersectingItems, occupied, direction, solution)) {
+                return true;
+            }
+
+            direction[1] = temp;
+            temp = direction[0];
+            direction[0] = 0;
+            if (pushItemsToTempLocation(intersectingItems, occupied, direction, solution)) {
+                return true;
+            }
+            // revert the direction
+            direction[0] = temp;
+            direction[0] *= -1;
+            direction[1] *= -1;
+
+        } else {
+            // If the direction vector has a single non-zero component, we push first in the
+            // direction of the vector
+            if (pushItemsToTempLocation(intersectingItems, occupied, direction, solution)) {
+                return true;
+            }
+            // Then we try the opposite direction
+            direction[0] *= -1;
+            direction[1] *= -1;
+            if (pushItemsToTempLocation(intersectingItems, occupied, direction, solution)) {
+                return true;
+            }
+            // Switch the direction back
+            direction[0] *= -1;
+            direction[1] *= -1;
+
+            // If we have failed to find a push solution with the above, then we try
+            // to find a solution by pushing along the perpendicular axis.
+
+            // Swap the components
+            int temp = direction[1];
+            direction[1] = direction[0];
+            direction[0] = temp;
+            if (pushItemsToTempLocation(intersectingItems, occupied, direction, solution)) {
+                return true;
+            }
+
+            // Then we try the opposite direction
+            direction[0] *= -1;
+            direction[1] *= -1;
+            if (pushItemsToTempLocation(intersectingItems, occupied, direction, solution)) {
+                return true;
+            }
+            // Switch the direction back
+            direction[0] *= -1;
+            direction[1] *= -1;
+
+            // Swap the components back
+            temp = direction[1];
+            direction[1] = direction[0];
+            direction[0] = temp;
+        }
+        return false;
+    }
+
+    private boolean pushItemsToTempLocation(ArrayList<Integer> indices,
+            Rect rectOccupiedByPotentialDrop, int[] direction, Solution currentState) {
+        checkCancelled();
+
+        ItemCluster cluster = new ItemCluster(indices, currentState);
+        Rect clusterRect = cluster.getBoundingRect();
+        int whichEdge;
+        int pushDistance;
+        boolean fail = false;
+
+        // Determine the edge of the cluster that will be leading the push and how far
+        // the cluster must be shifted.
+        if (direction[0] < 0) {
+            whichEdge = ItemCluster.LEFT;
+            pushDistance = clusterRect.right - rectOccupiedByPotentialDrop.left;
+        } else if (direction[0] > 0) {
+            whichEdge = ItemCluster.RIGHT;
+            pushDistance = rectOccupiedByPotentialDrop.right - clusterRect.left;
+        } else if (direction[1] < 0) {
+            whichEdge = ItemCluster.TOP;
+            pushDistance = clusterRect.bottom - rectOccupiedByPotentialDrop.top;
+        } else {
+            whichEdge = ItemCluster.BOTTOM;
+            pushDistance = rectOccupiedByPotentialDrop.bottom - clusterRect.top;
+        }
+
+        // Break early for invalid push distance.
+        if (pushDistance <= 0) {
+            return false;
+        }
+
+        // Mark the occupied state as false for the group of items we want to move.
+        for (int i : indices) {
+            mTmpOccupied.markCells(currentState.items[i], false);
+        }
+
+        // We save the current configuration -- if we fail to find a solution we will revert
+        // to the initial state. The process of finding a solution modifies the configuration
+        // in place, hence the need for revert in the failure case.
+        currentState.save();
+
+        // The pushing algorithm is simplified by considering the items in the order in which
+        // they would be pushed by the cluster. For example, if the cluster is leading with its
+        // left edge, we consider sort the items by their right edge, from right to left.
+        cluster.sortConfigurationForEdgePush(whichEdge);
+
+        int dragIndex = mRequest.dragIndex;
+        while (pushDistance > 0 && !fail) {
+            for (int i : currentState.mSortedItems) {
+                // For each item that isn't in the cluster, we see if the leading edge of the
+                // cluster is contacting the edge of that item. If so, we add that item to the
+                // cluster.
+                if (!cluster.items.contains(i) && i != dragIndex) {
+                    if (cluster.isItemTouchingEdge(i, whichEdge)) {
+                        if (!mRequest.canReorder(i)) {
+                            // The push solution includes the all apps button, this is not viable.
+                            fail = true;
+                            break;
+                        }
+                        cluster.addItem(i);
+
+                        // Adding item to cluster, mark it as not occupied.
+                        mTmpOccupied.markCells(currentState.items[i], false);
+                    }
+                }
+            }
+            pushDistance--;
+
+            // The cluster has been completed, now we move the whole thing over in the appropriate
+            // direction.
+            cluster.shift(whichEdge, 1);
+        }
+
+        boolean foundSolution = false;
+        clusterRect = cluster.getBoundingRect();
+
+        // Due to the nature of the algorithm, the only check required to verify a valid solution
+        // is to ensure that completed shifted cluster lies completely within the cell layout.
+        if (!fail && clusterRect.left >= 0 && clusterRect.right <= mRequest.countX
+                && clusterRect.top >= 0 && clusterRect.bottom <= mRequest.countY) {
+            foundSolution = true;
+        } else {
+            currentState.restore();
+        }
+
+        // In either case, we set the occupied array as marked for the location of the items
+        for (int i : cluster.items) {
+            mTmpOccupied.markCells(currentState.items[i], true);
+        }
+
+        return foundSolution;
+    }
+
+    private boolean addItemsToTempLocation(ArrayList<Integer> indices,
+            Rect rectOccupiedByPotentialDrop, int[] direction, Solution currentState) {
+        if (indices.size() == 0) return true;
+
+        boolean success = false;
+        Rect boundingRect = new Rect();
+        // We construct a rect which represents the entire group of items passed in
+        currentState.getBoundingRectForItems(indices, boundingRect);
+
+        // Mark the occupied state as false for the group of items we want to move.
+        for (int i : indices) {
+            mTmpOccupied.markCells(currentState.items[i], false);
+        }
+
+        GridOccupancy blockOccupied = new GridOccupancy(boundingRect.width(), boundingRect.height());
+        int top = boundingRect.top;
+        int left = boundingRect.left;
+        // We mark more precisely which parts of the bounding rect are truly occupied, allowing
+        // for interlocking.
+        for (int i : indices) {
+            CellAndSpan c = currentState.items[i];
+            blockOccupied.markCells(c.cellX - left, c.cellY - top, c.spanX, c.spanY, true);
+        }
+
+        mTmpOccupied.markCells(rectOccupiedByPotentialDrop, true);
+
+        findNearestArea(boundingRect.left, boundingRect.top, boundingRect.width(),
+                boundingRect.height(), direction, mTmpOccupied, blockOccupied, mTempLocation);
+
+        // If we successfuly found a location by pushing the block of items, we commit it
+        if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
+            int deltaX = mTempLocation[0] - boundingRect.left;
+            int deltaY = mTempLocation[1] - boundingRect.top;
+            for (int i : indices) {
+                CellAndSpan c = currentState.items[i];
+                c.cellX += deltaX;
+                c.cellY += deltaY;
+            }
+            success = true;
+        }
+
+        // In either case, we set the occupied array as marked for the location of the items
+        for (int i : indices) {
+            mTmpOccupied.markCells(currentState.items[i], true);
+        }
+        return success;
+    }
+
+    private boolean addItemToTempLocation(int index, Rect rectOccupiedByPotentialDrop,
+            int[] direction, Solution currentState) {
+        CellAndSpan c = currentState.items[index];
+        boolean success = false;
+        mTmpOccupied.markCells(c, false);
+        mTmpOccupied.markCells(rectOccupiedByPotentialDrop, true);
+
+        findNearestArea(c.cellX, c.cellY, c.spanX, c.spanY, direction,
+                mTmpOccupied, null, mTempLocation);
+
+        if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
+            c.cellX = mTempLocation[0];
+            c.cellY = mTempLocation[1];
+            success = true;
+        }
+        mTmpOccupied.markCells(c, true);
+        return success;
+    }
+
+    /**
+     * Find a vacant area that will fit the given bounds nearest the requested
+     * cell location, and will also weigh in a suggested direction vector of the
+     * desired location. This method computers distance based on unit grid distances,
+     * not pixel distances.
+     *
+     * @param cellX The X cell nearest to which you want to search for a vacant area.
+     * @param cellY The Y cell nearest which you want to search for a vacant area.
+     * @param spanX Horizontal span of the object.
+     * @param spanY Vertical span of the object.
+     * @param direction The favored direction in which the items should move from x, y
+     * @param occupied The array which represents which cells in the CellLayout are occupied
+     * @param blockOccupied The array which represents which cells in the specified block (cellX,
+     *        cellY, spanX, spanY) are occupied. This is used when try to move a group of items.
+     * @param result Array in which to place the result
+     */
+    private void findNearestArea(int cellX, int cellY, int spanX, int spanY, int[] direction,
+            GridOccupancy occupied, GridOccupancy blockOccupied, int[] result) {
+        checkCancelled();
+        // Keep track of best-scoring drop area
+        float bestDistance = Float.MAX_VALUE;
+        int bestDirectionScore = Integer.MIN_VALUE;
+
+        final int countX = mRequest.countX;
+        final int countY = mRequest.countY;
+
+        for (int y = 0; y < countY - (spanY - 1); y++) {
+            for (int x = 0; x < countX - (spanX - 1); x++) {
+                // First, let's see if this thing fits anywhere
+                if (blockOccupied == null
+                        ? !occupied.isRegionVacant(x, y, spanX, spanY)
+                        : !occupied.canPlace(blockOccupied, x, y)) {
+                    continue;
+                }
+
+                float distance = (float) Math.hypot(x - cellX, y - cellY);
+                int[] curDirection = mTmpPoint;
+                computeDirectionVector(x - cellX, y - cellY, curDirection);
+                // The direction score is just the dot product of the two candidate direction
+                // and that passed in.
+                int curDirectionScore = direction[0] * curDirection[0] +
+                        direction[1] * curDirection[1];
+                if (Float.compare(distance,  bestDistance) < 0 ||
+                        (Float.compare(distance, bestDistance) == 0
+                                && curDirectionScore > bestDirectionScore)) {
+                    bestDistance = distance;
+                    bestDirectionScore = curDirectionScore;
+                    result[0] = x;
+                    result[1] = y;
+                }
+            }
+        }
+
+        // Return -1, -1 if no suitable location found
+        if (bestDistance == Float.MAX_VALUE) {
+            result[0] = -1;
+            result[1] = -1;
+        }
+    }
+
+    /*
+     * Returns a pair (x, y), where x,y are in {-1, 0, 1} corresponding to vector between
+     * the provided point and the provided cell
+     */
+    static void computeDirectionVector(float deltaX, float deltaY, int[] result) {
+        double angle = Math.atan(deltaY / deltaX);
+
+        result[0] = 0;
+        result[1] = 0;
+        if (Math.abs(Math.cos(angle)) > 0.5f) {
+            result[0] = (int) Math.signum(deltaX);
+        }
+        if (Math.abs(Math.sin(angle)) > 0.5f) {
+            result[1] = (int) Math.signum(deltaY);
+        }
+    }
+
+    /**
+     * This helper class defines a cluster of items. It helps with defining complex edges
+     * of the cluster and determining how those edges interact with other items. The edges
+     * essentially define a fine-grained boundary around the cluster of items -- like a more
+     * precise version of a bounding box.
+     */
+    private class ItemCluster {
+        final static int LEFT = 1 << 0;
+        final static int TOP = 1 << 1;
+        final static int RIGHT = 1 << 2;
+        final static int BOTTOM = 1 << 3;
+
+        final ArrayList<Integer> items;
+        final Solution config;
+        final Rect boundingRect = new Rect();
+
+        final int[] leftEdge = new int[mRequest.countY];
+        final int[] rightEdge = new int[mRequest.countY];
+        final int[] topEdge = new int[mRequest.countX];
+        final int[] bottomEdge = new int[mRequest.countX];
+        int dirtyEdges;
+        boolean boundingRectDirty;
+
+        ItemCluster(ArrayList<Integer> items, Solution config) {
+            this.items = new ArrayList<>(items);
+            this.config = config;
+            resetEdges();
+        }
+
+        void resetEdges() {
+            Arrays.fill(topEdge, -1);
+            Arrays.fill(bottomEdge, -1);
+            Arrays.fill(leftEdge, -1);
+            Arrays.fill(rightEdge, -1);
+            dirtyEdges = LEFT | TOP | RIGHT | BOTTOM;
+            boundingRectDirty = true;
+        }
+
+        void computeEdge(int which) {
+            int count = items.size();
+            for (int i = 0; i < count; i++) {
+                CellAndSpan cs = config.items[items.get(i)];
+                switch (which) {
+                    case LEFT:
+                        int left = cs.cellX;
+                        for (int j = cs.cellY; j < cs.cellY + cs.spanY; j++) {
+                            if (left < leftEdge[j] || leftEdge[j] < 0) {
+                                leftEdge[j] = left;
+                            }
+                        }
+                        break;
+                    case RIGHT:
+                        int right = cs.cellX + cs.spanX;
+                        for (int j = cs.cellY; j < cs.cellY + cs.spanY; j++) {
+                            if (right > rightEdge[j]) {
+                                rightEdge[j] = right;
+                            }
+                        }
+                        break;
+                    case TOP:
+                        int top = cs.cellY;
+                        for (int j = cs.cellX; j < cs.cellX + cs.spanX; j++) {
+                            if (top < topEdge[j] || topEdge[j] < 0) {
+                                topEdge[j] = top;
+                            }
+                        }
+                        break;
+                    case BOTTOM:
+                        int bottom = cs.cellY + cs.spanY;
+                        for (int j = cs.cellX; j < cs.cellX + cs.spanX; j++) {
+                            if (bottom > bottomEdge[j]) {
+                                bottomEdge[j] = bottom;
+                            }
+                        }
+                        break;
+                }
+            }
+        }
+
+        boolean isItemTouchingEdge(int index, int whichEdge) {
+            CellAndSpan cs = config.items[index];
+
+            if ((dirtyEdges & whichEdge) == whichEdge) {
+                computeEdge(whichEdge);
+                dirtyEdges &= ~whichEdge;
+            }
+
+            switch (whichEdge) {
+                case LEFT:
+                    for (int i = cs.cellY; i < cs.cellY + cs.spanY; i++) {
+                        if (leftEdge[i] == cs.cellX + cs.spanX) {
+                            return true;
+                        }
+                    }
+                    break;
+                case RIGHT:
+                    for (int i = cs.cellY; i < cs.cellY + cs.spanY; i++) {
+                        if (rightEdge[i] == cs.cellX) {
+                            return true;
+                        }
+                    }
+                    break;
+                case TOP:
+                    for (int i = cs.cellX; i < cs.cellX + cs.spanX; i++) {
+                        if (topEdge[i] == cs.cellY + cs.spanY) {
+                            return true;
+                        }
+                    }
+                    break;
+                case BOTTOM:
+                    for (int i = cs.cellX; i < cs.cellX + cs.spanX; i++) {
+                        if (bottomEdge[i] == cs.cellY) {
+                            return true;
+                        }
+                    }
+                    break;
+            }
+            return false;
+        }
+
+        void shift(int whichEdge, int delta) {
+            for (int i : items) {
+                CellAndSpan c = config.items[i];
+                switch (whichEdge) {
+                    case LEFT:
+                        c.cellX -= delta;
+                        break;
+                    case RIGHT:
+                        c.cellX += delta;
+                        break;
+                    case TOP:
+                        c.cellY -= delta;
+                        break;
+                    case BOTTOM:
+                    default:
+                        c.cellY += delta;
+                        break;
+                }
+            }
+            resetEdges();
+        }
+
+        void addItem(int index) {
+            items.add(index);
+            resetEdges();
+        }
+
+        Rect getBoundingRect() {
+            if (boundingRectDirty) {
+                config.getBoundingRectForItems(items, boundingRect);
+            }
+            return boundingRect;
+        }
+
+        final PositionComparator comparator = new PositionComparator();
+        class PositionComparator implements Comparator<Integer> {
+            int whichEdge = 0;
+            public int compare(Integer left, Integer right) {
+                CellAndSpan l = config.items[left];
+                CellAndSpan r = config.items[right];
+                switch (whichEdge) {
+                    case LEFT:
+                        return (r.cellX + r.spanX) - (l.cellX + l.spanX);
+                    case RIGHT:
+                        return l.cellX - r.cellX;
+                    case TOP:
+                        return (r.cellY + r.spanY) - (l.cellY + l.spanY);
+                    case BOTTOM:
+                    default:
+                        return l.cellY - r.cellY;
+                }
+            }
+        }
+
+        void sortConfigurationForEdgePush(int edge) {
+            comparator.whichEdge = edge;
+            Collections.sort(config.mSortedItems, comparator);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.android.launcher3;
 
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE;
+
 import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+import static com.android.launcher3.util.Executors.WIDGET_PREVIEW_EXECUTOR;
 
 import android.content.ComponentName;
 import android.content.ContentValues;
@@ -25,13 +29,13 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.CancellationSignal;
 import android.os.Process;
 import android.os.UserHandle;
 import android.util.ArrayMap;
 import android.util.Log;
 import android.util.LongSparseArray;
+import android.util.LruCache;
 import android.util.Pair;
 
 import androidx.annotation.Nullable;
@@ -44,8 +48,8 @@ import com.android.launcher3.icons.ShadowGenerator;
 import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.pm.ShortcutConfigActivityInfo;
 import com.android.launcher3.pm.UserCache;
+import com.android.launcher3.util.BitmapPool;
 import com.android.launcher3.util.ComponentKey;
-import com.android.launcher3.util.Executors;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.SQLiteCacheHelper;
@@ -53,12 +57,10 @@ import com.android.launcher3.util.Thunk;
 import com.android.launcher3.widget.WidgetCell;
 import com.android.launcher3.widget.WidgetManagerHelper;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.concurrent.ExecutionException;
 
 public class WidgetPreviewLoader {
@@ -66,15 +68,22 @@ public class WidgetPreviewLoader {
     private static final String TAG = "WidgetPreviewLoader";
     private static final boolean DEBUG = false;
 
+    // Priorities of the preview load tasks
+    private static final int PRIORITY_PREFETCH = 0;
+    private static final int PRIORITY_VISIBLE = 1;
+
     private final HashMap<String, long[]> mPackageVersions = new HashMap<>();
 
     /**
-     * Weak reference objects, do not prevent their referents from being made finalizable,
-     * finalized, and then reclaimed.
-     * Note: synchronized block used for this variable is expensive and the block should always
-     * be posted to a background thread.
+     * Bitmaps which are not displayed anymore, reused for the next previews of the same size
+     */
+    @Thunk final BitmapPool mBitmapPool;
+    /**
+     * Previews recently loaded from the DB or generated. These bitmaps are never returned to
+     * {@link #mBitmapPool}, as they can be displayed by several cells.
      */
-    @Thunk final Set<Bitmap> mUnusedBitmaps = Collections.newSetFromMap(new WeakHashMap<>());
+    @Thunk final PreviewMemoryCache mMemoryCache;
+    @Thunk long mNextTaskSequence;
 
     private final Context mContext;
     private final IconCache mIconCache;
@@ -89,6 +98,10 @@ public class WidgetPreviewLoader {
         mIconCache = iconCache;
         mUserCache = UserCache.INSTANCE.get(context);
         mDb = new CacheDb(context);
+        mBitmapPool = new BitmapPool("Widget preview", context.getResources().getInteger(
+                R.integer.config_widgetPreviewBitmapPoolSizeKb) * 1024L);
+        mMemoryCache = new PreviewMemoryCache(context.getResources().getInteger(
+                R.integer.config_widgetPreviewMemoryCacheSizeKb) * 1024);
     }
 
     /**
@@ -137,18 +150,52 @@ public class WidgetPreviewLoader {
     }
 
     /**
-     * Generates the widget preview on {@link AsyncTask#THREAD_POOL_EXECUTOR}. Must be
+     * Generates the widget preview on the widget preview executor. Must be
      * called on UI thread
      *
      * @return a request id which can be used to cancel the request.
      */
+    @UiThread
     public CancellationSignal getPreview(WidgetItem item, int previewWidth,
             int previewHeight, WidgetCell caller) {
         String size = previewWidth + "x" + previewHeight;
         WidgetCacheKey key = new WidgetCacheKey(item.componentName, item.user, size);
 
-        PreviewLoadTask task = new PreviewLoadTask(key, item, previewWidth, previewHeight, caller);
-        task.executeOnExecutor(Executors.THREAD_POOL_EXECUTOR);
+        Bitmap cached = getFromMemoryCache(key, true /* recordLookup */);
+        if (cached != null) {
+            caller.applyPreview(cached);
+            return new CancellationSignal();
+        }
+
+        PreviewLoadTask task = new PreviewLoadTask(key, item, previewWidth, previewHeight,
+                BaseActivity.fromContext(caller.getContext()), caller, PRIORITY_VISIBLE);
+        WIDGET_PREVIEW_EXECUTOR.execute(task);
+
+        CancellationSignal signal = new CancellationSignal();
+        signal.setOnCancelListener(task);
+        return signal;
+    }
+
+    /**
+     * Loads the preview in the memory cache ahead of time, so that it is available as soon as a
+     * cell asks for it with {@link #getPreview}. Prefetches only run once no visible preview is
+     * waiting to be loaded. Must be called on UI thread
+     *
+     * @return a request id which can be used to cancel the request, or null if the preview is
+     * already in memory.
+     */
+    @UiThread
+    public CancellationSignal prefetchPreview(WidgetItem item, int previewWidth,
+            int previewHeight, BaseActivity activity) {
+        String size = previewWidth + "x" + previewHeight;
+        WidgetCacheKey key = new WidgetCacheKey(item.componentName, item.user, size);
+        if (getFromMemoryCache(key, false /* recordLookup */) != null) {
+            return null;
+        }
+
+        PreviewLoadTask task = new PreviewLoadTask(key, item, previewWidth, previewHeight,
+                activity, null, PRIORITY_PREFETCH);
+        WIDGET_PREVIEW_EXECUTOR.execute(task);
 
         CancellationSignal signal = new CancellationSignal();
         signal.setOnCancelListener(task);
@@ -156,9 +203,50 @@ public class WidgetPreviewLoader {
     }
 
     public void refresh() {
+        mMemoryCache.evictAll();
         mDb.clear();
     }
 
+    /**
+     * Called when the system asks Launcher to trim its memory
+     */
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // Memory is low, or the UI was hidden and the widget tray is not visible anymore
+            mBitmapPool.clear();
+            mMemoryCache.evictAll();
+        } else if (level == TRIM_MEMORY_RUNNING_MODERATE) {
+            mBitmapPool.trimToHalf();
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        mBitmapPool.dump(prefix, writer);
+        mMemoryCache.dump(prefix, writer);
+    }
+
+    /**
+     * Returns the preview for the key if it is in memory and was generated for the current
+     * version of its package, or null.
+     */
+    private Bitmap getFromMemoryCache(WidgetCacheKey key, boolean recordLookup) {
+        long[] versions;
+        synchronized (mPackageVersions) {
+            versions = mPackageVersions.get(key.componentName.getPackageName());
+        }
+        // The entries of packages whose version is unknown were removed with the version
+        CachedPreview entry = versions == null ? null : mMemoryCache.get(key);
+        if (entry != null && (entry.version != versions[0] || entry.lastUpdated != versions[1])) {
+            mMemoryCache.remove(key);
+            entry = null;
+        }
+        if (recordLookup) {
+            mMemoryCache.recordLookup(entry != null);
+        }
+        return entry == null ? null : entry.preview;
+    }
+
     /**
      * The DB holds the generated previews for various components. Previews can also have different
      * sizes (landscape vs portrait).
@@ -214,6 +302,7 @@ public class WidgetPreviewLoader {
         synchronized(mPackageVersions) {
             mPackageVersions.remove(packageName);
         }
+        mMemoryCache.removePackage(packageName, user);
 
         mDb.delete(
                 CacheDb.COLUMN_PACKAGE + " = ? AND " + CacheDb.COLUMN_USER + " = ?",
@@ -321,8 +410,11 @@ public class WidgetPreviewLoader {
             }
             if (cursor.moveToNext()) {
                 byte[] blob = cursor.getBlob(0);
+                // Decode straight into the pooled bitmap, the decoded preview is never larger
+                // than the size of the request which generated it
                 BitmapFactory.Options opts = new BitmapFactory.Options();
                 opts.inBitmap = recycle;
+                opts.inMutable = true;
                 try {
                     if (!loadTask.isCancelled()) {
                         return BitmapFactory.decodeByteArray(blob, 0, blob.length, opts);
@@ -590,63 +682,85 @@ public class WidgetPreviewLoader {
         }
     }
 
-    public class PreviewLoadTask extends AsyncTask<Void, Void, Bitmap>
-            implements CancellationSignal.OnCancelListener {
+    /**
+     * Task loading a preview on the widget preview executor. Tasks for visible cells run before
+     * prefetches, and the most recent tasks run first, as they are for the cells which were bound
+     * last.
+     */
+    public class PreviewLoadTask implements Runnable, Comparable<PreviewLoadTask>,
+            CancellationSignal.OnCancelListener {
         @Thunk final WidgetCacheKey mKey;
         private final WidgetItem mInfo;
         private final int mPreviewHeight;
         private final int mPreviewWidth;
-        private final WidgetCell mCaller;
+        // Cell to apply the preview to, or null when prefetching
+        @Nullable private final WidgetCell mCaller;
         private final BaseActivity mActivity;
+        private final int mPriority;
+        private final long mSequence;
         @Thunk long[] mVersions;
         @Thunk Bitmap mBitmapToRecycle;
 
         private boolean mSaveToDB = false;
+        // Whether the preview was added to the memory cache, and should not be recycled
+        private volatile boolean mCached = false;
+        private volatile boolean mCancelled = false;
 
         PreviewLoadTask(WidgetCacheKey key, WidgetItem info, int previewWidth,
-                int previewHeight, WidgetCell caller) {
+                int previewHeight, BaseActivity activity, @Nullable WidgetCell caller,
+                int priority) {
             mKey = key;
             mInfo = info;
             mPreviewHeight = previewHeight;
             mPreviewWidth = previewWidth;
+            mActivity = activity;
             mCaller = caller;
-            mActivity = BaseActivity.fromContext(mCaller.getContext());
+            mPriority = priority;
+            mSequence = mNextTaskSequence++;
             if (DEBUG) {
                 Log.d(TAG, String.format("%s, %s, %d, %d",
                         mKey, mInfo, mPreviewHeight, mPreviewWidth));
             }
         }
 
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public int compareTo(PreviewLoadTask other) {
+            return mPriority != other.mPriority
+                    ? Integer.compare(other.mPriority, mPriority)
+                    : Long.compare(other.mSequence, mSequence);
+        }
+
         @Override
-        protected Bitmap doInBackground(Void... params) {
-            Bitmap unusedBitmap = null;
+        public void run() {
+            final Bitmap preview = loadPreview();
+            MAIN_EXECUTOR.execute(() -> {
+                if (isCancelled()) {
+                    onCancelled(preview);
+                } else {
+                    onPostExecute(preview);
+                }
+            });
+        }
 
+        private Bitmap loadPreview() {
             // If already cancelled before this gets to run in the background, then return early
             if (isCancelled()) {
                 return null;
             }
-            synchronized (mUnusedBitmaps) {
-                // Check if we can re-use a bitmap
-                for (Bitmap candidate : mUnusedBitmaps) {
-                    if (candidate != null && candidate.isMutable() &&
-                            candidate.getWidth() == mPreviewWidth &&
-                            candidate.getHeight() == mPreviewHeight) {
-                        unusedBitmap = candidate;
-                        mUnusedBitmaps.remove(unusedBitmap);
-                        break;
-                    }
-                }
-            }
-
-            // creating a bitmap is expensive. Do not do this inside synchronized block.
-            if (unusedBitmap == null) {
-                unusedBitmap = Bitmap.createBitmap(mPreviewWidth, mPreviewHeight, Config.ARGB_8888);
-            }
+            Bitmap unusedBitmap = mBitmapPool.obtain(mPreviewWidth, mPreviewHeight);
             // If cancelled now, don't bother reading the preview from the DB
             if (isCancelled()) {
                 return unusedBitmap;
             }
             Bitmap preview = readFromDb(mKey, unusedBitmap, this);
+            if (preview != null) {
+                addToMemoryCache(preview,
+                        getPackageVersion(mKey.componentName.getPackageName()));
+            }
             // Only consider generating the preview if we have not cancelled the task already
             if (!isCancelled() && preview == null) {
                 // Fetch the version info before we generate the preview, so that, in-case the
@@ -662,13 +776,22 @@ public class WidgetPreviewLoader {
                         mPreviewWidth, mPreviewHeight);
                 preview = pair.first;
                 this.mSaveToDB = pair.second;
+                if (mSaveToDB && mVersions != null) {
+                    addToMemoryCache(preview, mVersions);
+                }
             }
-            return preview;
+            return preview == null ? unusedBitmap : preview;
         }
 
-        @Override
-        protected void onPostExecute(final Bitmap preview) {
-            mCaller.applyPreview(preview);
+        private void addToMemoryCache(Bitmap preview, long[] versions) {
+            mCached = true;
+            mMemoryCache.put(mKey, new CachedPreview(preview, versions));
+        }
+
+        private void onPostExecute(final Bitmap preview) {
+            if (mCaller != null) {
+                mCaller.applyPreview(preview);
+            }
 
             // Write the generated preview to the DB in the worker thread
             if (mVersions != null) {
@@ -679,43 +802,40 @@ public class WidgetPreviewLoader {
                             // If we are still using this preview, then write it to the DB and then
                             // let the normal clear mechanism recycle the bitmap
                             writeToDb(mKey, mVersions, preview);
-                            mBitmapToRecycle = preview;
+                            if (mCaller != null) {
+                                mBitmapToRecycle = preview;
+                            } else {
+                                recycle(preview);
+                            }
                         } else {
                             // If we've already cancelled, then skip writing the bitmap to the DB
-                            // and manually add the bitmap back to the recycled set
-                            synchronized (mUnusedBitmaps) {
-                                mUnusedBitmaps.add(preview);
-                            }
+                            // and manually add the bitmap back to the pool
+                            recycle(preview);
                         }
                     }
                 });
-            } else {
+            } else if (mCaller != null) {
                 // If we don't need to write to disk, then ensure the preview gets recycled by
                 // the normal clear mechanism
                 mBitmapToRecycle = preview;
+            } else {
+                // The prefetched preview is not displayed
+                recycle(preview);
             }
         }
 
-        @Override
-        protected void onCancelled(final Bitmap preview) {
+        private void onCancelled(final Bitmap preview) {
             // If we've cancelled while the task is running, then can return the bitmap to the
-            // recycled set immediately. Otherwise, it will be recycled after the preview is written
+            // pool immediately. Otherwise, it will be recycled after the preview is written
             // to disk.
-            if (preview != null) {
-                MODEL_EXECUTOR.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        synchronized (mUnusedBitmaps) {
-                            mUnusedBitmaps.add(preview);
-                        }
-                    }
-                });
-            }
+            recycle(preview);
         }
 
         @Override
         public void onCancel() {
-            cancel(true);
+            mCancelled = true;
+            // If the task didn't start yet, it will never run
+            WIDGET_PREVIEW_EXECUTOR.remove(this);
 
             // This only handles the case where the PreviewLoadTask is cancelled after the task has
             // successfully completed (including having written to disk when necessary).  In the
@@ -726,14 +846,75 @@ public class WidgetPreviewLoader {
                 MODEL_EXECUTOR.post(new Runnable() {
                     @Override
                     public void run() {
-                        synchronized (mUnusedBitmaps) {
-                            mUnusedBitmaps.add(mBitmapToRecycle);
-                        }
+                        recycle(mBitmapToRecycle);
                         mBitmapToRecycle = null;
                     }
                 });
             }
         }
+
+        @Thunk void recycle(Bitmap preview) {
+            if (!mCached) {
+                mBitmapPool.release(preview, mPreviewWidth, mPreviewHeight);
+            }
+        }
+    }
+
+    private static final class CachedPreview {
+
+        final Bitmap preview;
+        final long version;
+        final long lastUpdated;
+
+        CachedPreview(Bitmap preview, long[] versions) {
+            this.preview = preview;
+            this.version = versions[0];
+            this.lastUpdated = versions[1];
+        }
+    }
+
+    /**
+     * In-memory LRU cache of the previews, bounded by the size of their bitmaps. Can be used from
+     * any thread.
+     */
+    private static final class PreviewMemoryCache extends LruCache<WidgetCacheKey, CachedPreview> {
+
+        private long mHitCount;
+        private long mMissCount;
+
+        PreviewMemoryCache(int maxBytes) {
+            super(maxBytes);
+        }
+
+        @Override
+        protected int sizeOf(WidgetCacheKey key, CachedPreview value) {
+            return value.preview.getAllocationByteCount();
+        }
+
+        synchronized void recordLookup(boolean hit) {
+            if (hit) {
+                mHitCount++;
+            } else {
+                mMissCount++;
+            }
+        }
+
+        void removePackage(String packageName, UserHandle user) {
+            for (WidgetCacheKey key : snapshot().keySet()) {
+                if (key.componentName.getPackageName().equals(packageName)
+                        && key.user.equals(user)) {
+                    remove(key);
+                }
+            }
+        }
+
+        synchronized void dump(String prefix, PrintWriter writer) {
+            long lookups = mHitCount + mMissCount;
+            writer.println(prefix + "Widget preview memory cache: size=" + size() / 1024 + "KB/"
+                    + maxSize() / 1024 + "KB hits=" + mHitCount + " misses=" + mMissCount
+                    + " hitRate=" + (lookups == 0 ? 0 : mHitCount * 100 / lookups) + "%"
+                    + " evictions=" + evictionCount());
+        }
     }
 
     private static final class WidgetCacheKey extends ComponentKey {
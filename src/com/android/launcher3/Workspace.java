@@ -41,6 +41,7 @@ import android.annotation.SuppressLint;
 import android.app.WallpaperManager;
 import android.appwidget.AppWidgetHostView;
 import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
@@ -99,6 +100,7 @@ import com.android.launcher3.touch.WorkspaceTouchListener;
 import com.android.launcher3.userevent.nano.LauncherLogProto.Action;
 import com.android.launcher3.userevent.nano.LauncherLogProto.ContainerType;
 import com.android.launcher3.userevent.nano.LauncherLogProto.Target;
+import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.Executors;
 import com.android.launcher3.util.IntArray;
 import com.android.launcher3.util.IntSparseArrayMap;
@@ -106,6 +108,7 @@ import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Thunk;
 import com.android.launcher3.util.WallpaperOffsetInterpolator;
+import com.android.launcher3.widget.DeferredAppWidgetHostView;
 import com.android.launcher3.widget.LauncherAppWidgetHostView;
 import com.android.launcher3.widget.PendingAddShortcutInfo;
 import com.android.launcher3.widget.PendingAddWidgetInfo;
@@ -870,6 +873,8 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
     protected void onPageBeginTransition() {
         super.onPageBeginTransition();
         updateChildrenLayersEnabled();
+        // When snapping to a page further away, inflate its widgets before it becomes visible
+        inflateDeferredWidgetsNearPage(getNextPage());
     }
 
     protected void onPageEndTransition() {
@@ -888,6 +893,8 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
             stripEmptyScreens();
             mStripScreensOnPageStopMoving = false;
         }
+
+        updatePinnedIcons();
     }
 
     protected void onScrollInteractionBegin() {
@@ -1122,6 +1129,7 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
     @Override
     protected void notifyPageSwitchListener(int prevPage) {
         super.notifyPageSwitchListener(prevPage);
+        inflateDeferredWidgetsNearPage(mCurrentPage);
         if (prevPage != mCurrentPage) {
             int swipeDirection = (prevPage < mCurrentPage)
                     ? Action.Direction.RIGHT : Action.Direction.LEFT;
@@ -1140,6 +1148,32 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
         }
     }
 
+    /**
+     * Inflates the widgets bound as placeholders on the pages within one page of {@param page},
+     * so that they are ready before the user scrolls to them.
+     */
+    public void inflateDeferredWidgetsNearPage(int page) {
+        if (page < 0 || !mLauncher.getAppWidgetHost().isListening()) {
+            // Inflating the widgets would only create placeholders again
+            return;
+        }
+        ArrayList<DeferredAppWidgetHostView> views = new ArrayList<>();
+        int lastPage = Math.min(page + 1, getChildCount() - 1);
+        for (int i = Math.max(page - 1, 0); i <= lastPage; i++) {
+            ShortcutAndWidgetContainer container = ((CellLayout) getPageAt(i))
+                    .getShortcutsAndWidgets();
+            for (int j = container.getChildCount() - 1; j >= 0; j--) {
+                View child = container.getChildAt(j);
+                if (child instanceof DeferredAppWidgetHostView) {
+                    views.add((DeferredAppWidgetHostView) child);
+                }
+            }
+        }
+        for (DeferredAppWidgetHostView view : views) {
+            view.reInflate();
+        }
+    }
+
     protected void setWallpaperDimension() {
         Executors.THREAD_POOL_EXECUTOR.execute(new Runnable() {
             @Override
@@ -2188,10 +2222,9 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
                     && !mReorderAlarm.alarmPending() && (mLastReorderX != reorderX ||
                     mLastReorderY != reorderY)) {
 
-                int[] resultSpan = new int[2];
-                mDragTargetLayout.performReorder((int) mDragViewVisualCenter[0],
+                mDragTargetLayout.performReorderAsync((int) mDragViewVisualCenter[0],
                         (int) mDragViewVisualCenter[1], minSpanX, minSpanY, item.spanX, item.spanY,
-                        child, mTargetCell, resultSpan, CellLayout.MODE_SHOW_REORDER_HINT);
+                        child, CellLayout.MODE_SHOW_REORDER_HINT, null);
 
                 // Otherwise, if we aren't adding to or creating a folder and there's no pending
                 // reorder, then we schedule a reorder
@@ -2347,26 +2380,30 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
         }
 
         public void onAlarm(Alarm alarm) {
-            int[] resultSpan = new int[2];
             mTargetCell = findNearestArea((int) mDragViewVisualCenter[0],
                     (int) mDragViewVisualCenter[1], minSpanX, minSpanY, mDragTargetLayout,
                     mTargetCell);
             mLastReorderX = mTargetCell[0];
             mLastReorderY = mTargetCell[1];
 
-            mTargetCell = mDragTargetLayout.performReorder((int) mDragViewVisualCenter[0],
-                (int) mDragViewVisualCenter[1], minSpanX, minSpanY, spanX, spanY,
-                child, mTargetCell, resultSpan, CellLayout.MODE_DRAG_OVER);
-
-            if (mTargetCell[0] < 0 || mTargetCell[1] < 0) {
-                mDragTargetLayout.revertTempState();
-            } else {
-                setDragMode(DRAG_MODE_REORDER);
-            }
+            // The reorder search runs in the background, and is cancelled if the drag moves on
+            // to another position or layout before it completes.
+            CellLayout layout = mDragTargetLayout;
+            layout.performReorderAsync((int) mDragViewVisualCenter[0],
+                    (int) mDragViewVisualCenter[1], minSpanX, minSpanY, spanX, spanY, child,
+                    CellLayout.MODE_DRAG_OVER, (targetCell, resultSpan) -> {
+                        mTargetCell = targetCell;
+                        if (mTargetCell[0] < 0 || mTargetCell[1] < 0) {
+                            layout.revertTempState();
+                        } else {
+                            setDragMode(DRAG_MODE_REORDER);
+                        }
 
-            boolean resize = resultSpan[0] != spanX || resultSpan[1] != spanY;
-            mDragTargetLayout.visualizeDropLocation(dragObject.originalView, mOutlineProvider,
-                mTargetCell[0], mTargetCell[1], resultSpan[0], resultSpan[1], resize, dragObject);
+                        boolean resize = resultSpan[0] != spanX || resultSpan[1] != spanY;
+                        layout.visualizeDropLocation(dragObject.originalView, mOutlineProvider,
+                                mTargetCell[0], mTargetCell[1], resultSpan[0], resultSpan[1],
+                                resize, dragObject);
+                    });
         }
     }
 
@@ -2868,6 +2905,39 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
         return null;
     }
 
+    /**
+     * Pins the icons of the current page and hotseat in the icon cache, so that they are not
+     * evicted while visible.
+     */
+    public void updatePinnedIcons() {
+        HashSet<ComponentKey> keys = new HashSet<>();
+        CellLayout currentPage = (CellLayout) getPageAt(getCurrentPage());
+        for (CellLayout layout : new CellLayout[] { getHotseat(), currentPage }) {
+            if (layout == null) {
+                continue;
+            }
+            ShortcutAndWidgetContainer container = layout.getShortcutsAndWidgets();
+            for (int i = container.getChildCount() - 1; i >= 0; i--) {
+                Object tag = container.getChildAt(i).getTag();
+                if (tag instanceof FolderInfo) {
+                    for (WorkspaceItemInfo info : ((FolderInfo) tag).contents) {
+                        addIconKey(info, keys);
+                    }
+                } else if (tag instanceof WorkspaceItemInfo) {
+                    addIconKey((WorkspaceItemInfo) tag, keys);
+                }
+            }
+        }
+        LauncherAppState.getInstance(mLauncher).getIconCache().setPinnedIcons(keys);
+    }
+
+    private static void addIconKey(WorkspaceItemInfo info, HashSet<ComponentKey> keys) {
+        ComponentName cn = info.getTargetComponent();
+        if (cn != null) {
+            keys.add(new ComponentKey(cn, info.user));
+        }
+    }
+
     /**
      * Returns a list of all the CellLayouts on the Homescreen.
      */
@@ -26,6 +26,8 @@ import androidx.annotation.Nullable;
 
 import com.android.launcher3.anim.PropertySetter;
 
+import java.io.PrintWriter;
+
 /**
  * Interface for controlling the Apps search UI.
  */
@@ -74,4 +76,9 @@ public interface SearchUiManager {
      */
     @Nullable
     EditText setTextSearchEnabled(boolean isEnabled);
+
+    /**
+     * Dumps the state of the search UI, for debugging.
+     */
+    default void dump(String prefix, PrintWriter writer) { }
 }
@@ -32,6 +32,7 @@ import com.android.launcher3.model.AppLaunchTracker;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.PackageManagerHelper;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 
 /**
@@ -138,11 +139,19 @@ public class AllAppsSearchBarController
      * Resets the search bar state.
      */
     public void reset() {
+        // Searches run in the background, make sure no result is delivered after the reset
+        mSearchAlgorithm.cancel(true);
         mCb.clearSearchResult();
         mInput.reset();
         mQuery = null;
     }
 
+    public void dump(String prefix, PrintWriter writer) {
+        if (mSearchAlgorithm != null) {
+            mSearchAlgorithm.dump(prefix, writer);
+        }
+    }
+
     /**
      * Focuses the search field to handle key events.
      */
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.allapps.search;
+
+import com.android.launcher3.allapps.search.DefaultAppSearchAlgorithm.StringMatcher;
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.util.ComponentKey;
+
+import java.text.CollationKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Index of the app titles for {@link DefaultAppSearchAlgorithm}.
+ *
+ * Each word break point of each title is stored with the collation key of the title from that
+ * point, and all the entries are sorted by key. The titles which have a word starting with the
+ * query then form a contiguous range of entries, which is found with a binary search. Each entry
+ * in the range is verified with {@link StringMatcher#matches}, so a query costs about the number
+ * of matching words rather than the number of characters in all the titles. The range is only
+ * complete if {@link StringMatcher#hasPrefixClosedKeys}, otherwise all the titles are checked.
+ *
+ * The index is not thread safe, and should only be used on the thread which built it.
+ */
+public class AppSearchIndex {
+
+    private static final char MAX_UNICODE = '\uFFFF';
+
+    // Number of entries between two checks for cancellation
+    private static final int CANCEL_CHECK_INTERVAL = 64;
+
+    private final AppInfo[] mApps;
+    private final String[] mTitles;
+    private final int[][] mBreakPoints;
+    private final StringMatcher mMatcher;
+    private final boolean mHasPrefixClosedKeys;
+
+    // Sorted by key
+    private final Entry[] mEntries;
+
+    private AppSearchIndex(AppInfo[] apps, StringMatcher matcher) {
+        mApps = apps;
+        mMatcher = matcher;
+        mHasPrefixClosedKeys = matcher.hasPrefixClosedKeys();
+        mTitles = new String[apps.length];
+        mBreakPoints = new int[apps.length][];
+
+        ArrayList<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < apps.length; i++) {
+            String title = apps[i].title == null ? "" : apps[i].title.toString();
+            mTitles[i] = title;
+            mBreakPoints[i] = DefaultAppSearchAlgorithm.getBreakPoints(title);
+            for (int start : mBreakPoints[i]) {
+                entries.add(new Entry(i, start, matcher.getCollationKey(title.substring(start))));
+            }
+        }
+        mEntries = entries.toArray(new Entry[entries.size()]);
+        Arrays.sort(mEntries, (a, b) -> a.key.compareTo(b.key));
+    }
+
+    /**
+     * Builds the index for the provided apps, on the calling thread
+     */
+    public static AppSearchIndex build(List<AppInfo> apps) {
+        return new AppSearchIndex(apps.toArray(new AppInfo[apps.size()]),
+                StringMatcher.getInstance());
+    }
+
+    /**
+     * Returns true if the index was built for the same apps, in the same order
+     */
+    public boolean isIndexOf(List<AppInfo> apps) {
+        if (apps.size() != mApps.length) {
+            return false;
+        }
+        for (int i = 0; i < mApps.length; i++) {
+            if (apps.get(i) != mApps[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the apps which have a word starting with {@param query}, in the order of the apps
+     * the index was built with.
+     */
+    public ArrayList<ComponentKey> search(String query) {
+        return getComponentKeys(findMatches(query.toLowerCase(), () -> false));
+    }
+
+    /**
+     * Returns the apps of {@param matches}, in the order of the apps the index was built with.
+     */
+    public ArrayList<ComponentKey> getComponentKeys(BitSet matches) {
+        ArrayList<ComponentKey> result = new ArrayList<>(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            result.add(mApps[i].toComponentKey());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the indices of the apps which have a word starting with the lower case
+     * {@param query}, or null if {@param isCancelled} returned true during the search.
+     */
+    public BitSet findMatches(String query, BooleanSupplier isCancelled) {
+        if (!mHasPrefixClosedKeys) {
+            BitSet allApps = new BitSet(mApps.length);
+            allApps.set(0, mApps.length);
+            return filterMatches(query, allApps, isCancelled);
+        }
+        BitSet matches = new BitSet(mApps.length);
+        if (query.length() <= 0) {
+            return matches;
+        }
+
+        // A title matches if the query is a prefix of one of its words, ie. if the word collates
+        // between the query and the query followed by the largest character. Past that range,
+        // keep going while the words still match, in case the collator doesn't sort the largest
+        // character after all the others.
+        int start = lowerBound(mMatcher.getCollationKey(query), false);
+        int end = lowerBound(mMatcher.getCollationKey(query + MAX_UNICODE), true);
+        for (int i = start; i < mEntries.length; i++) {
+            if ((i - start) % CANCEL_CHECK_INTERVAL == 0 && isCancelled.getAsBoolean()) {
+                return null;
+            }
+            Entry entry = mEntries[i];
+            boolean inRange = i < end;
+            if (inRange && matches.get(entry.appIndex)) {
+                continue;
+            }
+            if (entryMatches(entry, query)) {
+                matches.set(entry.appIndex);
+            } else if (!inRange) {
+                break;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Same as {@link #findMatches}, but only considers the apps in {@param candidates}. This is
+     * used to refine the matches of a query with the matches of a prefix of the query.
+     */
+    public BitSet filterMatches(String query, BitSet candidates, BooleanSupplier isCancelled) {
+        BitSet matches = new BitSet(mApps.length);
+        if (query.length() <= 0) {
+            return matches;
+        }
+        int checked = 0;
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (checked++ % CANCEL_CHECK_INTERVAL == 0 && isCancelled.getAsBoolean()) {
+                return null;
+            }
+            for (int start : mBreakPoints[i]) {
+                if (wordMatches(i, start, query)) {
+                    matches.set(i);
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private boolean entryMatches(Entry entry, String query) {
+        return wordMatches(entry.appIndex, entry.start, query);
+    }
+
+    private boolean wordMatches(int appIndex, int start, String query) {
+        String title = mTitles[appIndex];
+        int end = start + query.length();
+        return end <= title.length() && mMatcher.matches(query, title.substring(start, end));
+    }
+
+    /**
+     * Returns the index of the first entry whose key is greater than or equal to {@param key}, or
+     * strictly greater if {@param strict} is true.
+     */
+    private int lowerBound(CollationKey key, boolean strict) {
+        int low = 0;
+        int high = mEntries.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = mEntries[mid].key.compareTo(key);
+            if (cmp < 0 || (strict && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static class Entry {
+        final int appIndex;
+        // Index in the title of the first character of the word
+        final int start;
+        final CollationKey key;
+
+        Entry(int appIndex, int start, CollationKey key) {
+            this.appIndex = appIndex;
+            this.start = start;
+            this.key = key;
+        }
+    }
+}
@@ -46,6 +46,7 @@ import com.android.launcher3.allapps.SearchUiManager;
 import com.android.launcher3.anim.PropertySetter;
 import com.android.launcher3.util.ComponentKey;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 
 /**
@@ -148,6 +149,11 @@ public class AppsSearchContainerLayout extends ExtendedEditText
         mSearchBarController.reset();
     }
 
+    @Override
+    public void dump(String prefix, PrintWriter writer) {
+        mSearchBarController.dump(prefix, writer);
+    }
+
     @Override
     public void preDispatchKeyEvent(KeyEvent event) {
         // Determine if the key event was actual text, if so, focus the search bar and then dispatch
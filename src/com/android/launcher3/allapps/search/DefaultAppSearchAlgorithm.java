@@ -15,31 +15,81 @@
  */
 package com.android.launcher3.allapps.search;
 
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+
+import android.icu.text.RuleBasedCollator;
+import android.icu.text.UnicodeSet;
 import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.WorkerThread;
 
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.IntArray;
+import com.android.launcher3.util.LatencyHistogram;
 
+import java.io.PrintWriter;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 /**
  * The default search implementation.
+ *
+ * Searches run on a background thread. A search requested shortly after the previous one is
+ * delayed until the user pauses typing, and any search or result for an older query is dropped.
+ * When a query extends the previous one, only the apps which matched the previous query are
+ * searched again.
  */
 public class DefaultAppSearchAlgorithm implements SearchAlgorithm {
 
+    // Requests closer than this to the previous request are delayed by the same amount, so that
+    // only the last of a burst of keystrokes is searched.
+    private static final long SEARCH_DEBOUNCE_MS = 40;
+
+    private static final int LATENCY_SAMPLES = 100;
+
     private final List<AppInfo> mApps;
     protected final Handler mResultHandler;
+    private final Handler mWorkerHandler;
+
+    // Incremented on the UI thread for each request and interrupting cancel. A search, or its
+    // result, is dropped once a newer generation exists.
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private long mLastRequestTime;
+
+    // Only accessed on the worker thread. mLastQuery and mLastMatches are the most recent search
+    // on mIndex, used to refine the next query when it extends mLastQuery.
+    private AppSearchIndex mIndex;
+    private String mLastQuery;
+    private BitSet mLastMatches;
+
+    // Time from the request to the delivery of the result
+    private final LatencyHistogram mLatency =
+            new LatencyHistogram("searchLatency", LATENCY_SAMPLES);
+    // Time spent searching on the worker thread
+    private final LatencyHistogram mSearchTime =
+            new LatencyHistogram("searchTime", LATENCY_SAMPLES);
 
     public DefaultAppSearchAlgorithm(List<AppInfo> apps) {
         mApps = apps;
         mResultHandler = new Handler();
+        mWorkerHandler = UI_HELPER_EXECUTOR.getHandler();
     }
 
     @Override
     public void cancel(boolean interruptActiveRequests) {
+        // Drop the requests which have not started yet
+        mWorkerHandler.removeCallbacksAndMessages(this);
         if (interruptActiveRequests) {
+            // Abort the running search, and drop any result which was not delivered yet
+            mGeneration.incrementAndGet();
             mResultHandler.removeCallbacksAndMessages(null);
         }
     }
@@ -47,30 +97,67 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm {
     @Override
     public void doSearch(final String query,
             final AllAppsSearchBarController.Callbacks callback) {
-        final ArrayList<ComponentKey> result = getTitleMatchResult(query);
-        mResultHandler.post(new Runnable() {
+        final int generation = mGeneration.incrementAndGet();
+        final long requestTime = System.nanoTime();
+        // The list is updated on the UI thread, search a snapshot of it.
+        final ArrayList<AppInfo> apps = new ArrayList<>(mApps);
 
-            @Override
-            public void run() {
-                callback.onSearchResult(query, result);
+        long now = SystemClock.uptimeMillis();
+        long delay = now - mLastRequestTime < SEARCH_DEBOUNCE_MS ? SEARCH_DEBOUNCE_MS : 0;
+        mLastRequestTime = now;
+        mWorkerHandler.removeCallbacksAndMessages(this);
+        mWorkerHandler.postAtTime(() -> {
+            final ArrayList<ComponentKey> result = getTitleMatchResult(query, apps,
+                    () -> generation != mGeneration.get());
+            if (result == null) {
+                return;
             }
-        });
+            mResultHandler.post(() -> {
+                if (generation == mGeneration.get()) {
+                    mLatency.add(System.nanoTime() - requestTime);
+                    callback.onSearchResult(query, result);
+                }
+            });
+        }, this, now + delay);
     }
 
-    private ArrayList<ComponentKey> getTitleMatchResult(String query) {
-        // Do an intersection of the words in the query and each title, and filter out all the
-        // apps that don't match all of the words in the query.
+    /**
+     * Returns the apps matching {@param query}, or null if the search was cancelled
+     */
+    @WorkerThread
+    private ArrayList<ComponentKey> getTitleMatchResult(String query, List<AppInfo> apps,
+            BooleanSupplier isCancelled) {
+        if (isCancelled.getAsBoolean()) {
+            return null;
+        }
+        long startTime = System.nanoTime();
+        if (mIndex == null || !mIndex.isIndexOf(apps)) {
+            mIndex = AppSearchIndex.build(apps);
+            mLastQuery = null;
+            mLastMatches = null;
+        }
+
         final String queryTextLower = query.toLowerCase();
-        final ArrayList<ComponentKey> result = new ArrayList<>();
-        StringMatcher matcher = StringMatcher.getInstance();
-        for (AppInfo info : mApps) {
-            if (matches(info, queryTextLower, matcher)) {
-                result.add(info.toComponentKey());
-            }
+        BitSet matches = mLastQuery != null && queryTextLower.startsWith(mLastQuery)
+                ? mIndex.filterMatches(queryTextLower, mLastMatches, isCancelled)
+                : mIndex.findMatches(queryTextLower, isCancelled);
+        if (matches == null) {
+            return null;
         }
+        mLastQuery = queryTextLower;
+        mLastMatches = matches;
+        ArrayList<ComponentKey> result = mIndex.getComponentKeys(matches);
+        mSearchTime.add(System.nanoTime() - startTime);
         return result;
     }
 
+    @Override
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "DefaultAppSearchAlgorithm:");
+        mLatency.dump(prefix + "  ", writer);
+        mSearchTime.dump(prefix + "  ", writer);
+    }
+
     public static boolean matches(AppInfo info, String query, StringMatcher matcher) {
         int queryLength = query.length();
 
@@ -99,6 +186,32 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm {
         return false;
     }
 
+    /**
+     * Returns the indices of the characters of {@param title} which start a word, as used by
+     * {@link #matches}.
+     */
+    static int[] getBreakPoints(String title) {
+        IntArray breakPoints = new IntArray();
+        int titleLength = title.length();
+        if (titleLength <= 0) {
+            return breakPoints.toArray();
+        }
+
+        int lastType;
+        int thisType = Character.UNASSIGNED;
+        int nextType = Character.getType(title.codePointAt(0));
+        for (int i = 0; i < titleLength; i++) {
+            lastType = thisType;
+            thisType = nextType;
+            nextType = i < (titleLength - 1) ?
+                    Character.getType(title.codePointAt(i + 1)) : Character.UNASSIGNED;
+            if (isBreak(thisType, lastType, nextType)) {
+                breakPoints.add(i);
+            }
+        }
+        return breakPoints.toArray();
+    }
+
     /**
      * Returns true if the current point should be a break point. Following cases
      * are considered as break points:
@@ -177,6 +290,34 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm {
             }
         }
 
+        /**
+         * Returns a key which sorts {@param target} in the same order as {@link #matches}
+         * compares it.
+         */
+        public CollationKey getCollationKey(String target) {
+            return mCollator.getCollationKey(target);
+        }
+
+        /**
+         * Returns true if the keys of the strings starting with a prefix always sort between the
+         * keys of the prefix and of the prefix followed by the largest character. This is not the
+         * case when the locale tailors contractions or prefix rules, eg. "ch" sorts after "h" in
+         * Czech, so "chrome" is not between "c" and "c\uFFFF".
+         */
+        public boolean hasPrefixClosedKeys() {
+            android.icu.text.Collator collator =
+                    android.icu.text.Collator.getInstance(Locale.getDefault());
+            if (!(collator instanceof RuleBasedCollator)) {
+                return false;
+            }
+            RuleBasedCollator ruleBasedCollator = (RuleBasedCollator) collator;
+            UnicodeSet contractions = new UnicodeSet();
+            ruleBasedCollator.getContractionsAndExpansions(
+                    contractions, null /* expansions */, true /* addPrefixes */);
+            contractions.retainAll(ruleBasedCollator.getTailoredSet());
+            return contractions.isEmpty();
+        }
+
         public static StringMatcher getInstance() {
             return new StringMatcher();
         }
@@ -15,6 +15,8 @@
  */
 package com.android.launcher3.allapps.search;
 
+import java.io.PrintWriter;
+
 /**
  * An interface for handling search.
  */
@@ -29,4 +31,9 @@ public interface SearchAlgorithm {
      * Cancels any active request.
      */
     void cancel(boolean interruptActiveRequests);
+
+    /**
+     * Dumps the state of the search, for debugging.
+     */
+    default void dump(String prefix, PrintWriter writer) { }
 }
@@ -132,6 +132,10 @@ public final class FeatureFlags {
     public static final BooleanFlag ENABLE_DEEP_SHORTCUT_ICON_CACHE = getDebugFlag(
             "ENABLE_DEEP_SHORTCUT_ICON_CACHE", true, "R/W deep shortcut in IconCache");
 
+    public static final BooleanFlag ENABLE_WORKSPACE_SNAPSHOT = getDebugFlag(
+            "ENABLE_WORKSPACE_SNAPSHOT", true,
+            "Bind the first workspace page from a saved snapshot before loading the database");
+
     public static final BooleanFlag MULTI_DB_GRID_MIRATION_ALGO = getDebugFlag(
             "MULTI_DB_GRID_MIRATION_ALGO", true, "Use the multi-db grid migration algorithm");
 
@@ -30,22 +30,23 @@ import android.content.pm.PackageInstaller;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ShortcutInfo;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
 import android.os.Process;
 import android.os.UserHandle;
+import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.android.launcher3.InvariantDeviceProfile;
 import com.android.launcher3.LauncherFiles;
+import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.icons.ComponentWithLabel.ComponentCachingLogic;
 import com.android.launcher3.icons.cache.BaseIconCache;
 import com.android.launcher3.icons.cache.CachingLogic;
-import com.android.launcher3.icons.cache.HandlerRunnable;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.ItemInfoWithIcon;
 import com.android.launcher3.model.data.PackageItemInfo;
@@ -57,6 +58,9 @@ import com.android.launcher3.util.InstantAppResolver;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Preconditions;
 
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -79,6 +83,12 @@ public class IconCache extends BaseIconCache {
     private final InstantAppResolver mInstantAppResolver;
     private final IconProvider mIconProvider;
 
+    // Replaces the unbounded in-memory cache of BaseIconCache
+    private final IconMemoryCache mMemoryCache;
+    private final IconRequestQueue mIconRequestQueue;
+    // Icons of the packages being installed. They are not in the DB, so they are never evicted.
+    private final HashMap<ComponentKey, CacheEntry> mSessionEntries = new HashMap<>();
+
     private int mPendingIconRequestCount = 0;
 
     public IconCache(Context context, InvariantDeviceProfile idp) {
@@ -87,7 +97,10 @@ public class IconCache extends BaseIconCache {
 
     public IconCache(Context context, InvariantDeviceProfile idp, String dbFileName) {
         super(context, dbFileName, MODEL_EXECUTOR.getLooper(),
-                idp.fillResIconDpi, idp.iconBitmapSize, true /* inMemoryCache */);
+                idp.fillResIconDpi, idp.iconBitmapSize, false /* inMemoryCache */);
+        mIconRequestQueue = new IconRequestQueue(mWorkerHandler);
+        mMemoryCache = new IconMemoryCache(
+                context.getResources().getInteger(R.integer.config_iconMemoryCacheSizeKb) * 1024);
         mComponentWithLabelCachingLogic = new ComponentCachingLogic(context, false);
         mLauncherActivityInfoCachingLogic = LauncherActivityCachingLogic.newInstance(context);
         mShortcutCachingLogic = new ShortcutCachingLogic();
@@ -112,6 +125,102 @@ public class IconCache extends BaseIconCache {
         return LauncherIcons.obtain(mContext);
     }
 
+    @Override
+    protected <T> CacheEntry cacheLocked(
+            @NonNull ComponentName componentName, @NonNull UserHandle user,
+            @NonNull Supplier<T> infoProvider, @NonNull CachingLogic<T> cachingLogic,
+            boolean usePackageIcon, boolean useLowResIcon) {
+        if (!cachingLogic.addToMemCache()) {
+            return super.cacheLocked(componentName, user, infoProvider, cachingLogic,
+                    usePackageIcon, useLowResIcon);
+        }
+        ComponentKey cacheKey = new ComponentKey(componentName, user);
+        CacheEntry entry = mMemoryCache.get(cacheKey, useLowResIcon);
+        if (entry == null) {
+            entry = super.cacheLocked(componentName, user, infoProvider, cachingLogic,
+                    usePackageIcon, useLowResIcon);
+            mMemoryCache.put(cacheKey, entry);
+        }
+        return entry;
+    }
+
+    @Override
+    protected CacheEntry getEntryForPackageLocked(String packageName, UserHandle user,
+            boolean useLowResIcon) {
+        ComponentKey cacheKey = getPackageKey(packageName, user);
+        CacheEntry entry = mSessionEntries.get(cacheKey);
+        if (entry == null) {
+            entry = mMemoryCache.get(cacheKey, useLowResIcon);
+        }
+        if (entry == null) {
+            entry = super.getEntryForPackageLocked(packageName, user, useLowResIcon);
+            mMemoryCache.put(cacheKey, entry);
+        }
+        return entry;
+    }
+
+    @Override
+    public synchronized void remove(ComponentName componentName, UserHandle user) {
+        super.remove(componentName, user);
+        mMemoryCache.remove(new ComponentKey(componentName, user));
+    }
+
+    @Override
+    public synchronized void removeIconsForPkg(String packageName, UserHandle user) {
+        super.removeIconsForPkg(packageName, user);
+        mMemoryCache.removePackage(packageName, user);
+        mSessionEntries.remove(getPackageKey(packageName, user));
+    }
+
+    @Override
+    public synchronized <T> void addIconToDBAndMemCache(T object, CachingLogic<T> cachingLogic,
+            PackageInfo info, long userSerial, boolean replaceExisting) {
+        super.addIconToDBAndMemCache(object, cachingLogic, info, userSerial, replaceExisting);
+        // The entry is reloaded from the DB on the next lookup
+        mMemoryCache.remove(new ComponentKey(
+                cachingLogic.getComponent(object), cachingLogic.getUser(object)));
+    }
+
+    @Override
+    public synchronized void updateIconParams(int iconDpi, int iconPixelSize) {
+        super.updateIconParams(iconDpi, iconPixelSize);
+        // The DB is reset on the worker thread, so clear the memory cache after it
+        mWorkerHandler.post(() -> {
+            synchronized (IconCache.this) {
+                mMemoryCache.clear();
+            }
+        });
+    }
+
+    /**
+     * Sets the components whose icons are currently visible, ie. the items of the current
+     * workspace page and hotseat, so that their icons are kept in memory.
+     */
+    public void setPinnedIcons(Set<ComponentKey> keys) {
+        mWorkerHandler.post(() -> {
+            synchronized (IconCache.this) {
+                mMemoryCache.setPinnedKeys(keys);
+            }
+        });
+    }
+
+    /**
+     * Shrinks the in-memory cache, see {@link android.content.ComponentCallbacks2}
+     */
+    public void onTrimMemory(int level) {
+        mWorkerHandler.post(() -> {
+            synchronized (IconCache.this) {
+                mMemoryCache.onTrimMemory(level);
+            }
+        });
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        mMemoryCache.dump(prefix, writer);
+        writer.println(prefix + "  session entries: " + mSessionEntries.size());
+        mIconRequestQueue.dump(prefix, writer);
+    }
+
     /**
      * Updates the entries related to the given package in memory and persistent DB.
      */
@@ -142,21 +251,27 @@ public class IconCache extends BaseIconCache {
         }
         mPendingIconRequestCount ++;
 
-        IconLoadRequest request = new IconLoadRequest(mWorkerHandler, this::onIconRequestEnd) {
+        IconLoadRequest request = new IconLoadRequest(IconRequestQueue.getPriority(caller),
+                this::onIconRequestEnd) {
             @Override
             public void run() {
+                if (isCanceled()) {
+                    return;
+                }
                 if (info instanceof AppInfo || info instanceof WorkspaceItemInfo) {
                     getTitleAndIcon(info, false);
                 } else if (info instanceof PackageItemInfo) {
                     getTitleAndIconForApp((PackageItemInfo) info, false);
                 }
                 MAIN_EXECUTOR.execute(() -> {
-                    caller.reapplyItemInfo(info);
-                    onEnd();
+                    if (!isCanceled()) {
+                        caller.reapplyItemInfo(info);
+                        onEnd();
+                    }
                 });
             }
         };
-        Utilities.postAsyncCallback(mWorkerHandler, request);
+        mIconRequestQueue.add(request);
         return request;
     }
 
@@ -325,8 +440,27 @@ public class IconCache extends BaseIconCache {
         return mIconProvider.getIcon(info, mIconDpi);
     }
 
-    public void updateSessionCache(PackageUserKey key, PackageInstaller.SessionInfo info) {
-        cachePackageInstallInfo(key.mPackageName, key.mUser, info.getAppIcon(), info.getAppLabel());
+    public synchronized void updateSessionCache(PackageUserKey key,
+            PackageInstaller.SessionInfo info) {
+        mMemoryCache.removePackage(key.mPackageName, key.mUser);
+        ComponentKey cacheKey = getPackageKey(key.mPackageName, key.mUser);
+        CacheEntry entry = mSessionEntries.get(cacheKey);
+        if (entry == null) {
+            entry = new CacheEntry();
+        }
+        CharSequence title = info.getAppLabel();
+        if (!TextUtils.isEmpty(title)) {
+            entry.title = title;
+        }
+        Bitmap icon = info.getAppIcon();
+        if (icon != null) {
+            try (LauncherIcons li = LauncherIcons.obtain(mContext)) {
+                entry.bitmap = li.createIconBitmap(icon);
+            }
+        }
+        if (!TextUtils.isEmpty(title) && entry.bitmap != null && entry.bitmap.icon != null) {
+            mSessionEntries.put(cacheKey, entry);
+        }
     }
 
     @Override
@@ -344,9 +478,9 @@ public class IconCache extends BaseIconCache {
         return super.getEntryFromDB(cacheKey, entry, lowRes);
     }
 
-    public static abstract class IconLoadRequest extends HandlerRunnable {
-        IconLoadRequest(Handler handler, Runnable endRunnable) {
-            super(handler, endRunnable);
+    public static abstract class IconLoadRequest extends IconRequestQueue.Request {
+        IconLoadRequest(int priority, Runnable endRunnable) {
+            super(priority, endRunnable);
         }
     }
 
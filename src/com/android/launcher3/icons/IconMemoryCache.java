@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_MODERATE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE;
+
+import android.os.UserHandle;
+import android.util.LruCache;
+
+import com.android.launcher3.icons.cache.BaseIconCache.CacheEntry;
+import com.android.launcher3.util.ComponentKey;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory tiers of {@link IconCache}, in front of its DB.
+ *
+ * The icons of the items which are always visible, ie. the current workspace page and the
+ * hotseat, are kept in a pinned tier which is only dropped under critical memory pressure. All the
+ * other icons are kept in an LRU tier, bounded by the byte size of their bitmaps.
+ *
+ * This class is not thread safe, and should only be used with the {@link IconCache} lock held.
+ */
+public class IconMemoryCache {
+
+    // Approximate size of an entry without its bitmap, so that entries without an icon are
+    // also bounded.
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final HashSet<ComponentKey> mPinnedKeys = new HashSet<>();
+    private final HashMap<ComponentKey, CacheEntry> mPinned = new HashMap<>();
+    private final EntryLruCache mLru;
+
+    private final TierStats mPinnedStats = new TierStats("pinned");
+    private final TierStats mLruStats = new TierStats("lru");
+
+    public IconMemoryCache(int maxBytes) {
+        mLru = new EntryLruCache(maxBytes);
+    }
+
+    /**
+     * Returns the entry for {@param key}, or null if it is not cached or if it is only cached in
+     * low resolution while {@param useLowResIcon} is false.
+     */
+    public CacheEntry get(ComponentKey key, boolean useLowResIcon) {
+        boolean pinned = mPinnedKeys.contains(key);
+        CacheEntry entry = pinned ? mPinned.get(key) : mLru.get(key);
+        if (entry != null && (useLowResIcon || !isLowRes(entry))) {
+            (pinned ? mPinnedStats : mLruStats).hits++;
+            return entry;
+        }
+        (pinned ? mPinnedStats : mLruStats).misses++;
+        return null;
+    }
+
+    public void put(ComponentKey key, CacheEntry entry) {
+        if (mPinnedKeys.contains(key)) {
+            mPinned.put(key, entry);
+        } else {
+            mLru.put(key, entry);
+        }
+    }
+
+    public void remove(ComponentKey key) {
+        mPinned.remove(key);
+        mLru.remove(key);
+    }
+
+    /**
+     * Removes all the entries of the provided package
+     */
+    public void removePackage(String packageName, UserHandle user) {
+        mPinned.keySet().removeIf(key -> isOfPackage(key, packageName, user));
+        for (ComponentKey key : mLru.snapshot().keySet()) {
+            if (isOfPackage(key, packageName, user)) {
+                mLru.remove(key);
+            }
+        }
+    }
+
+    public void clear() {
+        mPinned.clear();
+        mLru.evictAll();
+    }
+
+    /**
+     * Sets the keys of the icons which are currently visible. Their entries are moved to the
+     * pinned tier, and the entries of the keys which are no longer pinned are moved back to the
+     * LRU tier.
+     */
+    public void setPinnedKeys(Set<ComponentKey> keys) {
+        Iterator<Map.Entry<ComponentKey, CacheEntry>> it = mPinned.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<ComponentKey, CacheEntry> e = it.next();
+            if (!keys.contains(e.getKey())) {
+                it.remove();
+                mLru.put(e.getKey(), e.getValue());
+            }
+        }
+        mPinnedKeys.clear();
+        mPinnedKeys.addAll(keys);
+        for (ComponentKey key : keys) {
+            CacheEntry entry = mLru.remove(key);
+            if (entry != null) {
+                mPinned.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Shrinks the tiers according to the provided {@link android.content.ComponentCallbacks2}
+     * level. {@code TRIM_MEMORY_UI_HIDDEN} is ignored, as it is sent every time Launcher stops.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            mPinnedStats.evictions += mPinned.size();
+            mPinned.clear();
+            mLru.evictAll();
+        } else if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_LOW) {
+            mLru.evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_MODERATE) {
+            mLru.trimToSize(mLru.maxSize() / 2);
+        }
+    }
+
+    public int getPinnedCount() {
+        return mPinned.size();
+    }
+
+    public int getLruSizeBytes() {
+        return mLru.size();
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Icon memory cache:");
+        mPinnedStats.dump(prefix + "  ", writer, "entries=" + mPinned.size()
+                + " pinnedKeys=" + mPinnedKeys.size());
+        mLruStats.dump(prefix + "  ", writer, "entries=" + mLru.snapshot().size()
+                + " bytes=" + mLru.size() + "/" + mLru.maxSize());
+    }
+
+    private static boolean isLowRes(CacheEntry entry) {
+        return entry.bitmap != null && entry.bitmap.isLowRes();
+    }
+
+    private static boolean isOfPackage(ComponentKey key, String packageName, UserHandle user) {
+        return key.componentName.getPackageName().equals(packageName) && key.user.equals(user);
+    }
+
+    private static int getSizeBytes(CacheEntry entry) {
+        int size = ENTRY_OVERHEAD_BYTES;
+        if (entry.bitmap != null && entry.bitmap.icon != null) {
+            size += entry.bitmap.icon.getAllocationByteCount();
+        }
+        return size;
+    }
+
+    private class EntryLruCache extends LruCache<ComponentKey, CacheEntry> {
+
+        EntryLruCache(int maxBytes) {
+            super(maxBytes);
+        }
+
+        @Override
+        protected int sizeOf(ComponentKey key, CacheEntry entry) {
+            return getSizeBytes(entry);
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, ComponentKey key, CacheEntry oldValue,
+                CacheEntry newValue) {
+            if (evicted) {
+                mLruStats.evictions++;
+            }
+        }
+    }
+
+    private static class TierStats {
+        final String name;
+        long hits;
+        long misses;
+        long evictions;
+
+        TierStats(String name) {
+            this.name = name;
+        }
+
+        void dump(String prefix, PrintWriter writer, String details) {
+            long total = hits + misses;
+            writer.println(prefix + name + ": " + details
+                    + " hits=" + hits + " misses=" + misses + " evictions=" + evictions
+                    + " hitRate=" + (total == 0 ? "n/a" : (100 * hits / total) + "%"));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import android.os.Handler;
+import android.view.View;
+
+import com.android.launcher3.Utilities;
+import com.android.launcher3.util.LatencyHistogram;
+
+import java.io.PrintWriter;
+import java.util.PriorityQueue;
+
+/**
+ * Queue of the requests to load icons in the background.
+ *
+ * Requests for visible icons run before the others, and the most recent requests run first:
+ * during a fast scroll, the latest requests are the ones for the icons now on screen. Cancelled
+ * requests are removed from the queue without running.
+ *
+ * Requests are added and cancelled on the UI thread, and run on the worker thread.
+ */
+public class IconRequestQueue {
+
+    public static final int PRIORITY_OFFSCREEN = 0;
+    public static final int PRIORITY_VISIBLE = 1;
+
+    private static final int HISTOGRAM_CAPACITY = 256;
+
+    private final Handler mWorkerHandler;
+    private final Runnable mRunNext = this::runNext;
+
+    // Guarded by this
+    private final PriorityQueue<Request> mQueue = new PriorityQueue<>((a, b) ->
+            a.mPriority != b.mPriority
+                    ? Integer.compare(b.mPriority, a.mPriority)
+                    : Long.compare(b.mSequence, a.mSequence));
+    private long mNextSequence;
+    private int mMaxDepth;
+    private long mCompletedCount;
+    private long mCancelledCount;
+
+    private final LatencyHistogram mTimeToIcon = new LatencyHistogram(
+            "time to icon", HISTOGRAM_CAPACITY);
+
+    public IconRequestQueue(Handler workerHandler) {
+        mWorkerHandler = workerHandler;
+    }
+
+    public void add(Request request) {
+        synchronized (this) {
+            request.mQueue = this;
+            request.mSequence = mNextSequence++;
+            request.mEnqueueTimeNanos = System.nanoTime();
+            mQueue.add(request);
+            mMaxDepth = Math.max(mMaxDepth, mQueue.size());
+        }
+        // Each message runs the first request of the queue at that time. There are always at
+        // least as many messages as requests, so that the queue is drained.
+        Utilities.postAsyncCallback(mWorkerHandler, mRunNext);
+    }
+
+    /**
+     * Returns the priority of the requests of {@param caller}. Callers which are not views, eg.
+     * prediction caches, and views which are not attached yet are considered visible: views are
+     * usually bound right before being attached, eg. by a RecyclerView.
+     */
+    public static int getPriority(Object caller) {
+        if (caller instanceof View) {
+            View view = (View) caller;
+            if (view.isAttachedToWindow() && !view.isShown()) {
+                return PRIORITY_OFFSCREEN;
+            }
+        }
+        return PRIORITY_VISIBLE;
+    }
+
+    public synchronized int getDepth() {
+        return mQueue.size();
+    }
+
+    private synchronized boolean remove(Request request) {
+        if (mQueue.remove(request)) {
+            mCancelledCount++;
+            return true;
+        }
+        return false;
+    }
+
+    private void runNext() {
+        Request request;
+        synchronized (this) {
+            request = mQueue.poll();
+        }
+        if (request != null) {
+            request.run();
+        }
+    }
+
+    private void onCompleted(Request request) {
+        mTimeToIcon.add(System.nanoTime() - request.mEnqueueTimeNanos);
+        synchronized (this) {
+            mCompletedCount++;
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        synchronized (this) {
+            writer.println(prefix + "Icon request queue: depth=" + mQueue.size()
+                    + " maxDepth=" + mMaxDepth
+                    + " completed=" + mCompletedCount
+                    + " cancelled=" + mCancelledCount);
+        }
+        mTimeToIcon.dump(prefix + "  ", writer);
+    }
+
+    /**
+     * A request in the queue. {@link #run} is called on the worker thread, and should call
+     * {@link #onEnd} on the UI thread once the icon is applied.
+     */
+    public static abstract class Request implements Runnable {
+
+        private final int mPriority;
+        private final Runnable mEndRunnable;
+
+        private IconRequestQueue mQueue;
+        private long mSequence;
+        private long mEnqueueTimeNanos;
+
+        private boolean mEnded = false;
+        private volatile boolean mCanceled = false;
+
+        public Request(int priority, Runnable endRunnable) {
+            mPriority = priority;
+            mEndRunnable = endRunnable;
+        }
+
+        /**
+         * Cancels the request. If it hasn't run yet, it is removed from the queue. Should be
+         * called on the UI thread.
+         */
+        public void cancel() {
+            mCanceled = true;
+            if (mQueue != null) {
+                mQueue.remove(this);
+            }
+            onEnd();
+        }
+
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+
+        /**
+         * Should be called on the UI thread when the request completes
+         */
+        public void onEnd() {
+            if (!mEnded) {
+                mEnded = true;
+                if (!mCanceled && mQueue != null) {
+                    mQueue.onCompleted(this);
+                }
+                if (mEndRunnable != null) {
+                    mEndRunnable.run();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.icons.cache.CachingLogic;
+import com.android.launcher3.util.ComponentKey;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * {@link CachingLogic} which renders icons ahead of time on a pool of threads, for the update
+ * passes which replace many icons at once, eg. after an OTA or an icon shape change.
+ *
+ * The icon cache update handler still asks for the icons one at a time on the model thread, in an
+ * order which depends on its DB and is unrelated to the order of the provided objects. Once it
+ * has asked for a few icons, the icons of the objects which it hasn't asked for yet are rendered
+ * on the pool, and {@link #loadIcon} returns them instead of rendering on the model thread. The
+ * renders of objects which the update handler never asks for are wasted, and keep their slot, so
+ * the number of icons rendered ahead and not requested yet is bounded.
+ * Renders on the pool yield while a foreground gesture is active, for a bounded time. The model
+ * thread never yields, nor waits for a render which is still yielding: it renders the icon itself
+ * instead.
+ *
+ * Apart from the renders, this is only used on the model thread.
+ */
+public class ParallelIconRenderer<T> implements CachingLogic<T> {
+
+    private static final String TAG = "ParallelIconRenderer";
+
+    // Number of icons requested before rendering ahead, so that the passes which only update a
+    // few icons don't render any icon on the pool
+    private static final int REQUEST_THRESHOLD = 4;
+    // Number of renders queued or running on the pool, for each thread of the pool
+    private static final int RENDERS_PER_THREAD = 2;
+    // Maximum number of icons rendered ahead and not requested yet, which bounds both the memory
+    // used by the rendered icons and the renders wasted on objects which are never requested
+    private static final int MAX_UNREQUESTED_RENDERS = 32;
+    private static final long YIELD_INTERVAL_MS = 16;
+    // Maximum time a render waits for the foreground gesture to end, in case the end of the
+    // gesture is never reported
+    private static final long MAX_YIELD_MS = 100;
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_YIELDING = 1;
+    private static final int STATE_RENDERING = 2;
+    // Cancelled, or taken over by the model thread
+    private static final int STATE_CLAIMED = 3;
+
+    private final CachingLogic<T> mDelegate;
+    private final Context mContext;
+    private final List<T> mObjects;
+    private final HashMap<ComponentKey, Integer> mIndices = new HashMap<>();
+    // Renders which were not requested yet
+    private final HashMap<ComponentKey, Render> mRenders = new HashMap<>();
+    // Objects which were requested, or rendered ahead
+    private final BitSet mScheduled;
+    // Users whose update pass is complete
+    private final HashSet<UserHandle> mCompletedUsers = new HashSet<>();
+
+    private final Executor mExecutor;
+    private final int mMaxRendersInFlight;
+    private final BooleanSupplier mShouldYield;
+
+    private int mRequestCount;
+
+    /**
+     * @param objects all the objects which the update pass may ask icons for
+     * @param threadCount the number of threads of {@param executor}
+     * @param shouldYield returns true while renders should wait
+     */
+    public ParallelIconRenderer(Context context, CachingLogic<T> delegate, List<T> objects,
+            Executor executor, int threadCount, BooleanSupplier shouldYield) {
+        mContext = context;
+        mDelegate = delegate;
+        mObjects = objects;
+        mExecutor = executor;
+        mMaxRendersInFlight = threadCount * RENDERS_PER_THREAD;
+        mShouldYield = shouldYield;
+        mScheduled = new BitSet(objects.size());
+        for (int i = 0; i < objects.size(); i++) {
+            mIndices.put(getKey(objects.get(i)), i);
+        }
+    }
+
+    @Override
+    public ComponentName getComponent(T object) {
+        return mDelegate.getComponent(object);
+    }
+
+    @Override
+    public UserHandle getUser(T object) {
+        return mDelegate.getUser(object);
+    }
+
+    @Override
+    public CharSequence getLabel(T object) {
+        return mDelegate.getLabel(object);
+    }
+
+    @Override
+    public CharSequence getDescription(T object, CharSequence fallback) {
+        return mDelegate.getDescription(object, fallback);
+    }
+
+    @Override
+    public long getLastUpdatedTime(@Nullable T object, PackageInfo info) {
+        return mDelegate.getLastUpdatedTime(object, info);
+    }
+
+    @Override
+    public boolean addToMemCache() {
+        return mDelegate.addToMemCache();
+    }
+
+    @NonNull
+    @Override
+    public BitmapInfo loadIcon(Context context, T object) {
+        ComponentKey key = getKey(object);
+        Integer index = mIndices.get(key);
+        if (index == null) {
+            return mDelegate.loadIcon(context, object);
+        }
+        mScheduled.set(index);
+        Render render = mRenders.remove(key);
+        if (++mRequestCount >= REQUEST_THRESHOLD) {
+            renderAhead();
+        }
+
+        if (render != null && !render.claim()) {
+            // A thread of the pool is already rendering the icon
+            BitmapInfo info = render.await();
+            if (info != null) {
+                return info;
+            }
+        }
+        // Renders here, without yielding, if the pool didn't start rendering the icon
+        return mDelegate.loadIcon(context, object);
+    }
+
+    /**
+     * Cancels the pending renders of the objects of {@param user}, eg. when its update pass is
+     * complete.
+     */
+    public void cancelRenders(UserHandle user) {
+        mCompletedUsers.add(user);
+        Iterator<Render> renders = mRenders.values().iterator();
+        while (renders.hasNext()) {
+            Render render = renders.next();
+            if (getUser(render.mObject).equals(user)) {
+                render.claim();
+                renders.remove();
+            }
+        }
+    }
+
+    /**
+     * Renders the icons of the next objects which were not requested yet, in the order they were
+     * provided, until the pool is busy or too many icons were rendered ahead.
+     */
+    private void renderAhead() {
+        int inFlight = 0;
+        for (Render render : mRenders.values()) {
+            if (!render.isDone()) {
+                inFlight++;
+            }
+        }
+        int index = 0;
+        while (inFlight < mMaxRendersInFlight && mRenders.size() < MAX_UNREQUESTED_RENDERS) {
+            index = mScheduled.nextClearBit(index);
+            if (index >= mObjects.size()) {
+                return;
+            }
+            mScheduled.set(index);
+            T object = mObjects.get(index);
+            if (!mCompletedUsers.contains(getUser(object))) {
+                Render render = new Render(object);
+                mRenders.put(getKey(object), render);
+                mExecutor.execute(render);
+                inFlight++;
+            }
+        }
+    }
+
+    private ComponentKey getKey(T object) {
+        return new ComponentKey(getComponent(object), getUser(object));
+    }
+
+    /**
+     * Render of an icon on the pool, which the model thread can claim until it starts rendering
+     */
+    private class Render implements Runnable {
+
+        private final T mObject;
+        private final AtomicInteger mState = new AtomicInteger(STATE_PENDING);
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private volatile BitmapInfo mResult;
+
+        Render(T object) {
+            mObject = object;
+        }
+
+        @Override
+        public void run() {
+            if (!mState.compareAndSet(STATE_PENDING, STATE_YIELDING)) {
+                return;
+            }
+            long deadline = SystemClock.uptimeMillis() + MAX_YIELD_MS;
+            while (mState.get() == STATE_YIELDING && mShouldYield.getAsBoolean()
+                    && SystemClock.uptimeMillis() < deadline) {
+                SystemClock.sleep(YIELD_INTERVAL_MS);
+            }
+            if (!mState.compareAndSet(STATE_YIELDING, STATE_RENDERING)) {
+                return;
+            }
+            try {
+                mResult = mDelegate.loadIcon(mContext, mObject);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to render icon ahead for " + getComponent(mObject), e);
+            } finally {
+                mDone.countDown();
+            }
+        }
+
+        /**
+         * Prevents the render from starting, returning false if it is already rendering
+         */
+        boolean claim() {
+            return mState.compareAndSet(STATE_PENDING, STATE_CLAIMED)
+                    || mState.compareAndSet(STATE_YIELDING, STATE_CLAIMED);
+        }
+
+        boolean isDone() {
+            return mDone.getCount() == 0;
+        }
+
+        /**
+         * Waits for the render started on the pool, returning null if it failed
+         */
+        @Nullable
+        BitmapInfo await() {
+            try {
+                mDone.await();
+            } catch (InterruptedException e) {
+                return null;
+            }
+            return mResult;
+        }
+    }
+}
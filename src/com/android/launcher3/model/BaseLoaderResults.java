@@ -30,14 +30,14 @@ import com.android.launcher3.model.BgDataModel.Callbacks;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.model.data.LauncherAppWidgetInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
 import com.android.launcher3.util.IntArray;
 import com.android.launcher3.util.LooperExecutor;
 import com.android.launcher3.util.LooperIdleLock;
 import com.android.launcher3.util.ViewOnDrawExecutor;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.HashSet;
 import java.util.concurrent.Executor;
 
 /**
@@ -47,7 +47,6 @@ public abstract class BaseLoaderResults {
 
     protected static final String TAG = "LoaderResults";
     protected static final int INVALID_SCREEN_ID = -1;
-    private static final int ITEMS_CHUNK = 6; // batch size for the workspace icons
 
     protected final LooperExecutor mUiExecutor;
 
@@ -59,6 +58,10 @@ public abstract class BaseLoaderResults {
 
     private int mMyBindingId;
 
+    // Set when the current page was bound from a ModelSnapshot, and needs to be reconciled with
+    // the loaded model on the next workspace bind.
+    private SnapshotBind mSnapshotBind;
+
     public BaseLoaderResults(LauncherAppState app, BgDataModel dataModel,
             AllAppsList allAppsList, Callbacks[] callbacksList, LooperExecutor uiExecutor) {
         mUiExecutor = uiExecutor;
@@ -68,6 +71,45 @@ public abstract class BaseLoaderResults {
         mCallbacksList = callbacksList;
     }
 
+    /**
+     * Binds the current page from a {@link ModelSnapshot} before the model is loaded. The bound
+     * items are reconciled with the loaded model on the next {@link #bindWorkspace()}, so that
+     * only the items which differ from the snapshot are rebound.
+     */
+    public void bindWorkspaceSnapshot(ModelSnapshot snapshot) {
+        if (mCallbacksList.length != 1) {
+            // Reconciling a partial bind is only supported for a single set of callbacks.
+            return;
+        }
+        int currentScreen = mCallbacksList[0].getPageToBindSynchronously();
+        if (currentScreen < 0 || currentScreen >= snapshot.screenIds.size()) {
+            return;
+        }
+
+        ArrayList<WorkspaceItemInfo> currentItems = new ArrayList<>();
+        filterCurrentWorkspaceItems(snapshot.screenIds.get(currentScreen),
+                new ArrayList<>(snapshot.items), currentItems, new ArrayList<>());
+        for (WorkspaceItemInfo info : currentItems) {
+            mApp.getIconCache().getTitleAndIcon(info, false /* useLowResIcon */);
+        }
+        ArrayList<ItemInfo> items = new ArrayList<>(currentItems);
+        sortWorkspaceItemsSpatially(mApp.getInvariantDeviceProfile(), items);
+
+        synchronized (mBgDataModel) {
+            mBgDataModel.lastBindId++;
+            mMyBindingId = mBgDataModel.lastBindId;
+        }
+        mSnapshotBind = new SnapshotBind(snapshot.screenIds, currentScreen, currentItems);
+
+        executeCallbacksTask(c -> {
+            c.clearPendingBinds();
+            c.startBinding();
+        }, mUiExecutor);
+        executeCallbacksTask(c -> c.bindScreens(snapshot.screenIds.clone()), mUiExecutor);
+        executeCallbacksTask(c -> c.bindItems(items, false), mUiExecutor);
+        executeCallbacksTask(c -> c.finishFirstPageBind(null), mUiExecutor);
+    }
+
     /**
      * Binds all loaded data to actual views on the main thread.
      */
@@ -77,17 +119,25 @@ public abstract class BaseLoaderResults {
         ArrayList<LauncherAppWidgetInfo> appWidgets = new ArrayList<>();
         final IntArray orderedScreenIds = new IntArray();
 
+        SnapshotBind snapshotBind = mSnapshotBind;
+        mSnapshotBind = null;
         synchronized (mBgDataModel) {
+            if (snapshotBind != null && !snapshotBind.reconcile(mBgDataModel)) {
+                snapshotBind = null;
+            }
             workspaceItems.addAll(mBgDataModel.workspaceItems);
             appWidgets.addAll(mBgDataModel.appWidgets);
             orderedScreenIds.addAll(mBgDataModel.collectWorkspaceScreens());
-            mBgDataModel.lastBindId++;
-            mMyBindingId = mBgDataModel.lastBindId;
+            if (snapshotBind == null) {
+                mBgDataModel.lastBindId++;
+                mMyBindingId = mBgDataModel.lastBindId;
+            }
+            // else, continue the snapshot bind so that it is not dropped if still pending
         }
 
         for (Callbacks cb : mCallbacksList) {
             new WorkspaceBinder(cb, mUiExecutor, mApp, mBgDataModel, mMyBindingId,
-                    workspaceItems, appWidgets, orderedScreenIds).bind();
+                    workspaceItems, appWidgets, orderedScreenIds, snapshotBind).bind();
         }
     }
 
@@ -125,7 +175,7 @@ public abstract class BaseLoaderResults {
 
     private static class WorkspaceBinder {
 
-        private final Executor mUiExecutor;
+        private final LooperExecutor mUiExecutor;
         private final Callbacks mCallbacks;
 
         private final LauncherAppState mApp;
@@ -135,16 +185,17 @@ public abstract class BaseLoaderResults {
         private final ArrayList<ItemInfo> mWorkspaceItems;
         private final ArrayList<LauncherAppWidgetInfo> mAppWidgets;
         private final IntArray mOrderedScreenIds;
-
+        private final SnapshotBind mSnapshotBind;
 
         WorkspaceBinder(Callbacks callbacks,
-                Executor uiExecutor,
+                LooperExecutor uiExecutor,
                 LauncherAppState app,
                 BgDataModel bgDataModel,
                 int myBindingId,
                 ArrayList<ItemInfo> workspaceItems,
                 ArrayList<LauncherAppWidgetInfo> appWidgets,
-                IntArray orderedScreenIds) {
+                IntArray orderedScreenIds,
+                SnapshotBind snapshotBind) {
             mCallbacks = callbacks;
             mUiExecutor = uiExecutor;
             mApp = app;
@@ -153,11 +204,15 @@ public abstract class BaseLoaderResults {
             mWorkspaceItems = workspaceItems;
             mAppWidgets = appWidgets;
             mOrderedScreenIds = orderedScreenIds;
+            mSnapshotBind = snapshotBind;
         }
 
         private void bind() {
             final int currentScreen;
-            {
+            if (mSnapshotBind != null) {
+                // Continue with the page which was bound from the snapshot
+                currentScreen = mSnapshotBind.currentScreen;
+            } else {
                 // Create an anonymous scope to calculate currentScreen as it has to be a
                 // final variable.
                 int currScreen = mCallbacks.getPageToBindSynchronously();
@@ -185,77 +240,74 @@ public abstract class BaseLoaderResults {
             sortWorkspaceItemsSpatially(idp, currentWorkspaceItems);
             sortWorkspaceItemsSpatially(idp, otherWorkspaceItems);
 
-            // Tell the workspace that we're about to start binding items
-            executeCallbacksTask(c -> {
-                c.clearPendingBinds();
-                c.startBinding();
-            }, mUiExecutor);
+            if (mSnapshotBind != null) {
+                // The current page is already bound from the snapshot, only update the items
+                // which differ from the loaded model.
+                HashSet<ItemInfo> removed = mSnapshotBind.removedItems;
+                ArrayList<WorkspaceItemInfo> changed = mSnapshotBind.changedItems;
+                executeCallbacksTask(c -> {
+                    if (!removed.isEmpty()) {
+                        c.bindWorkspaceComponentsRemoved((info, cn) -> removed.contains(info));
+                    }
+                    c.bindWorkspaceItemsChanged(changed);
+                }, mUiExecutor);
+                currentWorkspaceItems.removeAll(mSnapshotBind.adoptedItems);
+            } else {
+                // Tell the workspace that we're about to start binding items
+                executeCallbacksTask(c -> {
+                    c.clearPendingBinds();
+                    c.startBinding();
+                }, mUiExecutor);
 
-            // Bind workspace screens
-            executeCallbacksTask(c -> c.bindScreens(mOrderedScreenIds), mUiExecutor);
+                // Bind workspace screens
+                executeCallbacksTask(c -> c.bindScreens(mOrderedScreenIds), mUiExecutor);
+            }
 
-            Executor mainExecutor = mUiExecutor;
-            // Load items on the current page.
-            bindWorkspaceItems(currentWorkspaceItems, mainExecutor);
-            bindAppWidgets(currentAppWidgets, mainExecutor);
+            // Bind the current page first. If the bind was started on the UI thread, the current
+            // page is bound synchronously.
+            FrameBudgetBinder currentPageBinder = newFrameBudgetBinder(
+                    mUiExecutor.getLooper().isCurrentThread());
+            currentPageBinder.addItems(currentWorkspaceItems);
+            currentPageBinder.addItems(currentAppWidgets);
 
             // Locate available spots for prediction using currentWorkspaceItems
             IntArray gaps = getMissingHotseatRanks(currentWorkspaceItems, idp.numHotseatIcons);
-            bindPredictedItems(gaps, mainExecutor);
+            ArrayList<AppInfo> predictedItems = new ArrayList<>(mBgDataModel.cachedPredictedItems);
+            currentPageBinder.addTask(c -> c.bindPredictedItems(predictedItems, gaps));
             // In case of validFirstPage, only bind the first screen, and defer binding the
             // remaining screens after first onDraw (and an optional the fade animation whichever
             // happens later).
             // This ensures that the first screen is immediately visible (eg. during rotation)
             // In case of !validFirstPage, bind all pages one after other.
-            final Executor deferredExecutor =
-                    validFirstPage ? new ViewOnDrawExecutor() : mainExecutor;
-
-            executeCallbacksTask(c -> c.finishFirstPageBind(
-                    validFirstPage ? (ViewOnDrawExecutor) deferredExecutor : null), mainExecutor);
-
-            bindWorkspaceItems(otherWorkspaceItems, deferredExecutor);
-            bindAppWidgets(otherAppWidgets, deferredExecutor);
+            final ViewOnDrawExecutor deferredExecutor =
+                    validFirstPage ? new ViewOnDrawExecutor() : null;
+            currentPageBinder.addTask(c -> c.finishFirstPageBind(deferredExecutor));
+
+            // Continue with the remaining pages after the first draw, or right after the current
+            // page if the remaining pages are not deferred.
+            FrameBudgetBinder otherPagesBinder =
+                    validFirstPage ? newFrameBudgetBinder(false) : currentPageBinder;
+            otherPagesBinder.addItems(otherWorkspaceItems);
+            otherPagesBinder.addItems(otherAppWidgets);
             // Tell the workspace that we're done binding items
-            executeCallbacksTask(c -> c.finishBindingItems(currentScreen), deferredExecutor);
+            otherPagesBinder.addTask(c -> c.finishBindingItems(currentScreen));
 
             if (validFirstPage) {
-                executeCallbacksTask(c -> {
+                deferredExecutor.execute(otherPagesBinder);
+                currentPageBinder.addTask(c -> {
                     // We are loading synchronously, which means, some of the pages will be
                     // bound after first draw. Inform the mCallbacks that page binding is
                     // not complete, and schedule the remaining pages.
                     c.onPageBoundSynchronously(currentScreen);
-                    c.executeOnNextDraw((ViewOnDrawExecutor) deferredExecutor);
-
-                }, mUiExecutor);
-            }
-        }
-
-        private void bindWorkspaceItems(
-                final ArrayList<ItemInfo> workspaceItems, final Executor executor) {
-            // Bind the workspace items
-            int count = workspaceItems.size();
-            for (int i = 0; i < count; i += ITEMS_CHUNK) {
-                final int start = i;
-                final int chunkSize = (i + ITEMS_CHUNK <= count) ? ITEMS_CHUNK : (count - i);
-                executeCallbacksTask(
-                        c -> c.bindItems(workspaceItems.subList(start, start + chunkSize), false),
-                        executor);
-            }
-        }
-
-        private void bindAppWidgets(List<LauncherAppWidgetInfo> appWidgets, Executor executor) {
-            // Bind the widgets, one at a time
-            int count = appWidgets.size();
-            for (int i = 0; i < count; i++) {
-                final ItemInfo widget = appWidgets.get(i);
-                executeCallbacksTask(
-                        c -> c.bindItems(Collections.singletonList(widget), false), executor);
+                    c.executeOnNextDraw(deferredExecutor);
+                });
             }
+            mUiExecutor.execute(currentPageBinder);
         }
 
-        private void bindPredictedItems(IntArray ranks, final Executor executor) {
-            ArrayList<AppInfo> items = new ArrayList<>(mBgDataModel.cachedPredictedItems);
-            executeCallbacksTask(c -> c.bindPredictedItems(items, ranks), executor);
+        private FrameBudgetBinder newFrameBudgetBinder(boolean bindSynchronously) {
+            return new FrameBudgetBinder(mApp.getContext(), mCallbacks, mUiExecutor,
+                    () -> mMyBindingId == mBgDataModel.lastBindId, bindSynchronously);
         }
 
         protected void executeCallbacksTask(CallbackTask task, Executor executor) {
@@ -268,4 +320,51 @@ public abstract class BaseLoaderResults {
             });
         }
     }
+
+    /**
+     * Items bound from a {@link ModelSnapshot} on the current page
+     */
+    private static class SnapshotBind {
+
+        final IntArray screenIds;
+        final int currentScreen;
+        final ArrayList<WorkspaceItemInfo> boundItems;
+
+        final HashSet<ItemInfo> adoptedItems = new HashSet<>();
+        final HashSet<ItemInfo> removedItems = new HashSet<>();
+        final ArrayList<WorkspaceItemInfo> changedItems = new ArrayList<>();
+
+        SnapshotBind(IntArray screenIds, int currentScreen,
+                ArrayList<WorkspaceItemInfo> boundItems) {
+            this.screenIds = screenIds;
+            this.currentScreen = currentScreen;
+            this.boundItems = boundItems;
+        }
+
+        /**
+         * Matches the bound items with the loaded model. Bound items which are unchanged replace
+         * the loaded items in the model, so that the existing views keep pointing to the model.
+         * @return false if the snapshot can't be reconciled and a full bind is required.
+         */
+        boolean reconcile(BgDataModel dataModel) {
+            if (!screenIds.equals(dataModel.collectWorkspaceScreens())) {
+                return false;
+            }
+            for (WorkspaceItemInfo bound : boundItems) {
+                ItemInfo loaded = dataModel.itemsIdMap.get(bound.id);
+                if (loaded != null && ModelSnapshot.isSameItem(bound, loaded)) {
+                    WorkspaceItemInfo loadedItem = (WorkspaceItemInfo) loaded;
+                    if (ModelSnapshot.isVisuallyDifferent(bound, loadedItem)) {
+                        changedItems.add(bound);
+                    }
+                    ModelSnapshot.adoptLoadedState(bound, loadedItem);
+                    dataModel.replaceItem(loadedItem, bound);
+                    adoptedItems.add(bound);
+                } else {
+                    removedItems.add(bound);
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -46,6 +46,9 @@ public abstract class BaseModelUpdateTask implements ModelUpdateTask {
     private AllAppsList mAllAppsList;
     private Executor mUiExecutor;
 
+    // Set when the task is executed as part of another task, which binds the apps once at the end
+    private boolean mIsNested;
+
     public void init(LauncherAppState app, LauncherModel model,
             BgDataModel dataModel, AllAppsList allAppsList, Executor uiExecutor) {
         mApp = app;
@@ -73,6 +76,16 @@ public abstract class BaseModelUpdateTask implements ModelUpdateTask {
     public abstract void execute(
             LauncherAppState app, BgDataModel dataModel, AllAppsList apps);
 
+    /**
+     * Executes {@param task} as part of this task. The all apps list is not bound by the nested
+     * task, and should be bound by this task using {@link #bindApplicationsIfNeeded()}.
+     */
+    protected void executeNested(BaseModelUpdateTask task) {
+        task.init(mApp, mModel, mDataModel, mAllAppsList, mUiExecutor);
+        task.mIsNested = true;
+        task.execute(mApp, mDataModel, mAllAppsList);
+    }
+
     /**
      * Schedules a {@param task} to be executed on the current callbacks.
      */
@@ -115,6 +128,9 @@ public abstract class BaseModelUpdateTask implements ModelUpdateTask {
     }
 
     public void bindApplicationsIfNeeded() {
+        if (mIsNested) {
+            return;
+        }
         if (mAllAppsList.getAndResetChangeFlag()) {
             AppInfo[] apps = mAllAppsList.copyData();
             int flags = mAllAppsList.getFlags();
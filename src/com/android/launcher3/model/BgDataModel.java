@@ -119,6 +119,11 @@ public class BgDataModel {
      */
     public int lastBindId = 0;
 
+    /**
+     * Index of all the items in {@link #itemsIdMap} by the packages they reference
+     */
+    private final PackageItemIndex mPackageIndex = new PackageItemIndex();
+
     /**
      * Clears all the data
      */
@@ -127,6 +132,7 @@ public class BgDataModel {
         appWidgets.clear();
         folders.clear();
         itemsIdMap.clear();
+        mPackageIndex.clear();
         pinnedShortcutCounts.clear();
         deepShortcutMap.clear();
     }
@@ -219,11 +225,13 @@ public class BgDataModel {
                     break;
             }
             itemsIdMap.remove(item.id);
+            mPackageIndex.remove(item);
         }
     }
 
     public synchronized void addItem(Context context, ItemInfo item, boolean newItem) {
         itemsIdMap.put(item.id, item);
+        mPackageIndex.add(item);
         switch (item.itemType) {
             case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
                 folders.put(item.id, (FolderInfo) item);
@@ -272,6 +280,43 @@ public class BgDataModel {
         }
     }
 
+    /**
+     * Replaces a top level workspace item with an equivalent instance, keeping its position in
+     * the model. This is used to swap a loaded item with an instance that is already bound.
+     */
+    public synchronized void replaceItem(ItemInfo oldItem, ItemInfo newItem) {
+        int index = workspaceItems.indexOf(oldItem);
+        if (index < 0 || itemsIdMap.get(oldItem.id) != oldItem) {
+            Log.e(TAG, "replacing an item which is not in the model: " + oldItem);
+            return;
+        }
+        workspaceItems.set(index, newItem);
+        itemsIdMap.put(newItem.id, newItem);
+        mPackageIndex.remove(oldItem);
+        mPackageIndex.add(newItem);
+    }
+
+    /**
+     * Updates the package index for an item whose target or icon resource may have changed
+     */
+    public synchronized void updatePackageIndex(ItemInfo item) {
+        if (itemsIdMap.get(item.id) == item) {
+            mPackageIndex.add(item);
+        }
+    }
+
+    /**
+     * Returns all the items, including folder contents and widgets, which reference any of the
+     * provided packages for the user, keyed by their id. This only looks at the affected items
+     * instead of going over the whole {@link #itemsIdMap}.
+     */
+    public synchronized IntSparseArrayMap<ItemInfo> getItemsForPackages(
+            Iterable<String> packages, UserHandle user) {
+        IntSparseArrayMap<ItemInfo> result = new IntSparseArrayMap<>();
+        mPackageIndex.getItems(packages, user, result);
+        return result;
+    }
+
     /**
      * Removes the given shortcut from the current list of pinned shortcuts.
      * (Runs on background thread)
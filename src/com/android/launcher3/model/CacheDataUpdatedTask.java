@@ -53,7 +53,7 @@ public class CacheDataUpdatedTask extends BaseModelUpdateTask {
         ArrayList<WorkspaceItemInfo> updatedShortcuts = new ArrayList<>();
 
         synchronized (dataModel) {
-            for (ItemInfo info : dataModel.itemsIdMap) {
+            for (ItemInfo info : dataModel.getItemsForPackages(mPackages, mUser)) {
                 if (info instanceof WorkspaceItemInfo && mUser.equals(info.user)) {
                     WorkspaceItemInfo si = (WorkspaceItemInfo) info;
                     ComponentName cn = si.getTargetComponent();
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET;
+import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_CUSTOM_APPWIDGET;
+import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_FOLDER;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Choreographer.FrameCallback;
+
+import androidx.annotation.UiThread;
+
+import com.android.launcher3.LauncherModel.CallbackTask;
+import com.android.launcher3.model.BgDataModel.Callbacks;
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.util.DefaultDisplay;
+import com.android.launcher3.util.LooperExecutor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Binds a sequence of workspace items and callback tasks on the UI thread, packing the items in
+ * chunks which fit in the remaining time of the current frame.
+ *
+ * The bind cost of each kind of item is measured as items are bound, and used to size the next
+ * chunk. Callback tasks are executed in order with the items around them. The binder must be fully
+ * populated before it is posted to the UI executor.
+ */
+public class FrameBudgetBinder implements Runnable, FrameCallback {
+
+    private static final String TAG = "FrameBudgetBinder";
+
+    private static final int COST_ICON = 0;
+    private static final int COST_FOLDER = 1;
+    private static final int COST_WIDGET = 2;
+
+    // Initial estimates of the bind cost of each kind of item, in nanos. Only accessed on the UI
+    // thread, and kept across binds so that subsequent binds start with measured values.
+    private static final long[] sCostEstimates = new long[] {
+            TimeUnit.MICROSECONDS.toNanos(400),
+            TimeUnit.MILLISECONDS.toNanos(1),
+            TimeUnit.MILLISECONDS.toNanos(4)};
+    // Weight of a new measurement in the estimates
+    private static final float COST_SMOOTHING = 0.3f;
+
+    // Fraction of the frame which is left for measuring, laying out and drawing the bound views
+    private static final float FRAME_RESERVE = 0.5f;
+
+    private final Context mContext;
+    private final Callbacks mCallbacks;
+    private final LooperExecutor mUiExecutor;
+    private final BooleanSupplier mIsBindValid;
+    private final boolean mBindSynchronously;
+
+    // Each entry is either an ItemInfo or a CallbackTask
+    private final ArrayDeque<Object> mQueue = new ArrayDeque<>();
+
+    private long mFrameIntervalNanos;
+    private long mLastFrameTimeNanos;
+    private boolean mStarted;
+
+    private int mBoundItems;
+    private int mFramesUsed;
+    private int mDroppedFrames;
+
+    /**
+     * @param isBindValid returns false if the bind was replaced with a newer bind, in which case
+     *                    all the remaining items and tasks are dropped
+     * @param bindSynchronously if true, all the items are bound when the binder is first run
+     */
+    public FrameBudgetBinder(Context context, Callbacks callbacks, LooperExecutor uiExecutor,
+            BooleanSupplier isBindValid, boolean bindSynchronously) {
+        mContext = context;
+        mCallbacks = callbacks;
+        mUiExecutor = uiExecutor;
+        mIsBindValid = isBindValid;
+        mBindSynchronously = bindSynchronously;
+    }
+
+    public void addItems(List<? extends ItemInfo> items) {
+        mQueue.addAll(items);
+    }
+
+    public void addTask(CallbackTask task) {
+        mQueue.add(task);
+    }
+
+    @UiThread
+    @Override
+    public void run() {
+        if (!mIsBindValid.getAsBoolean()) {
+            Log.d(TAG, "Too many consecutive reloads, skipping obsolete data-bind");
+            mQueue.clear();
+            finish();
+            return;
+        }
+
+        long deadline;
+        if (!mStarted) {
+            mStarted = true;
+            mFrameIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+                    DefaultDisplay.getSingleFrameMs(mContext));
+            Choreographer.getInstance().postFrameCallback(this);
+            deadline = mBindSynchronously ? Long.MAX_VALUE : getFrameDeadline();
+        } else {
+            deadline = getFrameDeadline();
+        }
+        mFramesUsed++;
+
+        boolean boundItems = false;
+        while (!mQueue.isEmpty()) {
+            if (mQueue.peekFirst() instanceof CallbackTask) {
+                ((CallbackTask) mQueue.pollFirst()).execute(mCallbacks);
+                continue;
+            }
+
+            // Pack as many items as are expected to fit before the deadline, but always bind at
+            // least one item per frame to make progress.
+            long remaining = deadline - System.nanoTime();
+            ArrayList<ItemInfo> chunk = new ArrayList<>();
+            long predicted = 0;
+            int[] chunkCosts = new int[sCostEstimates.length];
+            while (mQueue.peekFirst() instanceof ItemInfo) {
+                ItemInfo item = (ItemInfo) mQueue.peekFirst();
+                int costType = getCostType(item);
+                long cost = sCostEstimates[costType];
+                if (predicted + cost > remaining && (boundItems || !chunk.isEmpty())) {
+                    break;
+                }
+                mQueue.pollFirst();
+                chunk.add(item);
+                chunkCosts[costType]++;
+                predicted += cost;
+            }
+            if (chunk.isEmpty()) {
+                // Out of time for this frame, continue on the next one
+                mUiExecutor.post(this);
+                return;
+            }
+
+            long start = System.nanoTime();
+            mCallbacks.bindItems(chunk, false);
+            updateEstimates(chunkCosts, predicted, System.nanoTime() - start);
+            mBoundItems += chunk.size();
+            boundItems = true;
+        }
+        finish();
+    }
+
+    /**
+     * Returns the time by which the current chunk should be bound, to leave enough time in the
+     * current frame to draw it.
+     */
+    private long getFrameDeadline() {
+        long now = System.nanoTime();
+        long budget = (long) (mFrameIntervalNanos * (1 - FRAME_RESERVE));
+        if (mLastFrameTimeNanos <= 0 || mLastFrameTimeNanos > now) {
+            return now + budget;
+        }
+        long sinceFrameStart = (now - mLastFrameTimeNanos) % mFrameIntervalNanos;
+        return now + Math.max(0, budget - sinceFrameStart);
+    }
+
+    /**
+     * Scales the estimates of the kinds of items in the chunk by the ratio of the measured and
+     * the predicted bind times.
+     */
+    private static void updateEstimates(int[] chunkCosts, long predicted, long measured) {
+        if (predicted <= 0) {
+            return;
+        }
+        float ratio = (float) measured / predicted;
+        for (int i = 0; i < chunkCosts.length; i++) {
+            if (chunkCosts[i] > 0) {
+                long measuredCost = (long) (sCostEstimates[i] * ratio);
+                sCostEstimates[i] += (long) ((measuredCost - sCostEstimates[i]) * COST_SMOOTHING);
+            }
+        }
+    }
+
+    private static int getCostType(ItemInfo item) {
+        switch (item.itemType) {
+            case ITEM_TYPE_APPWIDGET:
+            case ITEM_TYPE_CUSTOM_APPWIDGET:
+                return COST_WIDGET;
+            case ITEM_TYPE_FOLDER:
+                return COST_FOLDER;
+            default:
+                return COST_ICON;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (mLastFrameTimeNanos > 0) {
+            long frames = Math.round((double) (frameTimeNanos - mLastFrameTimeNanos)
+                    / mFrameIntervalNanos);
+            mDroppedFrames += Math.max(0, frames - 1);
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void finish() {
+        if (mStarted) {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+        if (mBoundItems > 0) {
+            Log.d(TAG, "Bound " + mBoundItems + " items in " + mFramesUsed + " frames, "
+                    + mDroppedFrames + " dropped frames");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.android.launcher3.LauncherProvider;
+import com.android.launcher3.LauncherSettings.Favorites;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Write-behind queue for the item updates made through {@link ModelWriter}.
+ *
+ * Updates are merged per item id and written to {@link LauncherProvider} in a single transaction
+ * after a short delay, so that moving multiple items results in a single database write. Any code
+ * which deletes rows or reads the whole database should call {@link #flush()} first, so that it
+ * observes the queued updates.
+ */
+public class ItemUpdateQueue {
+
+    private static final String TAG = "ItemUpdateQueue";
+
+    // Time to wait for more updates before writing them to the database
+    private static final long WRITE_DELAY_MS = 50;
+
+    private final Context mContext;
+    private final Runnable mFlushRunnable = this::flush;
+
+    // Pending values keyed by item id, in the order the items were first updated
+    private final LinkedHashMap<Integer, ContentValues> mPendingValues = new LinkedHashMap<>();
+
+    public ItemUpdateQueue(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Queues an update of the provided columns of an item. Columns already queued for the same
+     * item are overwritten.
+     */
+    public synchronized void enqueue(int itemId, ContentValues values) {
+        ContentValues pending = mPendingValues.get(itemId);
+        if (pending != null) {
+            pending.putAll(values);
+            return;
+        }
+        mPendingValues.put(itemId, new ContentValues(values));
+        if (mPendingValues.size() == 1) {
+            MODEL_EXECUTOR.getHandler().postDelayed(mFlushRunnable, WRITE_DELAY_MS);
+        }
+    }
+
+    /**
+     * Writes all the pending updates to the database, on the calling thread.
+     */
+    public synchronized void flush() {
+        MODEL_EXECUTOR.getHandler().removeCallbacks(mFlushRunnable);
+        if (mPendingValues.isEmpty()) {
+            return;
+        }
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>(mPendingValues.size());
+        for (Map.Entry<Integer, ContentValues> entry : mPendingValues.entrySet()) {
+            ops.add(ContentProviderOperation.newUpdate(Favorites.getContentUri(entry.getKey()))
+                    .withValues(entry.getValue())
+                    .build());
+        }
+        mPendingValues.clear();
+        try {
+            mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, ops);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Failed to write item updates", e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.util.PackageManagerHelper.hasShortcutsPermission;
+
+import android.appwidget.AppWidgetProviderInfo;
+import android.content.Context;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.LauncherApps;
+import android.content.pm.ShortcutInfo;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.ArrayMap;
+
+import com.android.launcher3.pm.ShortcutConfigActivityInfo;
+import com.android.launcher3.shortcuts.ShortcutRequest;
+import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.widget.WidgetManagerHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs the system queries used by the different {@link LoaderTask} steps in parallel.
+ *
+ * The queries do not depend on each other or on the launcher database, so they are all started
+ * as soon as the loader begins. Each loader step then blocks only on the result it consumes,
+ * while the results are still committed to {@link BgDataModel} in the usual order on the loader
+ * thread.
+ */
+public class LoaderQueries {
+
+    private final FutureTask<Map<UserHandle, List<LauncherActivityInfo>>> mActivities;
+    private final FutureTask<Map<UserHandle, List<ShortcutInfo>>> mDeepShortcuts;
+    private final FutureTask<Map<ComponentKey, AppWidgetProviderInfo>> mWidgetProviders;
+    private final FutureTask<List<ShortcutConfigActivityInfo>> mShortcutConfigActivities;
+
+    public LoaderQueries(Context context, List<UserHandle> profiles, Executor executor) {
+        LauncherApps launcherApps = context.getSystemService(LauncherApps.class);
+        UserManager userManager = context.getSystemService(UserManager.class);
+
+        mWidgetProviders = new FutureTask<>(() -> WidgetManagerHelper.getAllProvidersMap(context));
+        mShortcutConfigActivities = new FutureTask<>(
+                () -> ShortcutConfigActivityInfo.queryList(context, null));
+        mActivities = new FutureTask<>(() -> {
+            Map<UserHandle, List<LauncherActivityInfo>> result = new ArrayMap<>();
+            for (UserHandle user : profiles) {
+                result.put(user, launcherApps.getActivityList(null, user));
+            }
+            return result;
+        });
+        mDeepShortcuts = new FutureTask<>(() -> {
+            Map<UserHandle, List<ShortcutInfo>> result = new ArrayMap<>();
+            if (!hasShortcutsPermission(context)) {
+                return result;
+            }
+            for (UserHandle user : profiles) {
+                // We can only query for shortcuts when the user is unlocked.
+                if (userManager.isUserUnlocked(user)) {
+                    result.put(user, new ShortcutRequest(context, user)
+                            .query(ShortcutRequest.ALL));
+                }
+            }
+            return result;
+        });
+
+        // Start the queries in the order in which the loader consumes them
+        executor.execute(mWidgetProviders);
+        executor.execute(mActivities);
+        executor.execute(mDeepShortcuts);
+        executor.execute(mShortcutConfigActivities);
+    }
+
+    /**
+     * Returns all the widget providers across all profiles, keyed by component and user
+     */
+    public Map<ComponentKey, AppWidgetProviderInfo> getWidgetProviders() {
+        return await(mWidgetProviders);
+    }
+
+    /**
+     * Returns the shortcut config activities across all profiles
+     */
+    public List<ShortcutConfigActivityInfo> getShortcutConfigActivities() {
+        return await(mShortcutConfigActivities);
+    }
+
+    /**
+     * Returns the launcher activities for the provided user, or null if the user was not
+     * queried.
+     */
+    public List<LauncherActivityInfo> getActivityList(UserHandle user) {
+        return await(mActivities).get(user);
+    }
+
+    /**
+     * Returns all the deep shortcuts for the provided user, or an empty list if shortcuts
+     * could not be queried for that user.
+     */
+    public List<ShortcutInfo> getDeepShortcuts(UserHandle user) {
+        List<ShortcutInfo> shortcuts = await(mDeepShortcuts).get(user);
+        return shortcuts == null ? new ArrayList<>() : shortcuts;
+    }
+
+    /**
+     * Returns true if deep shortcuts were queried for the provided user
+     */
+    public boolean hasDeepShortcuts(UserHandle user) {
+        return await(mDeepShortcuts).containsKey(user);
+    }
+
+    /**
+     * Cancels all pending queries. Any subsequent call to get the results will throw a
+     * {@link CancellationException}.
+     */
+    public void cancel() {
+        mWidgetProviders.cancel(true);
+        mActivities.cancel(true);
+        mDeepShortcuts.cancel(true);
+        mShortcutConfigActivities.cancel(true);
+    }
+
+    private static <T> T await(FutureTask<T> task) throws CancellationException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            throw new CancellationException("Loader interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
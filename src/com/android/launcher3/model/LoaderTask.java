@@ -24,7 +24,9 @@ import static com.android.launcher3.model.ModelUtils.filterCurrentWorkspaceItems
 import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_LOCKED_USER;
 import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_SAFEMODE;
 import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_SUSPENDED;
+import static com.android.launcher3.util.Executors.ICON_RENDER_EXECUTOR;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+import static com.android.launcher3.util.Executors.MODEL_WORKER_EXECUTOR;
 import static com.android.launcher3.util.PackageManagerHelper.hasShortcutsPermission;
 import static com.android.launcher3.util.PackageManagerHelper.isSystemApp;
 
@@ -65,6 +67,7 @@ import com.android.launcher3.icons.ComponentWithLabelAndIcon;
 import com.android.launcher3.icons.ComponentWithLabelAndIcon.ComponentWithIconCachingLogic;
 import com.android.launcher3.icons.IconCache;
 import com.android.launcher3.icons.LauncherActivityCachingLogic;
+import com.android.launcher3.icons.ParallelIconRenderer;
 import com.android.launcher3.icons.ShortcutCachingLogic;
 import com.android.launcher3.icons.cache.IconCacheUpdateHandler;
 import com.android.launcher3.logging.FileLog;
@@ -83,6 +86,7 @@ import com.android.launcher3.shortcuts.ShortcutKey;
 import com.android.launcher3.shortcuts.ShortcutRequest;
 import com.android.launcher3.shortcuts.ShortcutRequest.QueryResult;
 import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.ForegroundGestureTracker;
 import com.android.launcher3.util.IOUtils;
 import com.android.launcher3.util.LooperIdleLock;
 import com.android.launcher3.util.MultiHashMap;
@@ -128,6 +132,10 @@ public class LoaderTask implements Runnable {
 
     protected Map<ComponentKey, AppWidgetProviderInfo> mWidgetProvidersMap;
 
+    // System queries started in parallel at the beginning of the load, null if the loader is
+    // not running the full load sequence.
+    private LoaderQueries mQueries;
+
     private boolean mStopped;
 
     public LoaderTask(LauncherAppState app, AllAppsList bgAllAppsList, BgDataModel dataModel,
@@ -160,6 +168,19 @@ public class LoaderTask implements Runnable {
         }
     }
 
+    /**
+     * Returns the widget providers of all the users, from the parallel loader queries if they
+     * were started.
+     */
+    private Map<ComponentKey, AppWidgetProviderInfo> getWidgetProvidersMap(Context context) {
+        if (mWidgetProvidersMap == null) {
+            mWidgetProvidersMap = mQueries != null
+                    ? mQueries.getWidgetProviders()
+                    : WidgetManagerHelper.getAllProvidersMap(context);
+        }
+        return mWidgetProvidersMap;
+    }
+
     private void sendFirstScreenActiveInstallsBroadcast() {
         ArrayList<ItemInfo> firstScreenItems = new ArrayList<>();
 
@@ -187,6 +208,25 @@ public class LoaderTask implements Runnable {
         Object traceToken = TraceHelper.INSTANCE.beginSection(TAG);
         TimingLogger logger = new TimingLogger(TAG, "run");
         try (LauncherModel.LoaderTransaction transaction = mApp.getModel().beginLoader(this)) {
+            synchronized (this) {
+                verifyNotStopped();
+                mQueries = new LoaderQueries(mApp.getContext(), mUserCache.getUserProfiles(),
+                        MODEL_WORKER_EXECUTOR);
+            }
+            logger.addSplit("startQueries");
+
+            // Make sure that the database reflects all the updates made to the previous model
+            mApp.getModel().getItemUpdateQueue().flush();
+
+            if (FeatureFlags.ENABLE_WORKSPACE_SNAPSHOT.get()) {
+                ModelSnapshot snapshot = ModelSnapshot.read(mApp);
+                if (snapshot != null) {
+                    verifyNotStopped();
+                    mResults.bindWorkspaceSnapshot(snapshot);
+                    logger.addSplit("bindWorkspaceSnapshot");
+                }
+            }
+
             List<ShortcutInfo> allShortcuts = new ArrayList<>();
             loadWorkspace(allShortcuts);
             loadCachedPredictions();
@@ -216,9 +256,17 @@ public class LoaderTask implements Runnable {
             verifyNotStopped();
             IconCacheUpdateHandler updateHandler = mIconCache.getUpdateHandler();
             setIgnorePackages(updateHandler);
-            updateHandler.updateIcons(allActivityList,
-                    LauncherActivityCachingLogic.newInstance(mApp.getContext()),
-                    mApp.getModel()::onPackageIconsUpdated);
+            ParallelIconRenderer<LauncherActivityInfo> activityIconRenderer =
+                    new ParallelIconRenderer<>(mApp.getContext(),
+                            LauncherActivityCachingLogic.newInstance(mApp.getContext()),
+                            allActivityList, ICON_RENDER_EXECUTOR,
+                            ICON_RENDER_EXECUTOR.getMaximumPoolSize(),
+                            ForegroundGestureTracker::isGestureActive);
+            updateHandler.updateIcons(allActivityList, activityIconRenderer,
+                    (packages, user) -> {
+                        activityIconRenderer.cancelRenders(user);
+                        mApp.getModel().onPackageIconsUpdated(packages, user);
+                    });
             logger.addSplit("update icon cache");
 
             if (FeatureFlags.ENABLE_DEEP_SHORTCUT_ICON_CACHE.get()) {
@@ -254,8 +302,11 @@ public class LoaderTask implements Runnable {
             verifyNotStopped();
 
             // fourth step
-            List<ComponentWithLabelAndIcon> allWidgetsList =
-                    mBgDataModel.widgetsModel.update(mApp, null);
+            // The providers were queried along with the other loader queries
+            List<ComponentWithLabelAndIcon> allWidgetsList = mBgDataModel.widgetsModel.update(
+                    mApp,
+                    () -> getWidgetProvidersMap(mApp.getContext()).values(),
+                    mQueries::getShortcutConfigActivities);
             logger.addSplit("load widgets");
 
             verifyNotStopped();
@@ -278,6 +329,11 @@ public class LoaderTask implements Runnable {
             logger.addSplit("finish icon update");
 
             transaction.commit();
+
+            if (FeatureFlags.ENABLE_WORKSPACE_SNAPSHOT.get()) {
+                ModelSnapshot.write(mApp, mBgDataModel);
+                logger.addSplit("write model snapshot");
+            }
         } catch (CancellationException e) {
             // Loader stopped, ignore
             logger.addSplit("Cancelled");
@@ -289,6 +345,9 @@ public class LoaderTask implements Runnable {
 
     public synchronized void stopLocked() {
         mStopped = true;
+        if (mQueries != null) {
+            mQueries.cancel();
+        }
         this.notify();
     }
 
@@ -652,12 +711,9 @@ public class LoaderTask implements Runnable {
                             final boolean wasProviderReady = !c.hasRestoreFlag(
                                     LauncherAppWidgetInfo.FLAG_PROVIDER_NOT_READY);
 
-                            if (mWidgetProvidersMap == null) {
-                                mWidgetProvidersMap = WidgetManagerHelper.getAllProvidersMap(
-                                        context);
-                            }
-                            final AppWidgetProviderInfo provider = mWidgetProvidersMap.get(
-                                    new ComponentKey(component, c.user));
+                            final AppWidgetProviderInfo provider =
+                                    getWidgetProvidersMap(context).get(
+                                            new ComponentKey(component, c.user));
 
                             final boolean isProviderReady = isValidProvider(provider);
                             if (!isSafeMode && !customWidget &&
@@ -890,7 +946,9 @@ public class LoaderTask implements Runnable {
         mBgAllAppsList.clear();
         for (UserHandle user : profiles) {
             // Query for the set of apps
-            final List<LauncherActivityInfo> apps = mLauncherApps.getActivityList(null, user);
+            final List<LauncherActivityInfo> apps = mQueries != null
+                    ? mQueries.getActivityList(user)
+                    : mLauncherApps.getActivityList(null, user);
             // Fail if we don't have any apps
             // TODO: Fix this. Only fail for the current user.
             if (apps == null || apps.isEmpty()) {
@@ -941,9 +999,12 @@ public class LoaderTask implements Runnable {
 
         if (mBgAllAppsList.hasShortcutHostPermission()) {
             for (UserHandle user : mUserCache.getUserProfiles()) {
-                if (mUserManager.isUserUnlocked(user)) {
-                    List<ShortcutInfo> shortcuts = new ShortcutRequest(mApp.getContext(), user)
-                            .query(ShortcutRequest.ALL);
+                if (mQueries != null ? mQueries.hasDeepShortcuts(user)
+                        : mUserManager.isUserUnlocked(user)) {
+                    List<ShortcutInfo> shortcuts = mQueries != null
+                            ? mQueries.getDeepShortcuts(user)
+                            : new ShortcutRequest(mApp.getContext(), user)
+                                    .query(ShortcutRequest.ALL);
                     allShortcuts.addAll(shortcuts);
                     mBgDataModel.updateDeepShortcutCounts(null, user, shortcuts);
                 }
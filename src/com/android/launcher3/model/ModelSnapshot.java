@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.LauncherSettings.Favorites.CONTAINER_DESKTOP;
+import static com.android.launcher3.LauncherSettings.Favorites.CONTAINER_HOTSEAT;
+import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.UserHandle;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.icons.BitmapInfo;
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+import com.android.launcher3.pm.UserCache;
+import com.android.launcher3.util.IntArray;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A compact binary copy of the top level application icons in {@link BgDataModel}, used to bind
+ * the first workspace page before the launcher database has been loaded.
+ *
+ * The snapshot is written after every successful load and read using a memory mapped buffer on
+ * the next process start. It only holds the persisted fields and the icon cache key of each item;
+ * titles and icons are resolved through the icon cache when the snapshot is bound. Items which
+ * can't be restored from these fields (folders, widgets and shortcuts) are always bound from the
+ * database.
+ */
+public class ModelSnapshot {
+
+    private static final String TAG = "ModelSnapshot";
+
+    private static final String FILE_NAME = "workspace_snapshot.bin";
+    private static final int MAGIC = 0x4C534E50;
+    private static final int VERSION = 1;
+
+    public final IntArray screenIds;
+    public final List<WorkspaceItemInfo> items;
+
+    private ModelSnapshot(IntArray screenIds, List<WorkspaceItemInfo> items) {
+        this.screenIds = screenIds;
+        this.items = items;
+    }
+
+    /**
+     * Returns true if the item can be saved in the snapshot
+     */
+    private static boolean isSupported(ItemInfo info) {
+        return info instanceof WorkspaceItemInfo
+                && info.itemType == ITEM_TYPE_APPLICATION
+                && info.getTargetComponent() != null
+                && (info.container == CONTAINER_DESKTOP || info.container == CONTAINER_HOTSEAT);
+    }
+
+    /**
+     * Returns true if the {@param loaded} item is the same item as the {@param snapshot} item,
+     * placed at the same position.
+     */
+    public static boolean isSameItem(WorkspaceItemInfo snapshot, ItemInfo loaded) {
+        return isSupported(loaded)
+                && snapshot.id == loaded.id
+                && snapshot.container == loaded.container
+                && snapshot.screenId == loaded.screenId
+                && snapshot.cellX == loaded.cellX
+                && snapshot.cellY == loaded.cellY
+                && snapshot.rank == loaded.rank
+                && snapshot.user.equals(loaded.user)
+                && Objects.equals(snapshot.getTargetComponent(), loaded.getTargetComponent());
+    }
+
+    /**
+     * Returns true if binding the {@param loaded} item would render differently from the already
+     * bound {@param snapshot} item.
+     */
+    public static boolean isVisuallyDifferent(WorkspaceItemInfo snapshot,
+            WorkspaceItemInfo loaded) {
+        return !TextUtils.equals(snapshot.title, loaded.title)
+                || !isSameIcon(snapshot.bitmap, loaded.bitmap)
+                || snapshot.runtimeStatusFlags != loaded.runtimeStatusFlags
+                || snapshot.status != loaded.status;
+    }
+
+    /**
+     * Returns true if both icons have the same pixels and color. The icons are compared by content
+     * as the loaded icon is usually a new bitmap, even when it is unchanged.
+     */
+    private static boolean isSameIcon(@Nullable BitmapInfo a, @Nullable BitmapInfo b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.color != b.color) {
+            return false;
+        }
+        return a.icon == b.icon || (a.icon != null && a.icon.sameAs(b.icon));
+    }
+
+    /**
+     * Copies the loaded state of {@param loaded} to the already bound {@param target} so that the
+     * bound instance can replace the loaded instance in the model.
+     */
+    public static void adoptLoadedState(WorkspaceItemInfo target, WorkspaceItemInfo loaded) {
+        target.copyFrom(loaded);
+        target.title = loaded.title;
+        target.intent = loaded.intent;
+        target.iconResource = loaded.iconResource;
+        target.disabledMessage = loaded.disabledMessage;
+        target.status = loaded.status;
+        target.bitmap = loaded.bitmap;
+        target.runtimeStatusFlags = loaded.runtimeStatusFlags;
+        target.setInstallProgress(loaded.getInstallProgress());
+    }
+
+    /**
+     * Writes the snapshot of the provided model, replacing any previous snapshot
+     */
+    @WorkerThread
+    public static void write(LauncherAppState app, BgDataModel dataModel) {
+        Context context = app.getContext();
+        InvariantDeviceProfile idp = app.getInvariantDeviceProfile();
+        UserCache userCache = UserCache.INSTANCE.get(context);
+
+        IntArray screenIds;
+        ArrayList<ItemInfo> items = new ArrayList<>();
+        synchronized (dataModel) {
+            screenIds = dataModel.collectWorkspaceScreens();
+            for (ItemInfo info : dataModel.workspaceItems) {
+                if (isSupported(info)) {
+                    items.add(info);
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(estimateSize(idp, screenIds, items));
+        buffer.putInt(MAGIC).putInt(VERSION);
+        putGridSignature(buffer, idp);
+
+        buffer.putInt(screenIds.size());
+        for (int i = 0; i < screenIds.size(); i++) {
+            buffer.putInt(screenIds.get(i));
+        }
+
+        buffer.putInt(items.size());
+        for (ItemInfo info : items) {
+            buffer.putInt(info.id)
+                    .putInt(info.container)
+                    .putInt(info.screenId)
+                    .putInt(info.cellX)
+                    .putInt(info.cellY)
+                    .putInt(info.rank)
+                    .putLong(userCache.getSerialNumberForUser(info.user));
+            putString(buffer, info.getTargetComponent().flattenToShortString());
+        }
+
+        File file = getFile(context);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            out.write(buffer.array(), 0, buffer.position());
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write model snapshot", e);
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            Log.e(TAG, "Failed to replace model snapshot");
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Reads the last saved snapshot, or returns null if there is no valid snapshot for the
+     * current grid.
+     */
+    @WorkerThread
+    @Nullable
+    public static ModelSnapshot read(LauncherAppState app) {
+        Context context = app.getContext();
+        File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        InvariantDeviceProfile idp = app.getInvariantDeviceProfile();
+        UserCache userCache = UserCache.INSTANCE.get(context);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                Log.d(TAG, "Ignoring snapshot with unknown version");
+                return null;
+            }
+            ByteBuffer signature = ByteBuffer.allocate(getGridSignatureSize(idp));
+            putGridSignature(signature, idp);
+            signature.flip();
+            ByteBuffer savedSignature = buffer.slice();
+            if (savedSignature.remaining() < signature.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            savedSignature.limit(signature.remaining());
+            if (!signature.equals(savedSignature)) {
+                Log.d(TAG, "Ignoring snapshot for a different grid");
+                return null;
+            }
+            buffer.position(buffer.position() + signature.remaining());
+
+            int screenCount = buffer.getInt();
+            IntArray screenIds = new IntArray(screenCount);
+            for (int i = 0; i < screenCount; i++) {
+                screenIds.add(buffer.getInt());
+            }
+
+            int itemCount = buffer.getInt();
+            ArrayList<WorkspaceItemInfo> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                WorkspaceItemInfo info = new WorkspaceItemInfo();
+                info.itemType = ITEM_TYPE_APPLICATION;
+                info.id = buffer.getInt();
+                info.container = buffer.getInt();
+                info.screenId = buffer.getInt();
+                info.cellX = buffer.getInt();
+                info.cellY = buffer.getInt();
+                info.rank = buffer.getInt();
+                UserHandle user = userCache.getUserForSerialNumber(buffer.getLong());
+                ComponentName cn = ComponentName.unflattenFromString(getString(buffer));
+                if (user == null || cn == null) {
+                    // The user was removed since the snapshot was written
+                    continue;
+                }
+                info.user = user;
+                info.intent = AppInfo.makeLaunchIntent(cn);
+                items.add(info);
+            }
+            return new ModelSnapshot(screenIds, items);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            Log.e(TAG, "Failed to read model snapshot", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getNoBackupFilesDir(), FILE_NAME);
+    }
+
+    private static int getGridSignatureSize(InvariantDeviceProfile idp) {
+        return 3 * 4 + 2 + (idp.dbFile == null ? 0 : idp.dbFile.length() * 4);
+    }
+
+    private static void putGridSignature(ByteBuffer buffer, InvariantDeviceProfile idp) {
+        buffer.putInt(idp.numColumns).putInt(idp.numRows).putInt(idp.numHotseatIcons);
+        putString(buffer, idp.dbFile == null ? "" : idp.dbFile);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) data.length).put(data);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private static int estimateSize(
+            InvariantDeviceProfile idp, IntArray screenIds, List<ItemInfo> items) {
+        int size = 4 * 4 + getGridSignatureSize(idp) + 4 * screenIds.size();
+        for (ItemInfo info : items) {
+            // Fixed size fields, string length and the worst case UTF-8 size of the component
+            size += 6 * 4 + 8 + 2 + info.getTargetComponent().flattenToShortString().length() * 4;
+        }
+        return size;
+    }
+}
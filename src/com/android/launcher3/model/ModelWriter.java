@@ -18,7 +18,6 @@ package com.android.launcher3.model;
 
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
 
-import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -30,7 +29,6 @@ import android.util.Log;
 import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.LauncherAppWidgetHost;
 import com.android.launcher3.LauncherModel;
-import com.android.launcher3.LauncherProvider;
 import com.android.launcher3.LauncherSettings;
 import com.android.launcher3.LauncherSettings.Favorites;
 import com.android.launcher3.LauncherSettings.Settings;
@@ -272,6 +270,7 @@ public class ModelWriter {
                         : item.getTargetComponent().getPackageName()).collect(
                 Collectors.joining(",")), new Exception());
         enqueueDeleteRunnable(() -> {
+            mModel.getItemUpdateQueue().flush();
             for (ItemInfo item : items) {
                 final Uri uri = Favorites.getContentUri(item.id);
                 mContext.getContentResolver().delete(uri, null, null);
@@ -289,6 +288,9 @@ public class ModelWriter {
         ModelVerifier verifier = new ModelVerifier();
 
         enqueueDeleteRunnable(() -> {
+            // Write any pending moves first, so that the delete includes items which were just
+            // moved into the folder
+            mModel.getItemUpdateQueue().flush();
             ContentResolver cr = mContext.getContentResolver();
             cr.delete(LauncherSettings.Favorites.CONTENT_URI,
                     LauncherSettings.Favorites.CONTAINER + "=" + info.id, null);
@@ -374,9 +376,7 @@ public class ModelWriter {
 
         @Override
         public void run() {
-            Uri uri = Favorites.getContentUri(mItemId);
-            mContext.getContentResolver().update(uri, mWriter.get().getValues(mContext),
-                    null, null);
+            mModel.getItemUpdateQueue().enqueue(mItemId, mWriter.get().getValues(mContext));
             updateItemArrays(mItem, mItemId);
         }
     }
@@ -392,22 +392,14 @@ public class ModelWriter {
 
         @Override
         public void run() {
-            ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+            ItemUpdateQueue updateQueue = mModel.getItemUpdateQueue();
             int count = mItems.size();
             for (int i = 0; i < count; i++) {
                 ItemInfo item = mItems.get(i);
                 final int itemId = item.id;
-                final Uri uri = Favorites.getContentUri(itemId);
-                ContentValues values = mValues.get(i);
-
-                ops.add(ContentProviderOperation.newUpdate(uri).withValues(values).build());
+                updateQueue.enqueue(itemId, mValues.get(i));
                 updateItemArrays(item, itemId);
             }
-            try {
-                mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, ops);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
         }
     }
 
@@ -440,6 +432,10 @@ public class ModelWriter {
                 // as in Workspace.onDrop. Here, we just add/remove them from the list of items
                 // that are on the desktop, as appropriate
                 ItemInfo modelItem = mBgDataModel.itemsIdMap.get(itemId);
+                if (modelItem != null) {
+                    // The item's target may have been changed along with the update
+                    mBgDataModel.updatePackageIndex(modelItem);
+                }
                 if (modelItem != null &&
                         (modelItem.container == Favorites.CONTAINER_DESKTOP ||
                                 modelItem.container == Favorites.CONTAINER_HOTSEAT)) {
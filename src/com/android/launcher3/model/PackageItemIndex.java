@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import android.content.ComponentName;
+import android.os.UserHandle;
+
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.model.data.LauncherAppWidgetInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+import com.android.launcher3.util.IntSparseArrayMap;
+import com.android.launcher3.util.PackageUserKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+
+/**
+ * Reverse index from a package/user to the workspace items, folder contents and widgets which
+ * reference that package, either as their target or as their icon resource.
+ *
+ * The index is not thread safe and is guarded by the owning {@link BgDataModel}.
+ */
+public class PackageItemIndex {
+
+    private static final PackageUserKey[] NO_KEYS = new PackageUserKey[0];
+
+    private final HashMap<PackageUserKey, ArrayList<ItemInfo>> mItems = new HashMap<>();
+
+    // Keys under which each item is currently indexed, so that the item can be removed even if
+    // its target has changed since it was added.
+    private final IdentityHashMap<ItemInfo, PackageUserKey[]> mItemKeys = new IdentityHashMap<>();
+
+    private final PackageUserKey mTempKey = new PackageUserKey(null, null);
+
+    /**
+     * Adds the item to the index, or updates it if its packages have changed
+     */
+    public void add(ItemInfo item) {
+        PackageUserKey[] keys = getKeys(item);
+        PackageUserKey[] oldKeys = mItemKeys.get(item);
+        if (oldKeys != null) {
+            if (Arrays.equals(oldKeys, keys)) {
+                return;
+            }
+            remove(item);
+        }
+        if (keys.length == 0) {
+            return;
+        }
+        mItemKeys.put(item, keys);
+        for (PackageUserKey key : keys) {
+            ArrayList<ItemInfo> list = mItems.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                mItems.put(key, list);
+            }
+            list.add(item);
+        }
+    }
+
+    /**
+     * Removes the item from the index
+     */
+    public void remove(ItemInfo item) {
+        PackageUserKey[] keys = mItemKeys.remove(item);
+        if (keys == null) {
+            return;
+        }
+        for (PackageUserKey key : keys) {
+            ArrayList<ItemInfo> list = mItems.get(key);
+            if (list != null) {
+                // Remove by identity as ItemInfo does not define equality
+                for (int i = list.size() - 1; i >= 0; i--) {
+                    if (list.get(i) == item) {
+                        list.remove(i);
+                        break;
+                    }
+                }
+                if (list.isEmpty()) {
+                    mItems.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all the items from the index
+     */
+    public void clear() {
+        mItems.clear();
+        mItemKeys.clear();
+    }
+
+    /**
+     * Adds all the items referencing any of the {@param packages} for the {@param user} to
+     * {@param out}, keyed by item id.
+     */
+    public void getItems(Iterable<String> packages, UserHandle user,
+            IntSparseArrayMap<ItemInfo> out) {
+        for (String pkg : packages) {
+            mTempKey.update(pkg, user);
+            ArrayList<ItemInfo> list = mItems.get(mTempKey);
+            if (list != null) {
+                for (ItemInfo item : list) {
+                    out.put(item.id, item);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed items
+     */
+    public int size() {
+        return mItemKeys.size();
+    }
+
+    private static PackageUserKey[] getKeys(ItemInfo item) {
+        if (item.user == null) {
+            return NO_KEYS;
+        }
+        String targetPackage = null;
+        String iconPackage = null;
+        if (item instanceof WorkspaceItemInfo) {
+            ComponentName cn = item.getTargetComponent();
+            targetPackage = cn == null ? null : cn.getPackageName();
+            WorkspaceItemInfo si = (WorkspaceItemInfo) item;
+            iconPackage = si.iconResource == null ? null : si.iconResource.packageName;
+        } else if (item instanceof LauncherAppWidgetInfo) {
+            ComponentName cn = ((LauncherAppWidgetInfo) item).providerName;
+            targetPackage = cn == null ? null : cn.getPackageName();
+        }
+
+        if (iconPackage == null || Objects.equals(targetPackage, iconPackage)) {
+            return targetPackage == null
+                    ? NO_KEYS : new PackageUserKey[] {new PackageUserKey(targetPackage, item.user)};
+        } else if (targetPackage == null) {
+            return new PackageUserKey[] {new PackageUserKey(iconPackage, item.user)};
+        } else {
+            return new PackageUserKey[] {
+                    new PackageUserKey(targetPackage, item.user),
+                    new PackageUserKey(iconPackage, item.user)};
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.model.PackageUpdatedTask.OP_USER_AVAILABILITY_CHANGE;
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+
+import android.content.pm.LauncherApps;
+import android.os.Looper;
+import android.os.UserHandle;
+
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.LauncherModel.ModelUpdateTask;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces bursts of package callbacks from {@link LauncherApps} before they reach the model.
+ *
+ * Package operations are held for a short time window, or until enough packages are pending.
+ * Operations of the same type for the same user are merged into a single
+ * {@link PackageUpdatedTask} and all the pending operations are then executed as one model task,
+ * which binds the updated apps once for the whole batch.
+ */
+public class PackageUpdateCoalescer {
+
+    // Time to wait for more callbacks before updating the model
+    private static final long WINDOW_MS = 100;
+    // Number of pending packages after which the model is updated without waiting
+    private static final int MAX_PENDING_PACKAGES = 64;
+
+    private final Consumer<ModelUpdateTask> mTaskSink;
+    private final Runnable mFlushRunnable = this::flush;
+
+    // Pending operations in the order they were received, guarded by this
+    private final ArrayList<PendingOp> mPendingOps = new ArrayList<>();
+    private int mPendingPackageCount;
+    private int mPendingCallbackCount;
+    private boolean mFlushScheduled;
+
+    // Stats reported in dumpsys, guarded by this
+    private int mTotalCallbacks;
+    private int mTotalTasks;
+    private int mTotalBatches;
+    private int mLargestBatch;
+
+    /**
+     * @param taskSink used to execute the batched tasks on the model thread. It must run the task
+     *                 inline when called on the model thread, like {@link
+     *                 com.android.launcher3.util.LooperExecutor#execute}, so that a batch
+     *                 flushed on the model thread runs before the tasks enqueued after it.
+     */
+    public PackageUpdateCoalescer(Consumer<ModelUpdateTask> taskSink) {
+        mTaskSink = taskSink;
+    }
+
+    /**
+     * Schedules a package operation
+     * @see PackageUpdatedTask#PackageUpdatedTask(int, UserHandle, String...)
+     */
+    public synchronized void enqueue(int op, UserHandle user, String... packages) {
+        mTotalCallbacks++;
+        mPendingCallbackCount++;
+
+        PendingOp target = findMergeTarget(op, user, packages);
+        if (target == null) {
+            target = new PendingOp(op, user);
+            mPendingOps.add(target);
+        }
+        int oldSize = target.packages.size();
+        Collections.addAll(target.packages, packages);
+        mPendingPackageCount += target.packages.size() - oldSize;
+
+        if (mPendingPackageCount >= MAX_PENDING_PACKAGES) {
+            MODEL_EXECUTOR.getHandler().removeCallbacks(mFlushRunnable);
+            MODEL_EXECUTOR.post(mFlushRunnable);
+            mFlushScheduled = true;
+        } else if (!mFlushScheduled) {
+            MODEL_EXECUTOR.getHandler().postDelayed(mFlushRunnable, WINDOW_MS);
+            mFlushScheduled = true;
+        }
+    }
+
+    /**
+     * Returns a pending operation which the new operation can be merged into, without changing
+     * the outcome of any operation in between, or null.
+     */
+    private PendingOp findMergeTarget(int op, UserHandle user, String[] packages) {
+        if (op == OP_USER_AVAILABILITY_CHANGE) {
+            return null;
+        }
+        for (int i = mPendingOps.size() - 1; i >= 0; i--) {
+            PendingOp pending = mPendingOps.get(i);
+            if (!pending.user.equals(user)) {
+                // Operations for different users are independent
+                continue;
+            }
+            if (pending.op == op) {
+                return pending;
+            }
+            if (pending.op == OP_USER_AVAILABILITY_CHANGE || pending.containsAny(packages)) {
+                // Merging past this operation would reorder operations on the same package
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Immediately enqueues all the pending operations to the model
+     */
+    public void flush() {
+        BatchedPackageUpdateTask task;
+        synchronized (this) {
+            if (mFlushScheduled) {
+                MODEL_EXECUTOR.getHandler().removeCallbacks(mFlushRunnable);
+                mFlushScheduled = false;
+            }
+            if (mPendingOps.isEmpty()) {
+                return;
+            }
+            ArrayList<PendingOp> ops = new ArrayList<>(mPendingOps);
+            mTotalTasks += ops.size();
+            mTotalBatches++;
+            mLargestBatch = Math.max(mLargestBatch, mPendingCallbackCount);
+
+            mPendingOps.clear();
+            mPendingPackageCount = 0;
+            mPendingCallbackCount = 0;
+
+            task = new BatchedPackageUpdateTask(ops);
+            if (MODEL_EXECUTOR.getLooper() != Looper.myLooper()) {
+                // Post while holding the lock so that batches flushed from different threads are
+                // executed in order.
+                mTaskSink.accept(task);
+                return;
+            }
+        }
+        // On the model thread, the batch runs inline right away, so it can't be reordered with
+        // batches flushed from other threads, and it runs without holding the lock.
+        mTaskSink.accept(task);
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Package update coalescer:");
+        writer.println(prefix + "  callbacks=" + mTotalCallbacks
+                + " tasks=" + mTotalTasks
+                + " batches=" + mTotalBatches
+                + " largestBatch=" + mLargestBatch
+                + " pending=" + mPendingCallbackCount);
+        if (mTotalTasks > 0) {
+            writer.println(prefix + "  mergeRatio="
+                    + String.format("%.2f", (float) mTotalCallbacks / mTotalTasks)
+                    + " callbacksPerBatch="
+                    + String.format("%.2f", (float) mTotalCallbacks / mTotalBatches));
+        }
+    }
+
+    private static class PendingOp {
+
+        final int op;
+        final UserHandle user;
+        final LinkedHashSet<String> packages = new LinkedHashSet<>();
+
+        PendingOp(int op, UserHandle user) {
+            this.op = op;
+            this.user = user;
+        }
+
+        boolean containsAny(String[] others) {
+            for (String pkg : others) {
+                if (packages.contains(pkg)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Executes multiple package operations as a single model update
+     */
+    private static class BatchedPackageUpdateTask extends BaseModelUpdateTask {
+
+        private final List<PendingOp> mOps;
+
+        BatchedPackageUpdateTask(List<PendingOp> ops) {
+            mOps = ops;
+        }
+
+        @Override
+        public void execute(LauncherAppState app, BgDataModel dataModel, AllAppsList apps) {
+            for (PendingOp op : mOps) {
+                executeNested(new PackageUpdatedTask(op.op, op.user,
+                        op.packages.toArray(new String[op.packages.size()])));
+            }
+            bindApplicationsIfNeeded();
+        }
+    }
+}
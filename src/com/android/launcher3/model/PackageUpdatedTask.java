@@ -180,7 +180,12 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
             // For system apps, package manager send OP_UPDATE when an app is enabled.
             final boolean isNewApkAvailable = mOp == OP_ADD || mOp == OP_UPDATE;
             synchronized (dataModel) {
-                for (ItemInfo info : dataModel.itemsIdMap) {
+                // Unless all the packages of the user are affected, only look at the items which
+                // reference the updated packages.
+                Iterable<ItemInfo> affectedItems = mOp == OP_USER_AVAILABILITY_CHANGE
+                        ? dataModel.itemsIdMap
+                        : dataModel.getItemsForPackages(packageSet, mUser);
+                for (ItemInfo info : affectedItems) {
                     if (info instanceof WorkspaceItemInfo && mUser.equals(info.user)) {
                         WorkspaceItemInfo si = (WorkspaceItemInfo) info;
                         boolean infoUpdated = false;
@@ -61,6 +61,8 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     private Map<PackageUserKey, DotInfo> mPackageUserToDotInfos = new HashMap<>();
     /** Maps packages to their Widgets */
     private ArrayList<WidgetListRowEntry> mAllWidgets = new ArrayList<>();
+    /** Rows of {@link #mAllWidgets} by package name */
+    private HashMap<String, WidgetListRowEntry> mWidgetRowsByPackage = new HashMap<>();
 
     private PopupDataChangeListener mChangeListener = PopupDataChangeListener.INSTANCE;
 
@@ -189,7 +191,12 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     }
 
     public void setAllWidgets(ArrayList<WidgetListRowEntry> allWidgets) {
+        HashMap<String, WidgetListRowEntry> rowsByPackage = new HashMap<>(allWidgets.size() * 2);
+        for (WidgetListRowEntry entry : allWidgets) {
+            rowsByPackage.put(entry.pkgItem.packageName, entry);
+        }
         mAllWidgets = allWidgets;
+        mWidgetRowsByPackage = rowsByPackage;
         mChangeListener.onWidgetsBound();
     }
 
@@ -201,21 +208,29 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
         return mAllWidgets;
     }
 
+    /**
+     * Returns the row of widgets of the package, which stays the same object as long as the
+     * widgets of the package don't change.
+     */
+    @Nullable
+    public WidgetListRowEntry getWidgetsRowForPackage(String packageName) {
+        return mWidgetRowsByPackage.get(packageName);
+    }
+
     public List<WidgetItem> getWidgetsForPackageUser(PackageUserKey packageUserKey) {
-        for (WidgetListRowEntry entry : mAllWidgets) {
-            if (entry.pkgItem.packageName.equals(packageUserKey.mPackageName)) {
-                ArrayList<WidgetItem> widgets = new ArrayList<>(entry.widgets);
-                // Remove widgets not associated with the correct user.
-                Iterator<WidgetItem> iterator = widgets.iterator();
-                while (iterator.hasNext()) {
-                    if (!iterator.next().user.equals(packageUserKey.mUser)) {
-                        iterator.remove();
-                    }
-                }
-                return widgets.isEmpty() ? null : widgets;
+        WidgetListRowEntry entry = getWidgetsRowForPackage(packageUserKey.mPackageName);
+        if (entry == null) {
+            return null;
+        }
+        ArrayList<WidgetItem> widgets = new ArrayList<>(entry.widgets);
+        // Remove widgets not associated with the correct user.
+        Iterator<WidgetItem> iterator = widgets.iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().user.equals(packageUserKey.mUser)) {
+                iterator.remove();
             }
         }
-        return null;
+        return widgets.isEmpty() ? null : widgets;
     }
 
     /**
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Pool of mutable ARGB_8888 bitmaps which can be reused instead of allocating new ones.
+ *
+ * Bitmaps are kept in buckets keyed by the size they were requested for, so that finding a
+ * bitmap is a single lookup. The pool holds at most {@link #mMaxBytes} bytes, and evicts the
+ * bitmaps released the longest time ago when it is full. Can be used from any thread.
+ */
+public class BitmapPool {
+
+    private final String mName;
+    private final long mMaxBytes;
+
+    // Guarded by this
+    private final HashMap<Long, ArrayDeque<Bitmap>> mBuckets = new HashMap<>();
+    // All the pooled bitmaps, in release order
+    private final LinkedHashSet<Bitmap> mReleaseOrder = new LinkedHashSet<>();
+    private final HashMap<Bitmap, Long> mBucketKeys = new HashMap<>();
+    private long mSizeBytes;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    public BitmapPool(String name, long maxBytes) {
+        mName = name;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a mutable bitmap of the provided size, reusing a pooled bitmap if possible. The
+     * content of a reused bitmap is undefined.
+     */
+    public Bitmap obtain(int width, int height) {
+        Bitmap bitmap = null;
+        synchronized (this) {
+            ArrayDeque<Bitmap> bucket = mBuckets.get(getBucketKey(width, height));
+            if (bucket != null) {
+                bitmap = bucket.pollLast();
+                if (bucket.isEmpty()) {
+                    mBuckets.remove(getBucketKey(width, height));
+                }
+            }
+            if (bitmap != null) {
+                mReleaseOrder.remove(bitmap);
+                mBucketKeys.remove(bitmap);
+                mSizeBytes -= bitmap.getAllocationByteCount();
+                mHitCount++;
+            } else {
+                mMissCount++;
+            }
+        }
+
+        if (bitmap == null) {
+            // Creating a bitmap is expensive, do not do it while holding the lock
+            return Bitmap.createBitmap(width, height, Config.ARGB_8888);
+        }
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            // The bitmap was resized since it was obtained, its allocation still fits the size
+            bitmap.reconfigure(width, height, Config.ARGB_8888);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap to the pool, for it to be reused by {@link #obtain} with the same size.
+     * The bitmap may have been resized to smaller dimensions since it was obtained, but should
+     * not be used by the caller anymore.
+     *
+     * @param width the width the bitmap was obtained for
+     * @param height the height the bitmap was obtained for
+     */
+    public void release(Bitmap bitmap, int width, int height) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getConfig() != Config.ARGB_8888
+                || bitmap.getAllocationByteCount() < width * height * 4) {
+            return;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > mMaxBytes) {
+            return;
+        }
+        synchronized (this) {
+            if (mBucketKeys.containsKey(bitmap)) {
+                // Already in the pool
+                return;
+            }
+            long key = getBucketKey(width, height);
+            mBuckets.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(bitmap);
+            mReleaseOrder.add(bitmap);
+            mBucketKeys.put(bitmap, key);
+            mSizeBytes += bytes;
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    /**
+     * Drops all the pooled bitmaps
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Drops the pooled bitmaps released the longest time ago, until at most half of the maximum
+     * size is used.
+     */
+    public synchronized void trimToHalf() {
+        trimToSize(mMaxBytes / 2);
+    }
+
+    public synchronized long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Bitmap> it = mReleaseOrder.iterator();
+        while (mSizeBytes > maxBytes && it.hasNext()) {
+            Bitmap bitmap = it.next();
+            it.remove();
+            long key = mBucketKeys.remove(bitmap);
+            ArrayDeque<Bitmap> bucket = mBuckets.get(key);
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                mBuckets.remove(key);
+            }
+            mSizeBytes -= bitmap.getAllocationByteCount();
+            mEvictionCount++;
+        }
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + mName + " bitmap pool: size=" + mSizeBytes / 1024 + "KB/"
+                + mMaxBytes / 1024 + "KB count=" + mReleaseOrder.size()
+                + " buckets=" + mBuckets.size()
+                + " hits=" + mHitCount
+                + " misses=" + mMissCount
+                + " evictions=" + mEvictionCount);
+    }
+
+    private static long getBucketKey(int width, int height) {
+        return ((long) width << 32) | (height & 0xFFFFFFFFL);
+    }
+}
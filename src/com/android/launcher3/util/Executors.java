@@ -20,6 +20,7 @@ import android.os.Looper;
 import android.os.Process;
 
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -41,6 +42,28 @@ public class Executors {
             CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE,
             TimeUnit.SECONDS, new LinkedBlockingQueue<>());
 
+    /**
+     * A small bounded {@link ThreadPoolExecutor} used by the model to run independent, blocking
+     * system queries in parallel. Threads are released when the pool is idle.
+     */
+    public static final ThreadPoolExecutor MODEL_WORKER_EXECUTOR =
+            createBoundedPool(Math.max(2, Math.min(CPU_COUNT - 1, 4)));
+
+    /**
+     * A pool with a thread per core, but one, used to render icons in parallel. Threads run at
+     * background priority and are released when the pool is idle.
+     */
+    public static final ThreadPoolExecutor ICON_RENDER_EXECUTOR = createBoundedPool(
+            Math.max(1, CPU_COUNT - 1), Process.THREAD_PRIORITY_BACKGROUND);
+
+    /**
+     * A pool used to load widget previews. Tasks run in their {@link Comparable} natural order
+     * instead of submission order, so all the tasks must be comparable to each other and must
+     * be passed to {@link ThreadPoolExecutor#execute} directly.
+     */
+    public static final ThreadPoolExecutor WIDGET_PREVIEW_EXECUTOR = createPriorityPool(
+            Math.max(2, Math.min(CPU_COUNT - 1, 4)), Process.THREAD_PRIORITY_BACKGROUND);
+
     /**
      * Returns the executor for running tasks on the main thread.
      */
@@ -53,6 +76,42 @@ public class Executors {
     public static final LooperExecutor UI_HELPER_EXECUTOR =
             new LooperExecutor(createAndStartNewForegroundLooper("UiThreadHelper"));
 
+    /**
+     * Creates a fixed size pool whose threads time out when there is no work
+     */
+    public static ThreadPoolExecutor createBoundedPool(int size) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, KEEP_ALIVE,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Same as {@link #createBoundedPool(int)}, with threads running at the provided priority
+     */
+    public static ThreadPoolExecutor createBoundedPool(int size, int priority) {
+        ThreadPoolExecutor executor = createBoundedPool(size);
+        executor.setThreadFactory(r -> new Thread(() -> {
+            Process.setThreadPriority(priority);
+            r.run();
+        }));
+        return executor;
+    }
+
+    /**
+     * Same as {@link #createBoundedPool(int, int)}, with queued tasks run in their natural order
+     */
+    public static ThreadPoolExecutor createPriorityPool(int size, int priority) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, KEEP_ALIVE,
+                TimeUnit.SECONDS, new PriorityBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(true);
+        executor.setThreadFactory(r -> new Thread(() -> {
+            Process.setThreadPriority(priority);
+            r.run();
+        }));
+        return executor;
+    }
+
     /**
      * Utility method to get a started handler thread statically
      */
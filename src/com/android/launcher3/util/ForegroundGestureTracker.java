@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks whether the user is in the middle of a gesture handled by Launcher, so that background
+ * work can yield the CPU to it. Can be used from any thread.
+ */
+public class ForegroundGestureTracker {
+
+    // Touch on a Launcher activity
+    public static final int SOURCE_LAUNCHER_TOUCH = 1 << 0;
+    // System gesture, eg. swipe up to home or overview
+    public static final int SOURCE_SYSTEM_GESTURE = 1 << 1;
+
+    private static final AtomicInteger sActiveSources = new AtomicInteger();
+
+    public static void setGestureActive(int source, boolean active) {
+        sActiveSources.getAndUpdate(sources -> active ? (sources | source) : (sources & ~source));
+    }
+
+    public static boolean isGestureActive() {
+        return sActiveSources.get() != 0;
+    }
+}
@@ -4,20 +4,39 @@ import android.graphics.Rect;
 
 import com.android.launcher3.model.data.ItemInfo;
 
+import java.util.Arrays;
+
 /**
  * Utility object to manage the occupancy in a grid.
+ *
+ * Each row of the grid is stored as a bit mask of its occupied columns, so that checks over a span
+ * of columns are a single mask operation per row. The grid can have at most 64 columns.
  */
 public class GridOccupancy {
 
+    public static final int MAX_COLUMNS = Long.SIZE;
+
     private final int mCountX;
     private final int mCountY;
 
-    public final boolean[][] cells;
+    // Bit x of mRows[y] is set if cell (x, y) is occupied
+    private final long[] mRows;
 
     public GridOccupancy(int countX, int countY) {
+        if (countX > MAX_COLUMNS) {
+            throw new IllegalArgumentException("Grid can have at most " + MAX_COLUMNS
+                    + " columns: " + countX);
+        }
         mCountX = countX;
         mCountY = countY;
-        cells = new boolean[countX][countY];
+        mRows = new long[countY];
+    }
+
+    /**
+     * Returns a mask with {@param span} bits set, starting at bit {@param x}
+     */
+    private static long spanMask(int x, int span) {
+        return span <= 0 ? 0 : (-1L >>> (Long.SIZE - span)) << x;
     }
 
     /**
@@ -30,32 +49,42 @@ public class GridOccupancy {
      * @return true if a vacant cell was found
      */
     public boolean findVacantCell(int[] vacantOut, int spanX, int spanY) {
+        if (spanX <= 0 || spanY <= 0 || spanX > mCountX) {
+            return false;
+        }
+        long rowMask = spanMask(0, mCountX);
         for (int y = 0; (y + spanY) <= mCountY; y++) {
-            for (int x = 0; (x + spanX) <= mCountX; x++) {
-                boolean available = !cells[x][y];
-                out:
-                for (int i = x; i < x + spanX; i++) {
-                    for (int j = y; j < y + spanY; j++) {
-                        available = available && !cells[i][j];
-                        if (!available) break out;
-                    }
-                }
-                if (available) {
-                    vacantOut[0] = x;
-                    vacantOut[1] = y;
-                    return true;
-                }
+            // Columns which are vacant in all the rows of the span
+            long vacant = 0;
+            for (int j = y; j < y + spanY; j++) {
+                vacant |= mRows[j];
+            }
+            vacant = ~vacant & rowMask;
+
+            // Keep the columns which start a run of at least spanX vacant columns. Columns
+            // outside the grid are never vacant, so runs can't extend past the last column.
+            long runStarts = vacant;
+            for (int i = 1; i < spanX && runStarts != 0; i++) {
+                runStarts &= vacant >>> i;
+            }
+            if (runStarts != 0) {
+                vacantOut[0] = Long.numberOfTrailingZeros(runStarts);
+                vacantOut[1] = y;
+                return true;
             }
         }
         return false;
     }
 
     public void copyTo(GridOccupancy dest) {
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                dest.cells[i][j] = cells[i][j];
-            }
+        System.arraycopy(mRows, 0, dest.mRows, 0, mCountY);
+    }
+
+    public boolean isOccupied(int x, int y) {
+        if (x < 0 || x >= mCountX) {
+            throw new ArrayIndexOutOfBoundsException(x);
         }
+        return (mRows[y] & (1L << x)) != 0;
     }
 
     public boolean isRegionVacant(int x, int y, int spanX, int spanY) {
@@ -64,21 +93,37 @@ public class GridOccupancy {
         if (x < 0 || y < 0 || x2 >= mCountX || y2 >= mCountY) {
             return false;
         }
-        for (int i = x; i <= x2; i++) {
-            for (int j = y; j <= y2; j++) {
-                if (cells[i][j]) {
-                    return false;
-                }
+        long mask = spanMask(x, spanX);
+        for (int j = y; j <= y2; j++) {
+            if ((mRows[j] & mask) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if none of the occupied cells of {@param block}, when placed at (x, y), overlap
+     * an occupied cell of this grid. The block must fit within this grid.
+     */
+    public boolean canPlace(GridOccupancy block, int x, int y) {
+        for (int j = 0; j < block.mCountY; j++) {
+            if (((mRows[y + j] >>> x) & block.mRows[j]) != 0) {
+                return false;
             }
         }
         return true;
     }
 
     public void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
-        if (cellX < 0 || cellY < 0) return;
-        for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
-            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
-                cells[x][y] = value;
+        if (cellX < 0 || cellY < 0 || cellX >= mCountX) return;
+        long mask = spanMask(cellX, Math.min(spanX, mCountX - cellX));
+        int endY = Math.min(cellY + spanY, mCountY);
+        for (int y = cellY; y < endY; y++) {
+            if (value) {
+                mRows[y] |= mask;
+            } else {
+                mRows[y] &= ~mask;
             }
         }
     }
@@ -96,6 +141,23 @@ public class GridOccupancy {
     }
 
     public void clear() {
-        markCells(0, 0, mCountX, mCountY, false);
+        Arrays.fill(mRows, 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GridOccupancy)) {
+            return false;
+        }
+        GridOccupancy other = (GridOccupancy) o;
+        return mCountX == other.mCountX && Arrays.equals(mRows, other.mRows);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mCountX + Arrays.hashCode(mRows);
     }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the most recent latency samples of an operation, to report their percentiles in dumps.
+ * Samples can be added from any thread.
+ */
+public class LatencyHistogram {
+
+    private final String mName;
+    private final long[] mSamples;
+
+    private int mNextIndex;
+    private int mCount;
+    private long mTotalCount;
+
+    /**
+     * @param capacity the number of most recent samples which are kept
+     */
+    public LatencyHistogram(String name, int capacity) {
+        mName = name;
+        mSamples = new long[capacity];
+    }
+
+    /**
+     * Adds a sample, in nanoseconds
+     */
+    public synchronized void add(long latencyNanos) {
+        mSamples[mNextIndex] = latencyNanos;
+        mNextIndex = (mNextIndex + 1) % mSamples.length;
+        mCount = Math.min(mCount + 1, mSamples.length);
+        mTotalCount++;
+    }
+
+    /**
+     * Returns the requested percentiles of the kept samples, in nanoseconds, or an empty array if
+     * there are no samples.
+     */
+    public synchronized long[] getPercentiles(float... percentiles) {
+        if (mCount == 0) {
+            return new long[0];
+        }
+        long[] sorted = Arrays.copyOf(mSamples, mCount);
+        Arrays.sort(sorted);
+        long[] result = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100 * mCount) - 1;
+            result[i] = sorted[Math.max(0, Math.min(mCount - 1, index))];
+        }
+        return result;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        long[] percentiles = getPercentiles(50, 90, 99);
+        long totalCount;
+        synchronized (this) {
+            totalCount = mTotalCount;
+        }
+        if (percentiles.length == 0) {
+            writer.println(prefix + mName + ": no samples");
+            return;
+        }
+        writer.println(prefix + mName + ": count=" + totalCount
+                + " p50=" + toMillis(percentiles[0]) + "ms"
+                + " p90=" + toMillis(percentiles[1]) + "ms"
+                + " p99=" + toMillis(percentiles[2]) + "ms");
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format("%.2f", nanos / (float) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
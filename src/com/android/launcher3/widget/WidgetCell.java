@@ -104,8 +104,19 @@ public class WidgetCell extends LinearLayout implements OnLayoutChangeListener {
     }
 
     private void setContainerWidth() {
-        mCellSize = (int) (mDeviceProfile.allAppsIconSizePx * WIDTH_SCALE);
-        mPresetPreviewSize = (int) (mCellSize * PREVIEW_SCALE);
+        mCellSize = getCellSize(mDeviceProfile);
+        mPresetPreviewSize = getPresetPreviewSize(mDeviceProfile);
+    }
+
+    private static int getCellSize(DeviceProfile dp) {
+        return (int) (dp.allAppsIconSizePx * WIDTH_SCALE);
+    }
+
+    /**
+     * Returns the size of the previews requested by the cells for the device profile
+     */
+    public static int getPresetPreviewSize(DeviceProfile dp) {
+        return (int) (getCellSize(dp) * PREVIEW_SCALE);
     }
 
     @Override
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import android.os.CancellationSignal;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.android.launcher3.BaseActivity;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.WidgetPreviewLoader;
+import com.android.launcher3.model.WidgetItem;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Prefetches the previews of the rows about to be scrolled into view in the widget tray, so that
+ * the cells have their preview as soon as they are bound.
+ *
+ * The further the list moves per frame, the more rows ahead are prefetched. Prefetches of the
+ * rows which are not ahead of the scroll anymore are cancelled, and the number of previews
+ * prefetched at the same time is capped. The loader runs prefetches after the previews of the
+ * visible cells.
+ */
+class WidgetPreviewPrefetcher extends RecyclerView.OnScrollListener {
+
+    // Number of frames, scrolling at the current speed, for which the rows are prefetched
+    private static final int LOOKAHEAD_FRAMES = 12;
+    private static final int MIN_ROWS_AHEAD = 1;
+    private static final int MAX_ROWS_AHEAD = 6;
+    // Maximum number of previews prefetched at the same time
+    private static final int MAX_PREFETCHES = 8;
+
+    private final WidgetsListAdapter mAdapter;
+    private final WidgetPreviewLoader mLoader;
+    private final BaseActivity mActivity;
+    private final int mPreviewSize;
+
+    // Null values are for the previews which were already in memory
+    private final HashMap<WidgetItem, CancellationSignal> mPrefetches = new HashMap<>();
+
+    WidgetPreviewPrefetcher(BaseActivity activity, WidgetsListAdapter adapter,
+            WidgetPreviewLoader loader) {
+        mActivity = activity;
+        mAdapter = adapter;
+        mLoader = loader;
+        mPreviewSize = WidgetCell.getPresetPreviewSize(activity.getDeviceProfile());
+    }
+
+    @Override
+    public void onScrolled(RecyclerView rv, int dx, int dy) {
+        if (dy == 0 || rv.getChildCount() == 0) {
+            return;
+        }
+        int rowHeight = rv.getChildAt(0).getHeight();
+        if (rowHeight <= 0) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) rv.getLayoutManager();
+        int edge = dy > 0
+                ? layoutManager.findLastVisibleItemPosition()
+                : layoutManager.findFirstVisibleItemPosition();
+        if (edge == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int rowsAhead = Utilities.boundToRange(
+                (Math.abs(dy) * LOOKAHEAD_FRAMES + rowHeight - 1) / rowHeight,
+                MIN_ROWS_AHEAD, MAX_ROWS_AHEAD);
+        updatePrefetches(edge, dy > 0 ? 1 : -1, rowsAhead);
+    }
+
+    private void updatePrefetches(int edge, int direction, int rowsAhead) {
+        HashSet<WidgetItem> ahead = new HashSet<>();
+        for (int i = 1; i <= rowsAhead && ahead.size() < MAX_PREFETCHES; i++) {
+            int pos = edge + i * direction;
+            if (pos < 0 || pos >= mAdapter.getItemCount()) {
+                break;
+            }
+            for (WidgetItem item : mAdapter.getEntry(pos).widgets) {
+                if (ahead.size() >= MAX_PREFETCHES) {
+                    break;
+                }
+                ahead.add(item);
+            }
+        }
+
+        Iterator<Map.Entry<WidgetItem, CancellationSignal>> it =
+                mPrefetches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<WidgetItem, CancellationSignal> entry = it.next();
+            if (!ahead.contains(entry.getKey())) {
+                if (entry.getValue() != null) {
+                    entry.getValue().cancel();
+                }
+                it.remove();
+            }
+        }
+        for (WidgetItem item : ahead) {
+            if (!mPrefetches.containsKey(item)) {
+                mPrefetches.put(item,
+                        mLoader.prefetchPreview(item, mPreviewSize, mPreviewSize, mActivity));
+            }
+        }
+    }
+
+    /**
+     * Cancels all the prefetches, eg. when the widget tray is closed
+     */
+    public void cancelAll() {
+        for (CancellationSignal signal : mPrefetches.values()) {
+            if (signal != null) {
+                signal.cancel();
+            }
+        }
+        mPrefetches.clear();
+    }
+}
@@ -38,6 +38,7 @@ import com.android.launcher3.ResourceUtils;
 import com.android.launcher3.anim.PendingAnimation;
 import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.popup.PopupDataProvider;
 import com.android.launcher3.util.PackageUserKey;
 
 import java.util.List;
@@ -63,6 +64,8 @@ public class WidgetsBottomSheet extends BaseWidgetSheet implements Insettable {
 
     private static final int DEFAULT_CLOSE_DURATION = 200;
     private ItemInfo mOriginalItemInfo;
+    // The row of widgets the cells were last bound to
+    private WidgetListRowEntry mBoundRow;
     private Rect mInsets;
 
     public WidgetsBottomSheet(Context context, AttributeSet attrs) {
@@ -95,10 +98,16 @@ public class WidgetsBottomSheet extends BaseWidgetSheet implements Insettable {
 
     @Override
     public void onWidgetsBound() {
-        List<WidgetItem> widgets = mLauncher.getPopupDataProvider().getWidgetsForPackageUser(
-                new PackageUserKey(
-                        mOriginalItemInfo.getTargetComponent().getPackageName(),
-                        mOriginalItemInfo.user));
+        PopupDataProvider popupDataProvider = mLauncher.getPopupDataProvider();
+        String packageName = mOriginalItemInfo.getTargetComponent().getPackageName();
+        WidgetListRowEntry row = popupDataProvider.getWidgetsRowForPackage(packageName);
+        if (row != null && row == mBoundRow) {
+            // The widgets of the package didn't change
+            return;
+        }
+        mBoundRow = row;
+        List<WidgetItem> widgets = popupDataProvider.getWidgetsForPackageUser(
+                new PackageUserKey(packageName, mOriginalItemInfo.user));
 
         ViewGroup widgetRow = findViewById(R.id.widgets);
         ViewGroup widgetCells = widgetRow.findViewById(R.id.widgets_cell_list);
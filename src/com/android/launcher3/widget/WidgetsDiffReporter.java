@@ -16,39 +16,68 @@
 
 package com.android.launcher3.widget;
 
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+
 import android.util.Log;
 
+import androidx.annotation.WorkerThread;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.launcher3.icons.IconCache;
 import com.android.launcher3.model.data.PackageItemInfo;
-import com.android.launcher3.widget.WidgetsListAdapter.WidgetListRowEntryComparator;
+import com.android.launcher3.util.IntArray;
+import com.android.launcher3.util.PackageUserKey;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
 
 /**
  * Do diff on widget's tray list items and call the {@link RecyclerView.Adapter}
  * methods accordingly.
+ *
+ * Rows are matched by package and user through a hash map, so the diff is linear in the number
+ * of rows, except for finding the rows which moved and their positions, which is O(n log n) in
+ * the number of rows present in both lists. Consecutive insertions, removals and changes are
+ * notified as ranges.
+ *
+ * The diff runs on a background thread. Its result is only applied if the list of the adapter
+ * didn't change since the diff started, otherwise the diff runs again against the new list.
  */
 public class WidgetsDiffReporter {
     private static final boolean DEBUG = false;
     private static final String TAG = "WidgetsDiffReporter";
 
+    private static final int OP_REMOVE = 0;
+    private static final int OP_MOVE = 1;
+    private static final int OP_INSERT = 2;
+    private static final int OP_CHANGE = 3;
+
     private final IconCache mIconCache;
     private final RecyclerView.Adapter mListener;
 
+    // Incremented every time the list of the adapter is updated
+    private int mListVersion;
+    // Incremented for every call to process, so that only the last diff is applied
+    private int mLastRequestId;
+
     public WidgetsDiffReporter(IconCache iconCache, RecyclerView.Adapter listener) {
         mIconCache = iconCache;
         mListener = listener;
     }
 
+    /**
+     * Updates {@param currentEntries}, the list of the adapter, to {@param newEntries}, and
+     * notifies the adapter. Both lists must be sorted with the same comparator. Must be called on
+     * the UI thread.
+     */
     public void process(ArrayList<WidgetListRowEntry> currentEntries,
-            ArrayList<WidgetListRowEntry> newEntries, WidgetListRowEntryComparator comparator) {
+            ArrayList<WidgetListRowEntry> newEntries) {
         if (DEBUG) {
             Log.d(TAG, "process oldEntries#=" + currentEntries.size()
                     + " newEntries#=" + newEntries.size());
         }
+        int requestId = ++mLastRequestId;
         // Early exit if either of the list is empty
         if (currentEntries.isEmpty() || newEntries.isEmpty()) {
             // Skip if both list are empty.
@@ -58,82 +87,312 @@ public class WidgetsDiffReporter {
             if (currentEntries.size() != newEntries.size()) {
                 currentEntries.clear();
                 currentEntries.addAll(newEntries);
+                mListVersion++;
                 mListener.notifyDataSetChanged();
             }
             return;
         }
-        ArrayList<WidgetListRowEntry> orgEntries =
-                (ArrayList<WidgetListRowEntry>) currentEntries.clone();
-        Iterator<WidgetListRowEntry> orgIter = orgEntries.iterator();
-        Iterator<WidgetListRowEntry> newIter = newEntries.iterator();
-
-        WidgetListRowEntry orgRowEntry = orgIter.next();
-        WidgetListRowEntry newRowEntry = newIter.next();
 
-        do {
-            int diff = comparePackageName(orgRowEntry, newRowEntry, comparator);
-            if (DEBUG) {
-                Log.d(TAG, String.format("diff=%d orgRowEntry (%s) newRowEntry (%s)",
-                        diff, orgRowEntry != null? orgRowEntry.toString() : null,
-                        newRowEntry != null? newRowEntry.toString() : null));
-            }
-            int index = -1;
-            if (diff < 0) {
-                index = currentEntries.indexOf(orgRowEntry);
-                mListener.notifyItemRemoved(index);
-                if (DEBUG) {
-                    Log.d(TAG, String.format("notifyItemRemoved called (%d)%s", index,
-                            orgRowEntry.titleSectionName));
+        ArrayList<WidgetListRowEntry> orgEntries = new ArrayList<>(currentEntries);
+        int listVersion = mListVersion;
+        UI_HELPER_EXECUTOR.execute(() -> {
+            IntArray ops = computeDiff(orgEntries, newEntries);
+            MAIN_EXECUTOR.execute(() -> {
+                if (requestId != mLastRequestId) {
+                    // A more recent list is being processed
+                    return;
                 }
-                currentEntries.remove(index);
-                orgRowEntry = orgIter.hasNext() ? orgIter.next() : null;
-            } else if (diff > 0) {
-                index = orgRowEntry != null? currentEntries.indexOf(orgRowEntry):
-                        currentEntries.size();
-                currentEntries.add(index, newRowEntry);
-                if (DEBUG) {
-                    Log.d(TAG, String.format("notifyItemInserted called (%d)%s", index,
-                            newRowEntry.titleSectionName));
+                if (listVersion != mListVersion) {
+                    process(currentEntries, newEntries);
+                    return;
                 }
-                newRowEntry = newIter.hasNext() ? newIter.next() : null;
-                mListener.notifyItemInserted(index);
+                currentEntries.clear();
+                currentEntries.addAll(newEntries);
+                mListVersion++;
+                dispatchUpdates(ops);
+            });
+        });
+    }
+
+    /**
+     * Returns the operations transforming {@param orgEntries} into {@param newEntries}, as
+     * triples of operation, and its two arguments, or null if the rows can't be matched.
+     */
+    @WorkerThread
+    private IntArray computeDiff(ArrayList<WidgetListRowEntry> orgEntries,
+            ArrayList<WidgetListRowEntry> newEntries) {
+        HashMap<PackageUserKey, Integer> newIndices = indexByKey(newEntries);
+        HashMap<PackageUserKey, Integer> orgIndices = indexByKey(orgEntries);
+        if (newIndices == null || orgIndices == null) {
+            return null;
+        }
+        IntArray ops = new IntArray();
+
+        // Removals, from the end so that the indices of the previous rows don't change
+        int removedEnd = -1;
+        for (int i = orgEntries.size() - 1; i >= -1; i--) {
+            boolean removed = i >= 0 && !newIndices.containsKey(getKey(orgEntries.get(i)));
+            if (removed && removedEnd < 0) {
+                removedEnd = i + 1;
+            } else if (!removed && removedEnd >= 0) {
+                addOp(ops, OP_REMOVE, i + 1, removedEnd - i - 1);
+                removedEnd = -1;
+            }
+        }
+
+        // The new indices of the rows present in both lists, in their current order, and in the
+        // new order
+        IntArray order = new IntArray();
+        for (WidgetListRowEntry entry : orgEntries) {
+            Integer newIndex = newIndices.get(getKey(entry));
+            if (newIndex != null) {
+                order.add(newIndex);
+            }
+        }
+        IntArray sortedOrder = new IntArray(order.size());
+        for (int i = 0; i < newEntries.size(); i++) {
+            if (orgIndices.containsKey(getKey(newEntries.get(i)))) {
+                sortedOrder.add(i);
+            }
+        }
+
+        // Moves: the rows which are part of the longest sequence already in the new order stay in
+        // place, the others are moved right after the row which precedes them in the new order.
+        boolean[] inPlace = findLongestIncreasingSubsequence(order);
+        int inPlaceCount = countTrue(inPlace);
+        if (inPlaceCount < order.size()) {
+            addMoves(ops, order, sortedOrder, inPlace, inPlaceCount, newEntries.size());
+        }
+
+        // Insertions and changes, in the order of the new list which is now the order of the
+        // rows present in both lists.
+        IntArray changes = new IntArray();
+        int insertedStart = -1;
+        for (int i = 0; i <= newEntries.size(); i++) {
+            Integer orgIndex = i < newEntries.size()
+                    ? orgIndices.get(getKey(newEntries.get(i))) : null;
+            boolean inserted = i < newEntries.size() && orgIndex == null;
+            if (inserted && insertedStart < 0) {
+                insertedStart = i;
+            } else if (!inserted && insertedStart >= 0) {
+                addOp(ops, OP_INSERT, insertedStart, i - insertedStart);
+                insertedStart = -1;
+            }
+            if (orgIndex != null && isChanged(orgEntries.get(orgIndex), newEntries.get(i))) {
+                changes.add(i);
+            }
+        }
+        for (int i = 0; i < changes.size(); ) {
+            int start = changes.get(i);
+            int count = 1;
+            while (i + count < changes.size() && changes.get(i + count) == start + count) {
+                count++;
+            }
+            addOp(ops, OP_CHANGE, start, count);
+            i += count;
+        }
+        return ops;
+    }
 
+    /**
+     * Adds the moves of the rows which are not {@param inPlace}, in the new order.
+     *
+     * The positions are counted with a Fenwick tree over slots which keep the list order at every
+     * step: in each gap between two rows staying in place, the rows already moved into the gap
+     * come first, in the new order, followed by the rows not moved yet, in the current order.
+     */
+    private static void addMoves(IntArray ops, IntArray order, IntArray sortedOrder,
+            boolean[] inPlace, int inPlaceCount, int newCount) {
+        int size = order.size();
+        boolean[] inPlaceByNewIndex = new boolean[newCount];
+        for (int i = 0; i < size; i++) {
+            inPlaceByNewIndex[order.get(i)] = inPlace[i];
+        }
+
+        // Rows moved into each gap, in the new order, and rows moved out of each gap, in the
+        // current order. Rows staying in place end their gap.
+        IntArray[] movedIn = new IntArray[inPlaceCount + 1];
+        IntArray[] movedOut = new IntArray[inPlaceCount + 1];
+        for (int gap = 0; gap <= inPlaceCount; gap++) {
+            movedIn[gap] = new IntArray();
+            movedOut[gap] = new IntArray();
+        }
+        int gap = 0;
+        for (int k = 0; k < size; k++) {
+            int newIndex = sortedOrder.get(k);
+            if (inPlaceByNewIndex[newIndex]) {
+                gap++;
             } else {
-                // same package name but,
-                // did the icon, title, etc, change?
-                // or did the widget size and desc, span, etc change?
-                if (!isSamePackageItemInfo(orgRowEntry.pkgItem, newRowEntry.pkgItem) ||
-                        !orgRowEntry.widgets.equals(newRowEntry.widgets)) {
-                    index = currentEntries.indexOf(orgRowEntry);
-                    currentEntries.set(index, newRowEntry);
-                    mListener.notifyItemChanged(index);
-                    if (DEBUG) {
-                        Log.d(TAG, String.format("notifyItemChanged called (%d)%s", index,
-                                newRowEntry.titleSectionName));
-                    }
-                }
-                orgRowEntry = orgIter.hasNext() ? orgIter.next() : null;
-                newRowEntry = newIter.hasNext() ? newIter.next() : null;
+                movedIn[gap].add(newIndex);
+            }
+        }
+        IntArray inPlaceRows = new IntArray(inPlaceCount);
+        gap = 0;
+        for (int i = 0; i < size; i++) {
+            if (inPlace[i]) {
+                inPlaceRows.add(order.get(i));
+                gap++;
+            } else {
+                movedOut[gap].add(order.get(i));
+            }
+        }
+
+        // Slots of the rows before and after their move, by new index
+        int[] fromSlots = new int[newCount];
+        int[] toSlots = new int[newCount];
+        int slotCount = 0;
+        for (gap = 0; gap <= inPlaceCount; gap++) {
+            for (int i = 0; i < movedIn[gap].size(); i++) {
+                toSlots[movedIn[gap].get(i)] = slotCount++;
+            }
+            for (int i = 0; i < movedOut[gap].size(); i++) {
+                fromSlots[movedOut[gap].get(i)] = slotCount++;
+            }
+            if (gap < inPlaceCount) {
+                fromSlots[inPlaceRows.get(gap)] = slotCount++;
+            }
+        }
+
+        int[] tree = new int[slotCount + 1];
+        for (int i = 0; i < size; i++) {
+            updateTree(tree, fromSlots[order.get(i)], 1);
+        }
+        for (int k = 0; k < size; k++) {
+            int newIndex = sortedOrder.get(k);
+            if (inPlaceByNewIndex[newIndex]) {
+                continue;
+            }
+            int from = countBefore(tree, fromSlots[newIndex]);
+            updateTree(tree, fromSlots[newIndex], -1);
+            int to = countBefore(tree, toSlots[newIndex]);
+            updateTree(tree, toSlots[newIndex], 1);
+            addOp(ops, OP_MOVE, from, to);
+        }
+    }
+
+    private static void updateTree(int[] tree, int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Returns the number of rows in the slots before {@param slot}
+     */
+    private static int countBefore(int[] tree, int slot) {
+        int count = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    private void dispatchUpdates(IntArray ops) {
+        if (ops == null) {
+            mListener.notifyDataSetChanged();
+            return;
+        }
+        for (int i = 0; i < ops.size(); i += 3) {
+            int arg1 = ops.get(i + 1);
+            int arg2 = ops.get(i + 2);
+            switch (ops.get(i)) {
+                case OP_REMOVE:
+                    mListener.notifyItemRangeRemoved(arg1, arg2);
+                    break;
+                case OP_MOVE:
+                    mListener.notifyItemMoved(arg1, arg2);
+                    break;
+                case OP_INSERT:
+                    mListener.notifyItemRangeInserted(arg1, arg2);
+                    break;
+                case OP_CHANGE:
+                    mListener.notifyItemRangeChanged(arg1, arg2);
+                    break;
+            }
+            if (DEBUG) {
+                Log.d(TAG, String.format("op=%d (%d, %d)", ops.get(i), arg1, arg2));
             }
-        } while(orgRowEntry != null || newRowEntry != null);
+        }
+    }
+
+    private static void addOp(IntArray ops, int op, int arg1, int arg2) {
+        ops.add(op);
+        ops.add(arg1);
+        ops.add(arg2);
+    }
+
+    private static int countTrue(boolean[] values) {
+        int count = 0;
+        for (boolean value : values) {
+            if (value) {
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
-     * Compare package name using the same comparator as in {@link WidgetsListAdapter}.
-     * Also handle null row pointers.
+     * Returns the indices of the rows by package and user, or null if a package and user has
+     * several rows.
      */
-    private int comparePackageName(WidgetListRowEntry curRow, WidgetListRowEntry newRow,
-            WidgetListRowEntryComparator comparator) {
-        if (curRow == null && newRow == null) {
-            throw new IllegalStateException("Cannot compare PackageItemInfo if both rows are null.");
+    private static HashMap<PackageUserKey, Integer> indexByKey(
+            ArrayList<WidgetListRowEntry> entries) {
+        HashMap<PackageUserKey, Integer> indices = new HashMap<>(entries.size() * 2);
+        for (int i = 0; i < entries.size(); i++) {
+            if (indices.put(getKey(entries.get(i)), i) != null) {
+                return null;
+            }
         }
+        return indices;
+    }
+
+    private static PackageUserKey getKey(WidgetListRowEntry entry) {
+        return new PackageUserKey(entry.pkgItem.packageName, entry.pkgItem.user);
+    }
 
-        if (curRow == null && newRow != null) {
-            return 1; // new row needs to be inserted
-        } else if (curRow != null && newRow == null) {
-            return -1; // old row needs to be deleted
+    /**
+     * Returns which elements of {@param values} belong to one of its longest increasing
+     * subsequences.
+     */
+    private static boolean[] findLongestIncreasingSubsequence(IntArray values) {
+        int n = values.size();
+        // tails[l] is the index of the smallest tail of the increasing subsequences of length l+1
+        int[] tails = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values.get(tails[mid]) < values.get(i)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
         }
-        return comparator.compare(curRow, newRow);
+        boolean[] result = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            result[i] = true;
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the row needs to be bound again: did the icon, title, etc, change? or did
+     * the widget size and desc, span, etc change?
+     */
+    private boolean isChanged(WidgetListRowEntry orgEntry, WidgetListRowEntry newEntry) {
+        // The model only creates a row again when its package changes
+        return orgEntry != newEntry
+                && (!isSamePackageItemInfo(orgEntry.pkgItem, newEntry.pkgItem)
+                        || !orgEntry.widgets.equals(newEntry.widgets));
     }
 
     private boolean isSamePackageItemInfo(PackageItemInfo curInfo, PackageItemInfo newInfo) {
@@ -98,7 +98,7 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
     public void setWidgets(ArrayList<WidgetListRowEntry> tempEntries) {
         WidgetListRowEntryComparator rowComparator = new WidgetListRowEntryComparator();
         Collections.sort(tempEntries, rowComparator);
-        mDiffReporter.process(mEntries, tempEntries, rowComparator);
+        mDiffReporter.process(mEntries, tempEntries);
     }
 
     @Override
@@ -110,6 +110,14 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
         return mEntries.get(pos).titleSectionName;
     }
 
+    WidgetListRowEntry getEntry(int pos) {
+        return mEntries.get(pos);
+    }
+
+    WidgetPreviewLoader getWidgetPreviewLoader() {
+        return mWidgetPreviewLoader;
+    }
+
     @Override
     public void onBindViewHolder(WidgetsRowViewHolder holder, int pos) {
         WidgetListRowEntry entry = mEntries.get(pos);
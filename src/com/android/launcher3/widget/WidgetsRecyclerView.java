@@ -23,6 +23,7 @@ import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 
+import com.android.launcher3.BaseActivity;
 import com.android.launcher3.BaseRecyclerView;
 import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
@@ -38,6 +39,7 @@ import androidx.recyclerview.widget.RecyclerView.OnItemTouchListener;
 public class WidgetsRecyclerView extends BaseRecyclerView implements OnItemTouchListener {
 
     private WidgetsListAdapter mAdapter;
+    private WidgetPreviewPrefetcher mPrefetcher;
 
     private final int mScrollbarTop;
 
@@ -71,6 +73,22 @@ public class WidgetsRecyclerView extends BaseRecyclerView implements OnItemTouch
     public void setAdapter(Adapter adapter) {
         super.setAdapter(adapter);
         mAdapter = (WidgetsListAdapter) adapter;
+
+        if (mPrefetcher != null) {
+            mPrefetcher.cancelAll();
+            removeOnScrollListener(mPrefetcher);
+        }
+        mPrefetcher = new WidgetPreviewPrefetcher(BaseActivity.fromContext(getContext()),
+                mAdapter, mAdapter.getWidgetPreviewLoader());
+        addOnScrollListener(mPrefetcher);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mPrefetcher != null) {
+            mPrefetcher.cancelAll();
+        }
     }
 
     /**
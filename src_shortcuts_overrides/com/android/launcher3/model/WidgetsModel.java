@@ -34,13 +34,14 @@ import com.android.launcher3.widget.WidgetListRowEntry;
 import com.android.launcher3.widget.WidgetManagerHelper;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Widgets data model that is used by the adapters of the widget views and controllers.
@@ -58,7 +59,14 @@ public class WidgetsModel {
     /* Map of widgets and shortcuts that are tracked per package. */
     private final MultiHashMap<PackageItemInfo, WidgetItem> mWidgetsList = new MultiHashMap<>();
 
+    /**
+     * Rows of the widget list, per package. A row is only created again when the widgets of its
+     * package change, so that the UI can skip the rows which are the same object as before.
+     */
+    private final HashMap<PackageItemInfo, WidgetListRowEntry> mRows = new HashMap<>();
+
     private AppFilter mAppFilter;
+    private AlphabeticIndexCompat mIndexer;
 
     /**
      * Returns a list of {@link WidgetListRowEntry}. All {@link WidgetItem} in a single row
@@ -69,18 +77,29 @@ public class WidgetsModel {
      * @see com.android.launcher3.widget.WidgetsListAdapter#setWidgets(ArrayList)
      */
     public synchronized ArrayList<WidgetListRowEntry> getWidgetsList(Context context) {
-        ArrayList<WidgetListRowEntry> result = new ArrayList<>();
-        AlphabeticIndexCompat indexer = new AlphabeticIndexCompat(context);
-
-        WidgetItemComparator widgetComparator = new WidgetItemComparator();
-        for (Map.Entry<PackageItemInfo, ArrayList<WidgetItem>> entry : mWidgetsList.entrySet()) {
-            WidgetListRowEntry row = new WidgetListRowEntry(entry.getKey(), entry.getValue());
-            row.titleSectionName = (row.pkgItem.title == null) ? "" :
-                    indexer.computeSectionName(row.pkgItem.title);
-            Collections.sort(row.widgets, widgetComparator);
-            result.add(row);
+        return new ArrayList<>(mRows.values());
+    }
+
+    /**
+     * Creates the row of the package again from its current widgets, or removes it if the
+     * package has no widgets anymore.
+     */
+    private void updateRow(PackageItemInfo packageItem, Context context) {
+        ArrayList<WidgetItem> widgets = mWidgetsList.get(packageItem);
+        if (widgets == null || widgets.isEmpty()) {
+            mWidgetsList.remove(packageItem);
+            mRows.remove(packageItem);
+            return;
         }
-        return result;
+        if (mIndexer == null) {
+            mIndexer = new AlphabeticIndexCompat(context);
+        }
+        // The row has its own copy of the widgets, as the UI uses it while the model changes
+        WidgetListRowEntry row = new WidgetListRowEntry(packageItem, new ArrayList<>(widgets));
+        row.titleSectionName = (packageItem.title == null) ? "" :
+                mIndexer.computeSectionName(packageItem.title);
+        Collections.sort(row.widgets, new WidgetItemComparator());
+        mRows.put(packageItem, row);
     }
 
     /**
@@ -89,6 +108,26 @@ public class WidgetsModel {
      */
     public List<ComponentWithLabelAndIcon> update(
             LauncherAppState app, @Nullable PackageUserKey packageUser) {
+        Context context = app.getContext();
+        return update(app, packageUser,
+                () -> new WidgetManagerHelper(context).getAllProviders(packageUser),
+                () -> queryList(context, packageUser));
+    }
+
+    /**
+     * Updates all the widgets and shortcuts from the provided widget providers and shortcut
+     * config activities of all the users, eg. when they were queried ahead by the loader.
+     */
+    public List<ComponentWithLabelAndIcon> update(LauncherAppState app,
+            Supplier<? extends Collection<AppWidgetProviderInfo>> providers,
+            Supplier<List<ShortcutConfigActivityInfo>> shortcutConfigActivities) {
+        return update(app, null, providers, shortcutConfigActivities);
+    }
+
+    private List<ComponentWithLabelAndIcon> update(LauncherAppState app,
+            @Nullable PackageUserKey packageUser,
+            Supplier<? extends Collection<AppWidgetProviderInfo>> providers,
+            Supplier<List<ShortcutConfigActivityInfo>> shortcutConfigActivities) {
         Preconditions.assertWorkerThread();
 
         Context context = app.getContext();
@@ -99,8 +138,7 @@ public class WidgetsModel {
             PackageManager pm = app.getContext().getPackageManager();
 
             // Widgets
-            WidgetManagerHelper widgetManager = new WidgetManagerHelper(context);
-            for (AppWidgetProviderInfo widgetInfo : widgetManager.getAllProviders(packageUser)) {
+            for (AppWidgetProviderInfo widgetInfo : providers.get()) {
                 LauncherAppWidgetProviderInfo launcherWidgetInfo =
                         LauncherAppWidgetProviderInfo.fromProviderInfo(context, widgetInfo);
 
@@ -110,8 +148,7 @@ public class WidgetsModel {
             }
 
             // Shortcuts
-            for (ShortcutConfigActivityInfo info :
-                    queryList(context, packageUser)) {
+            for (ShortcutConfigActivityInfo info : shortcutConfigActivities.get()) {
                 widgetsAndShortcuts.add(new WidgetItem(info, app.getIconCache(), pm));
                 updatedItems.add(info);
             }
@@ -144,15 +181,14 @@ public class WidgetsModel {
         // clear the lists.
         if (packageUser == null) {
             mWidgetsList.clear();
+            mRows.clear();
+            // Full updates happen on locale changes, which change the section names
+            mIndexer = null;
         } else {
-            // Only clear the widgets for the given package/user.
-            PackageItemInfo packageItem = null;
-            for (PackageItemInfo item : mWidgetsList.keySet()) {
-                if (item.packageName.equals(packageUser.mPackageName)) {
-                    packageItem = item;
-                    break;
-                }
-            }
+            // Only clear the widgets for the given package/user. Rows are kept for all the
+            // packages of the map, and the keys are equal if their package is.
+            WidgetListRowEntry row = mRows.get(new PackageItemInfo(packageUser.mPackageName));
+            PackageItemInfo packageItem = row == null ? null : row.pkgItem;
             if (packageItem != null) {
                 // We want to preserve the user that was on the packageItem previously,
                 // so add it to tmpPackageItemInfos here to avoid creating a new entry.
@@ -221,13 +257,16 @@ public class WidgetsModel {
         IconCache iconCache = app.getIconCache();
         for (PackageItemInfo p : tmpPackageItemInfos.values()) {
             iconCache.getTitleAndIconForApp(p, true /* userLowResIcon */);
+            updateRow(p, app.getContext());
         }
     }
 
-    public void onPackageIconsUpdated(Set<String> packageNames, UserHandle user,
+    public synchronized void onPackageIconsUpdated(Set<String> packageNames, UserHandle user,
             LauncherAppState app) {
+        ArrayList<PackageItemInfo> updatedPackages = new ArrayList<>();
         for (Entry<PackageItemInfo, ArrayList<WidgetItem>> entry : mWidgetsList.entrySet()) {
             if (packageNames.contains(entry.getKey().packageName)) {
+                updatedPackages.add(entry.getKey());
                 ArrayList<WidgetItem> items = entry.getValue();
                 int count = items.size();
                 for (int i = 0; i < count; i++) {
@@ -244,6 +283,9 @@ public class WidgetsModel {
                 }
             }
         }
+        for (PackageItemInfo packageItem : updatedPackages) {
+            updateRow(packageItem, app.getContext());
+        }
     }
 
     public WidgetItem getWidgetProviderInfoByProviderName(
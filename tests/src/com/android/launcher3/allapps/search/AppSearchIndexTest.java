@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.allapps.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.os.Process;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.util.ComponentKey;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Unit tests for {@link AppSearchIndex}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AppSearchIndexTest {
+
+    private static final String[] TITLES = new String[] {
+            "white cow", "whiteCow", "whiteCOW", "whitecowCOW", "white2cow", "whitecow",
+            "whitEcow", "whitecowCow", "whitecow cow", "whitecowcow", "whit ecowcow",
+            "cats&dogs", "cats&Dogs", "2+43", "Q", "  Q", "elephant", "电子邮件", "Bot", "bot",
+            "다운로드", "드라이브", "다운로드 드라이브", "운로 드라이브", "로드라이브", "abc", "Alpha"};
+
+    private static final String[] QUERIES = new String[] {
+            "cow", "dog", "&", "43", "3", "q", "e", "电", "电子", "子", "邮件", "ba", "다", "드",
+            "ㄷ", "åbç", "ål", "ㄷㄷ", "åç", "white", "w", "", "zzz"};
+
+    @Test
+    public void testSearchMatchesDefaultAlgorithm() {
+        List<AppInfo> apps = new ArrayList<>();
+        for (String title : TITLES) {
+            apps.add(getInfo(title));
+        }
+        AppSearchIndex index = AppSearchIndex.build(apps);
+        DefaultAppSearchAlgorithm.StringMatcher matcher =
+                DefaultAppSearchAlgorithm.StringMatcher.getInstance();
+
+        for (String query : QUERIES) {
+            ArrayList<ComponentKey> expected = new ArrayList<>();
+            for (AppInfo app : apps) {
+                if (DefaultAppSearchAlgorithm.matches(app, query.toLowerCase(), matcher)) {
+                    expected.add(app.toComponentKey());
+                }
+            }
+            assertEquals(query, expected, index.search(query));
+        }
+    }
+
+    @Test
+    public void testSearchWithContractions() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            // "ch" is a single letter which sorts after "h" in Czech
+            Locale.setDefault(new Locale("cs"));
+            List<AppInfo> apps = new ArrayList<>();
+            for (String title : new String[] {"Chrome", "Calendar", "Drive", "Gmail", "Hangouts",
+                    "Chat", "Camera"}) {
+                apps.add(getInfo(title));
+            }
+            AppSearchIndex index = AppSearchIndex.build(apps);
+
+            assertEquals(Arrays.asList(apps.get(0).toComponentKey(),
+                    apps.get(1).toComponentKey(), apps.get(5).toComponentKey(),
+                    apps.get(6).toComponentKey()), index.search("c"));
+            assertEquals(Collections.singletonList(apps.get(0).toComponentKey()),
+                    index.search("chr"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void testFilterMatchesRefinesPreviousQuery() {
+        List<AppInfo> apps = new ArrayList<>();
+        for (String title : TITLES) {
+            apps.add(getInfo(title));
+        }
+        AppSearchIndex index = AppSearchIndex.build(apps);
+
+        String[] queries = new String[] {"w", "wh", "whi", "whit", "white", "whitec"};
+        BitSet previous = index.findMatches(queries[0], () -> false);
+        for (int i = 1; i < queries.length; i++) {
+            BitSet refined = index.filterMatches(queries[i], previous, () -> false);
+            assertEquals(queries[i], index.findMatches(queries[i], () -> false), refined);
+            previous = refined;
+        }
+    }
+
+    @Test
+    public void testCancelledSearchReturnsNull() {
+        AppSearchIndex index = AppSearchIndex.build(Arrays.asList(getInfo("abc")));
+        assertNull(index.findMatches("a", () -> true));
+        assertNull(index.filterMatches("ab", index.findMatches("a", () -> false), () -> true));
+    }
+
+    @Test
+    public void testIsIndexOf() {
+        List<AppInfo> apps = new ArrayList<>(Arrays.asList(getInfo("abc"), getInfo("def")));
+        AppSearchIndex index = AppSearchIndex.build(apps);
+        assertTrue(index.isIndexOf(new ArrayList<>(apps)));
+
+        apps.add(getInfo("ghi"));
+        assertFalse(index.isIndexOf(apps));
+
+        apps.remove(2);
+        apps.set(1, getInfo("def"));
+        assertFalse(index.isIndexOf(apps));
+    }
+
+    private AppInfo getInfo(String title) {
+        AppInfo info = new AppInfo();
+        info.title = title;
+        info.componentName = new ComponentName("Test", title);
+        info.user = Process.myUserHandle();
+        return info;
+    }
+}